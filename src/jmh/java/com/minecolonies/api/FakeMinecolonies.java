@@ -0,0 +1,388 @@
+package com.minecolonies.api;
+
+import com.minecolonies.api.colony.ICitizenData;
+import com.minecolonies.api.colony.IColony;
+import com.minecolonies.api.colony.IColonyManager;
+import com.minecolonies.api.colony.buildings.IBuilding;
+import com.minecolonies.api.colony.managers.interfaces.ICitizenManager;
+import com.minecolonies.api.colony.managers.interfaces.IRegisteredStructureManager;
+import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
+import com.minecolonies.api.colony.requestsystem.request.IRequest;
+import com.minecolonies.api.colony.requestsystem.request.RequestState;
+import com.minecolonies.api.colony.requestsystem.requestable.IDeliverable;
+import com.minecolonies.api.colony.requestsystem.requester.IRequester;
+import com.minecolonies.api.colony.requestsystem.resolver.IRequestResolver;
+import com.minecolonies.api.colony.requestsystem.resolver.player.IPlayerRequestResolver;
+import com.minecolonies.api.colony.requestsystem.resolver.retrying.IRetryingRequestResolver;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.minecraft.world.item.Items;
+import net.neoforged.neoforge.items.ItemStackHandler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * In-memory stand-in for the parts of the MineColonies request system the mod binds to.
+ *
+ * {@link #populate} builds N colonies with M open requests each, spread over a handful of builder
+ * huts, each with one builder. Requests ask for 1-64 of a few common items and are split between
+ * the player and retrying resolvers. {@link #reset} reopens every request and empties the
+ * inventories, so a benchmark can fulfill the same world again.
+ */
+public final class FakeMinecolonies {
+    private static final Item[] ITEMS = {Items.COBBLESTONE, Items.OAK_PLANKS, Items.GLASS, Items.TORCH, Items.STONE_BRICKS};
+
+    private static final FakeApi API = new FakeApi();
+
+    private FakeMinecolonies() {
+    }
+
+    static IMinecoloniesAPI api() {
+        return API;
+    }
+
+    /**
+     * Replace the world with {@code colonies} colonies of {@code requestsPerColony} requests each,
+     * spread over {@code buildingsPerColony} builder huts.
+     */
+    public static void populate(int colonies, int requestsPerColony, int buildingsPerColony) {
+        List<IColony> created = new ArrayList<>(colonies);
+        for (int id = 1; id <= colonies; id++) {
+            created.add(new FakeColony(id, requestsPerColony, buildingsPerColony));
+        }
+        API.colonyManager.colonies = created;
+    }
+
+    /**
+     * Reopen every request and empty every inventory.
+     */
+    public static void reset() {
+        for (IColony colony : API.colonyManager.colonies) {
+            ((FakeColony) colony).reset();
+        }
+    }
+
+    private static final class FakeApi implements IMinecoloniesAPI {
+        final FakeColonyManager colonyManager = new FakeColonyManager();
+
+        @Override
+        public IColonyManager getColonyManager() {
+            return colonyManager;
+        }
+    }
+
+    private static final class FakeColonyManager implements IColonyManager {
+        List<IColony> colonies = Collections.emptyList();
+
+        @Override
+        public List<IColony> getAllColonies() {
+            return colonies;
+        }
+    }
+
+    public static final class FakeColony implements IColony, IRegisteredStructureManager, ICitizenManager {
+        private final int id;
+        private final FakeRequestManager requestManager;
+        private final Map<BlockPos, IBuilding> buildings = new LinkedHashMap<>();
+        private final List<ICitizenData> citizens = new ArrayList<>();
+
+        FakeColony(int id, int requests, int buildingCount) {
+            this.id = id;
+            this.requestManager = new FakeRequestManager();
+            List<BuildingBuilder> huts = new ArrayList<>(buildingCount);
+            int slots = requests / buildingCount + 16;
+            for (int b = 0; b < buildingCount; b++) {
+                FakeCitizen builder = new FakeCitizen("Builder " + id + "-" + b, slots);
+                BuildingBuilder hut = new BuildingBuilder(builder);
+                huts.add(hut);
+                buildings.put(new BlockPos(id * 100, 64, b * 10), hut);
+                citizens.add(builder);
+            }
+            for (int i = 0; i < requests; i++) {
+                BuildingBuilder hut = huts.get(i % buildingCount);
+                ItemStack display = new ItemStack(ITEMS[i % ITEMS.length], 1);
+                requestManager.add(new FakeRequest(new FakeToken(), hut, new FakeDeliverable(1 + (i * 37) % 64), display), i % 4 == 0);
+            }
+        }
+
+        void reset() {
+            requestManager.reset();
+            for (ICitizenData citizen : citizens) {
+                ItemStackHandler inventory = citizen.getInventory();
+                for (int i = 0; i < inventory.getSlots(); i++) {
+                    inventory.setStackInSlot(i, ItemStack.EMPTY);
+                }
+            }
+        }
+
+        @Override
+        public int getID() {
+            return id;
+        }
+
+        @Override
+        public IRequestManager getRequestManager() {
+            return requestManager;
+        }
+
+        @Override
+        public IRegisteredStructureManager getBuildingManager() {
+            return this;
+        }
+
+        @Override
+        public ICitizenManager getCitizenManager() {
+            return this;
+        }
+
+        @Override
+        public Map<BlockPos, IBuilding> getBuildings() {
+            return buildings;
+        }
+
+        @Override
+        public List<ICitizenData> getCitizens() {
+            return citizens;
+        }
+
+        @Override
+        public String toString() {
+            return "FakeColony#" + id;
+        }
+    }
+
+    public static final class FakeRequestManager implements IRequestManager {
+        private final Map<IToken<?>, FakeRequest> requests = new HashMap<>();
+        private final StandardPlayerRequestResolver playerResolver = new StandardPlayerRequestResolver();
+        private final StandardRetryingRequestResolver retryingResolver = new StandardRetryingRequestResolver();
+        private final RequestHandler requestHandler = new RequestHandler();
+        private final RequestIdentitiesDataStore identitiesDataStore = new RequestIdentitiesDataStore();
+
+        void add(FakeRequest request, boolean retrying) {
+            requests.put(request.getId(), request);
+            if (retrying) {
+                retryingResolver.assigned.add(request.getId());
+            } else {
+                playerResolver.assigned.add(request.getId());
+            }
+        }
+
+        void reset() {
+            for (FakeRequest request : requests.values()) {
+                request.state = RequestState.IN_PROGRESS;
+            }
+        }
+
+        /**
+         * Implementation-only accessor, bound per class by the mod like the real one.
+         */
+        public RequestHandler getRequestHandler() {
+            return requestHandler;
+        }
+
+        /**
+         * Implementation-only accessor, bound per class by the mod like the real one.
+         */
+        public RequestIdentitiesDataStore getRequestIdentitiesDataStore() {
+            return identitiesDataStore;
+        }
+
+        @Override
+        public IPlayerRequestResolver getPlayerResolver() {
+            return playerResolver;
+        }
+
+        @Override
+        public IRetryingRequestResolver getRetryingRequestResolver() {
+            return retryingResolver;
+        }
+
+        @Override
+        public IRequest<?> getRequestForToken(IToken<?> token) {
+            return requests.get(token);
+        }
+
+        @Override
+        public IRequestResolver<?> getResolverForRequest(IToken<?> token) {
+            return retryingResolver.assigned.contains(token) ? retryingResolver : playerResolver;
+        }
+
+        @Override
+        public void updateRequestState(IToken<?> token, RequestState state) {
+            FakeRequest request = requests.get(token);
+            if (request != null) {
+                request.state = state;
+            }
+        }
+
+        public final class RequestHandler {
+            public Collection<IRequest<?>> getRequestsMadeByRequester(IRequester requester) {
+                List<IRequest<?>> made = new ArrayList<>();
+                for (FakeRequest request : requests.values()) {
+                    if (request.getRequester() == requester) {
+                        made.add(request);
+                    }
+                }
+                return made;
+            }
+        }
+
+        public final class RequestIdentitiesDataStore {
+            public Map<IToken<?>, IRequest<?>> getIdentities() {
+                return Collections.unmodifiableMap(requests);
+            }
+        }
+    }
+
+    public static final class StandardPlayerRequestResolver implements IPlayerRequestResolver {
+        final Set<IToken<?>> assigned = new LinkedHashSet<>();
+
+        @Override
+        public Set<IToken<?>> getAllAssignedRequests() {
+            return assigned;
+        }
+    }
+
+    public static final class StandardRetryingRequestResolver implements IRetryingRequestResolver {
+        final Set<IToken<?>> assigned = new LinkedHashSet<>();
+
+        @Override
+        public Set<IToken<?>> getAllAssignedRequests() {
+            return assigned;
+        }
+    }
+
+    public static final class FakeToken implements IToken<UUID> {
+        private final UUID id = UUID.randomUUID();
+
+        @Override
+        public UUID getIdentifier() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof FakeToken other && other.id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    public static final class FakeDeliverable implements IDeliverable {
+        private final int count;
+
+        FakeDeliverable(int count) {
+            this.count = count;
+        }
+
+        @Override
+        public int getCount() {
+            return count;
+        }
+    }
+
+    public static final class FakeRequest implements IRequest<IDeliverable> {
+        private final IToken<?> id;
+        private final IRequester requester;
+        private final IDeliverable requestable;
+        private final List<ItemStack> displayStacks;
+        volatile RequestState state = RequestState.IN_PROGRESS;
+
+        FakeRequest(IToken<?> id, IRequester requester, IDeliverable requestable, ItemStack display) {
+            this.id = id;
+            this.requester = requester;
+            this.requestable = requestable;
+            this.displayStacks = List.of(display);
+        }
+
+        @Override
+        public IToken<?> getId() {
+            return id;
+        }
+
+        @Override
+        public RequestState getState() {
+            return state;
+        }
+
+        @Override
+        public IRequester getRequester() {
+            return requester;
+        }
+
+        @Override
+        public IDeliverable getRequest() {
+            return requestable;
+        }
+
+        @Override
+        public List<ItemStack> getDisplayStacks() {
+            return displayStacks;
+        }
+    }
+
+    public static final class BuildingBuilder implements IBuilding {
+        private final FakeCitizen builder;
+        private final Set<ICitizenData> assigned;
+
+        BuildingBuilder(FakeCitizen builder) {
+            this.builder = builder;
+            this.assigned = Set.of(builder);
+        }
+
+        @Override
+        public Optional<IRequester> getBuilding(IRequestManager manager, IToken<?> token) {
+            return Optional.of(this);
+        }
+
+        @Override
+        public Optional<ICitizenData> getCitizenForRequest(IToken<?> token) {
+            return Optional.of(builder);
+        }
+
+        @Override
+        public Set<ICitizenData> getAllAssignedCitizen() {
+            return assigned;
+        }
+    }
+
+    public static final class FakeCitizen implements ICitizenData, IRequester {
+        private final String name;
+        private final ItemStackHandler inventory;
+
+        FakeCitizen(String name, int slots) {
+            this.name = name;
+            this.inventory = new ItemStackHandler(slots);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public ItemStackHandler getInventory() {
+            return inventory;
+        }
+
+        @Override
+        public Optional<IRequester> getBuilding(IRequestManager manager, IToken<?> token) {
+            return Optional.empty();
+        }
+    }
+}
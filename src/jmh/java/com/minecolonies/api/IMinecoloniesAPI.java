@@ -0,0 +1,14 @@
+package com.minecolonies.api;
+
+import com.minecolonies.api.colony.IColonyManager;
+
+/**
+ * Benchmark stand-in for the MineColonies API entry point, backed by {@link FakeMinecolonies}.
+ */
+public interface IMinecoloniesAPI {
+    static IMinecoloniesAPI getInstance() {
+        return FakeMinecolonies.api();
+    }
+
+    IColonyManager getColonyManager();
+}
@@ -0,0 +1,9 @@
+package com.minecolonies.api.colony;
+
+import net.neoforged.neoforge.items.ItemStackHandler;
+
+public interface ICitizenData {
+    String getName();
+
+    ItemStackHandler getInventory();
+}
@@ -0,0 +1,15 @@
+package com.minecolonies.api.colony;
+
+import com.minecolonies.api.colony.managers.interfaces.ICitizenManager;
+import com.minecolonies.api.colony.managers.interfaces.IRegisteredStructureManager;
+import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
+
+public interface IColony {
+    int getID();
+
+    IRequestManager getRequestManager();
+
+    IRegisteredStructureManager getBuildingManager();
+
+    ICitizenManager getCitizenManager();
+}
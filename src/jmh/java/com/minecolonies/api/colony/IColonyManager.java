@@ -0,0 +1,7 @@
+package com.minecolonies.api.colony;
+
+import java.util.List;
+
+public interface IColonyManager {
+    List<IColony> getAllColonies();
+}
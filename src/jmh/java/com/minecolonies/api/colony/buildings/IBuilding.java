@@ -0,0 +1,14 @@
+package com.minecolonies.api.colony.buildings;
+
+import com.minecolonies.api.colony.ICitizenData;
+import com.minecolonies.api.colony.requestsystem.requester.IRequester;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+
+import java.util.Optional;
+import java.util.Set;
+
+public interface IBuilding extends IRequester {
+    Optional<ICitizenData> getCitizenForRequest(IToken<?> token);
+
+    Set<ICitizenData> getAllAssignedCitizen();
+}
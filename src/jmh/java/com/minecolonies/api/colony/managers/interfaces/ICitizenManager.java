@@ -0,0 +1,9 @@
+package com.minecolonies.api.colony.managers.interfaces;
+
+import com.minecolonies.api.colony.ICitizenData;
+
+import java.util.List;
+
+public interface ICitizenManager {
+    List<ICitizenData> getCitizens();
+}
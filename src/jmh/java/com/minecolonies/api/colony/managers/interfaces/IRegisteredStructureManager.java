@@ -0,0 +1,10 @@
+package com.minecolonies.api.colony.managers.interfaces;
+
+import com.minecolonies.api.colony.buildings.IBuilding;
+import net.minecraft.core.BlockPos;
+
+import java.util.Map;
+
+public interface IRegisteredStructureManager {
+    Map<BlockPos, IBuilding> getBuildings();
+}
@@ -0,0 +1,20 @@
+package com.minecolonies.api.colony.requestsystem.manager;
+
+import com.minecolonies.api.colony.requestsystem.request.IRequest;
+import com.minecolonies.api.colony.requestsystem.request.RequestState;
+import com.minecolonies.api.colony.requestsystem.resolver.IRequestResolver;
+import com.minecolonies.api.colony.requestsystem.resolver.player.IPlayerRequestResolver;
+import com.minecolonies.api.colony.requestsystem.resolver.retrying.IRetryingRequestResolver;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+
+public interface IRequestManager {
+    IPlayerRequestResolver getPlayerResolver();
+
+    IRetryingRequestResolver getRetryingRequestResolver();
+
+    IRequest<?> getRequestForToken(IToken<?> token);
+
+    IRequestResolver<?> getResolverForRequest(IToken<?> token);
+
+    void updateRequestState(IToken<?> token, RequestState state);
+}
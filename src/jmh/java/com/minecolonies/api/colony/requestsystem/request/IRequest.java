@@ -0,0 +1,19 @@
+package com.minecolonies.api.colony.requestsystem.request;
+
+import com.minecolonies.api.colony.requestsystem.requester.IRequester;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+import net.minecraft.world.item.ItemStack;
+
+import java.util.List;
+
+public interface IRequest<R> {
+    IToken<?> getId();
+
+    RequestState getState();
+
+    IRequester getRequester();
+
+    R getRequest();
+
+    List<ItemStack> getDisplayStacks();
+}
@@ -0,0 +1,15 @@
+package com.minecolonies.api.colony.requestsystem.request;
+
+public enum RequestState {
+    CREATED,
+    REPORTED,
+    ASSIGNED,
+    IN_PROGRESS,
+    COMPLETED,
+    FOLLOWUP_IN_PROGRESS,
+    RESOLVED,
+    RECEIVED,
+    CANCELLED,
+    OVERRULED,
+    FAILED
+}
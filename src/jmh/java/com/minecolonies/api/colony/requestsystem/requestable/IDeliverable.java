@@ -0,0 +1,5 @@
+package com.minecolonies.api.colony.requestsystem.requestable;
+
+public interface IDeliverable {
+    int getCount();
+}
@@ -0,0 +1,10 @@
+package com.minecolonies.api.colony.requestsystem.requester;
+
+import com.minecolonies.api.colony.requestsystem.manager.IRequestManager;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+
+import java.util.Optional;
+
+public interface IRequester {
+    Optional<IRequester> getBuilding(IRequestManager manager, IToken<?> token);
+}
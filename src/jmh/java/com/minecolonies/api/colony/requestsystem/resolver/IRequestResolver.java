@@ -0,0 +1,4 @@
+package com.minecolonies.api.colony.requestsystem.resolver;
+
+public interface IRequestResolver<R> {
+}
@@ -0,0 +1,10 @@
+package com.minecolonies.api.colony.requestsystem.resolver.player;
+
+import com.minecolonies.api.colony.requestsystem.resolver.IRequestResolver;
+import com.minecolonies.api.colony.requestsystem.token.IToken;
+
+import java.util.Set;
+
+public interface IPlayerRequestResolver extends IRequestResolver<Object> {
+    Set<IToken<?>> getAllAssignedRequests();
+}
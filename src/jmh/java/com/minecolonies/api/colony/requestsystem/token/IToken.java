@@ -0,0 +1,5 @@
+package com.minecolonies.api.colony.requestsystem.token;
+
+public interface IToken<T> {
+    T getIdentifier();
+}
@@ -0,0 +1,14 @@
+package com.minecolonies.api.util;
+
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.items.IItemHandler;
+import net.neoforged.neoforge.items.ItemHandlerHelper;
+
+public final class InventoryUtils {
+    private InventoryUtils() {
+    }
+
+    public static ItemStack addItemStackToItemHandlerWithResult(IItemHandler itemHandler, ItemStack itemStack) {
+        return ItemHandlerHelper.insertItemStacked(itemHandler, itemStack, false);
+    }
+}
@@ -0,0 +1,12 @@
+package com.minecolonies.api.util;
+
+import net.minecraft.world.item.ItemStack;
+
+public final class ItemStackUtils {
+    private ItemStackUtils() {
+    }
+
+    public static Boolean isEmpty(ItemStack stack) {
+        return stack == null || stack.isEmpty();
+    }
+}
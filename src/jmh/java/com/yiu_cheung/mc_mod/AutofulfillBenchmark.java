@@ -0,0 +1,117 @@
+package com.yiu_cheung.mc_mod;
+
+import com.minecolonies.api.FakeMinecolonies;
+import net.minecraft.SharedConstants;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.Bootstrap;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Autofulfill hot paths against {@link FakeMinecolonies}, populated with
+ * {@code colonies} x {@code requestsPerColony} open requests.
+ *
+ * Run with {@code ./gradlew jmh}; add {@code -PjmhIncludes=<regex>} to pick benchmarks. The gc
+ * profiler is enabled, so every result comes with allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AutofulfillBenchmark {
+
+    @Param({"1", "8"})
+    public int colonies;
+
+    @Param({"100", "1000"})
+    public int requestsPerColony;
+
+    private McMod mod;
+    private List<?> colonyList;
+
+    @Setup(org.openjdk.jmh.annotations.Level.Trial)
+    public void setUpTrial() {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        // Measure the work, not the console
+        Configurator.setLevel("mc_mod", Level.WARN);
+
+        FakeMinecolonies.populate(colonies, requestsPerColony, 4);
+        if (!MineColoniesBindings.bind()) {
+            throw new IllegalStateException(MineColoniesBindings.getFailureReport());
+        }
+        mod = new McMod(false);
+        colonyList = new ArrayList<>(MineColoniesBindings.getAllColonies());
+    }
+
+    /**
+     * Fulfilling mutates the world, so every invocation starts from open requests.
+     */
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void reopenRequests() {
+        FakeMinecolonies.reset();
+    }
+
+    /**
+     * Discovery phase of a scheduled cycle: plan every open request in parallel.
+     */
+    @Benchmark
+    public List<FulfillmentPlan> discover() {
+        return mod.discoverPlans(colonyList);
+    }
+
+    /**
+     * A full scheduled cycle: discovery, then committing every citizen's batch.
+     */
+    @Benchmark
+    public void fullCycle() {
+        for (InventoryBatch batch : InventoryBatch.group(mod.discoverPlans(colonyList))) {
+            mod.commitBatch(batch);
+        }
+    }
+
+    /**
+     * Per-token path used by the incremental intake, plan and commit one request at a time.
+     */
+    @Benchmark
+    public void processColonyRequests() {
+        for (Object colony : colonyList) {
+            Object requestManager = MineColoniesBindings.getRequestManager(colony);
+            Collection<Object> tokens = RequestTraversal.assignedTokens(requestManager);
+            for (Object token : tokens) {
+                mod.processToken(colony, requestManager, token);
+            }
+        }
+    }
+
+    @Benchmark
+    public void requestLoggerScan() {
+        RequestLogger.logAllAssignedRequests();
+    }
+
+    /**
+     * The /mcmod listing from a cold requester index: one pass per request manager, then a page.
+     */
+    @Benchmark
+    public Component requestListing() {
+        return McModCommand.listRequests(new RequesterIndex(), colonyList, 1);
+    }
+}
@@ -0,0 +1,381 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.world.item.Item;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Append-only binary journal of every autofulfill action: what was handed to whom, and what
+ * failed.
+ *
+ * {@link #record} only puts the record on a bounded queue, so the server thread never waits on
+ * the disk; if the writer falls behind and the queue is full, the record is dropped and counted. A
+ * single writer thread drains the queue, resolves item ids and token ids to strings, and appends
+ * the encoded records to the current segment with one {@link FileChannel} write per batch.
+ *
+ * Segments roll over at {@code segmentBytes} and are named after their first record's timestamp.
+ * Only the newest {@code maxSegments} are kept, and a time-window query skips the segments that end
+ * before the window starts. Queries run on the writer thread after the pending records are
+ * written, so they see everything recorded before them.
+ *
+ * Record layout, big-endian: {@code int} length of the rest, {@code long} timestamp in millis,
+ * {@code int} colony id, {@code byte} outcome, {@code int} count, then token, item id, citizen and
+ * resolver as {@code short}-length-prefixed UTF-8. A record torn by a crash is cut off when the
+ * segment is reopened.
+ */
+public final class AuditJournal {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    public enum Outcome {
+        RESOLVED, PARTIAL, FAILED, DEAD_LETTERED
+    }
+
+    /**
+     * A decoded record.
+     */
+    public record Entry(long timestampMillis, int colonyId, Outcome outcome, int count,
+                        String token, String itemId, String citizen, String resolver) {
+    }
+
+    /**
+     * A record waiting for the writer; ids are turned into strings there, not on the server thread.
+     */
+    private record Pending(long timestampMillis, int colonyId, Outcome outcome, int count,
+                           Object tokenId, Item item, String itemName, String citizen, String resolver) {
+    }
+
+    private static final int QUEUE_CAPACITY = 65536;
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final int MAX_STRING_BYTES = 1024;
+    private static final int MAX_QUERY_RESULTS = 100_000;
+    private static final String SEGMENT_PREFIX = "audit-";
+    private static final String SEGMENT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "mc_mod-audit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Writer thread only
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final ByteBuffer scratch = ByteBuffer.allocate(4 * (2 + MAX_STRING_BYTES) + 32);
+    private FileChannel channel = null;
+    private long segmentSize = 0;
+
+    public AuditJournal(Path directory, int segmentMegabytes, int maxSegments) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(1, segmentMegabytes) * 1024L * 1024L;
+        this.maxSegments = Math.max(1, maxSegments);
+    }
+
+    /**
+     * Queue a record. Never blocks.
+     */
+    public void record(Outcome outcome, int colonyId, Object tokenId, Item item, String itemName, int count, String citizen, String resolver) {
+        Pending pending = new Pending(System.currentTimeMillis(), colonyId, outcome, count, tokenId, item, itemName, citizen, resolver);
+        if (!queue.offer(pending)) {
+            dropped.increment();
+            return;
+        }
+        if (drainScheduled.compareAndSet(false, true)) {
+            try {
+                writer.execute(this::drain);
+            } catch (Exception e) {
+                // Closed
+                drainScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Records matching the filter with a timestamp at or after {@code sinceMillis}, oldest first.
+     * Runs on the writer thread; the future completes there.
+     */
+    public CompletableFuture<List<Entry>> query(long sinceMillis, Predicate<Entry> filter) {
+        return CompletableFuture.supplyAsync(() -> {
+            drain();
+            return read(sinceMillis, filter);
+        }, writer);
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getPending() {
+        return queue.size();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Write what is still queued, sync and close. Waits a few seconds at most.
+     */
+    public void close() {
+        try {
+            writer.execute(() -> {
+                drain();
+                closeSegment();
+            });
+            writer.shutdown();
+            if (!writer.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOGGER.warn("[mc_mod] Audit journal did not finish writing in time, {} records pending", queue.size());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error closing audit journal: {}", e.getMessage(), e);
+        }
+    }
+
+    private void drain() {
+        drainScheduled.set(false);
+        try {
+            Pending pending;
+            while ((pending = queue.poll()) != null) {
+                encode(pending);
+                if (channel == null) {
+                    openLatestSegment(pending.timestampMillis());
+                }
+                if (segmentSize + buffer.position() > 0 && segmentSize + buffer.position() + scratch.remaining() > segmentBytes) {
+                    flushBuffer();
+                    rollSegment(pending.timestampMillis());
+                } else if (buffer.remaining() < scratch.remaining()) {
+                    flushBuffer();
+                }
+                buffer.put(scratch);
+                written.increment();
+            }
+            flushBuffer();
+        } catch (IOException e) {
+            LOGGER.error("[mc_mod] Error writing audit journal: {}", e.getMessage(), e);
+            buffer.clear();
+            closeSegment();
+        }
+    }
+
+    private void encode(Pending pending) {
+        scratch.clear();
+        scratch.putInt(0);
+        scratch.putLong(pending.timestampMillis());
+        scratch.putInt(pending.colonyId());
+        scratch.put((byte) pending.outcome().ordinal());
+        scratch.putInt(pending.count());
+        putString(pending.tokenId() != null ? pending.tokenId().toString() : "");
+        putString(itemId(pending));
+        putString(pending.citizen());
+        putString(pending.resolver());
+        scratch.putInt(0, scratch.position() - 4);
+        scratch.flip();
+    }
+
+    private static String itemId(Pending pending) {
+        if (pending.item() != null) {
+            try {
+                return String.valueOf(BuiltInRegistries.ITEM.getKey(pending.item()));
+            } catch (Exception e) {
+                // Fall back to the display name
+            }
+        }
+        return pending.itemName();
+    }
+
+    private void putString(String value) {
+        byte[] bytes = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        scratch.putShort((short) length);
+        scratch.put(bytes, 0, length);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentSize += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Continue the newest segment if it has room, cutting off a torn last record.
+     */
+    private void openLatestSegment(long timestampMillis) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments();
+        if (!segments.isEmpty()) {
+            Path latest = segments.get(segments.size() - 1);
+            long valid = validLength(latest);
+            if (valid < segmentBytes) {
+                channel = FileChannel.open(latest, StandardOpenOption.WRITE);
+                channel.truncate(valid);
+                channel.position(valid);
+                segmentSize = valid;
+                return;
+            }
+        }
+        rollSegment(timestampMillis);
+    }
+
+    private void rollSegment(long timestampMillis) throws IOException {
+        closeSegment();
+        Path segment = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, timestampMillis, SEGMENT_SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentSize = channel.size();
+
+        List<Path> segments = listSegments();
+        for (int i = 0; i < segments.size() - maxSegments; i++) {
+            Files.deleteIfExists(segments.get(i));
+        }
+    }
+
+    private void closeSegment() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.error("[mc_mod] Error closing audit segment: {}", e.getMessage());
+        }
+        channel = null;
+        segmentSize = 0;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // Zero-padded timestamps sort by name
+        segments.sort(null);
+        return segments;
+    }
+
+    private static long segmentStart(Path segment) {
+        String name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private List<Entry> read(long sinceMillis, Predicate<Entry> filter) {
+        Deque<Entry> results = new ArrayDeque<>();
+        try {
+            List<Path> segments = listSegments();
+            for (int i = 0; i < segments.size(); i++) {
+                // Everything in this segment predates the next one
+                if (i + 1 < segments.size() && segmentStart(segments.get(i + 1)) < sinceMillis) continue;
+                readSegment(segments.get(i), entry -> {
+                    if (entry.timestampMillis() >= sinceMillis && filter.test(entry)) {
+                        results.addLast(entry);
+                        if (results.size() > MAX_QUERY_RESULTS) {
+                            results.removeFirst();
+                        }
+                    }
+                });
+            }
+        } catch (IOException e) {
+            LOGGER.error("[mc_mod] Error reading audit journal: {}", e.getMessage(), e);
+        }
+        return new ArrayList<>(results);
+    }
+
+    private static void readSegment(Path segment, Consumer<Entry> out) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        Outcome[] outcomes = Outcome.values();
+        while (data.remaining() >= 4) {
+            int length = data.getInt();
+            if (length <= 0 || length > data.remaining()) {
+                return;
+            }
+            int end = data.position() + length;
+            try {
+                long timestamp = data.getLong();
+                int colonyId = data.getInt();
+                int outcome = data.get();
+                int count = data.getInt();
+                String token = getString(data);
+                String itemId = getString(data);
+                String citizen = getString(data);
+                String resolver = getString(data);
+                if (outcome >= 0 && outcome < outcomes.length) {
+                    out.accept(new Entry(timestamp, colonyId, outcomes[outcome], count, token, itemId, citizen, resolver));
+                }
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                return;
+            }
+            data.position(end);
+        }
+    }
+
+    /**
+     * @return the length of the segment up to its last complete record
+     */
+    private static long validLength(Path segment) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segment));
+        while (data.remaining() >= 4) {
+            int length = data.getInt(data.position());
+            if (length <= 0 || length > data.remaining() - 4) {
+                break;
+            }
+            data.position(data.position() + 4 + length);
+        }
+        return data.position();
+    }
+
+    private static String getString(ByteBuffer data) {
+        int length = Short.toUnsignedInt(data.getShort());
+        if (length > data.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(data.array(), data.arrayOffset() + data.position(), length, StandardCharsets.UTF_8);
+        data.position(data.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,150 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Whether autofulfill may touch MineColonies right now.
+ *
+ * Server lifecycle events, the readiness probes and failures seen during cycles move the state
+ * along; the hot path only reads it, with a single volatile load. Once READY, a cycle does no
+ * stability checks of its own. After {@value #FAILURES_TO_DEGRADE} failed cycles in a row the
+ * state drops to DEGRADED, and the next cycles first run a recovery probe, backing off from
+ * {@value #MIN_RECOVERY_SECONDS} to {@value #MAX_RECOVERY_SECONDS} seconds between attempts. A
+ * successful probe or cycle brings it back to READY.
+ */
+public final class AutofulfillLifecycle {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    private static final int FAILURES_TO_DEGRADE = 3;
+    private static final int MIN_RECOVERY_SECONDS = 5;
+    private static final int MAX_RECOVERY_SECONDS = 300;
+
+    public enum State {
+        /** Server started, waiting for MineColonies to answer */
+        STARTING,
+        /** Cycles run without further checks */
+        READY,
+        /** Recent cycles failed; each cycle first probes MineColonies again */
+        DEGRADED,
+        /** Server stopping, or not running; nothing runs */
+        STOPPING
+    }
+
+    private volatile State state = State.STOPPING;
+    private volatile String reason = null;
+
+    // Only touched on the server thread
+    private int consecutiveFailures = 0;
+    private int recoveryAttempts = 0;
+    private long nextRecoveryNanos = 0;
+
+    public State get() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * @return why the state is DEGRADED, or null
+     */
+    public String getReason() {
+        return reason;
+    }
+
+    public void starting() {
+        consecutiveFailures = 0;
+        reason = null;
+        transition(State.STARTING);
+    }
+
+    public void ready() {
+        consecutiveFailures = 0;
+        recoveryAttempts = 0;
+        reason = null;
+        transition(State.READY);
+    }
+
+    public void stopping() {
+        transition(State.STOPPING);
+    }
+
+    /**
+     * Drop to DEGRADED right away, e.g. when MineColonies can't be bound at all.
+     */
+    public void degrade(String why) {
+        reason = why;
+        recoveryAttempts = 0;
+        nextRecoveryNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(MIN_RECOVERY_SECONDS);
+        transition(State.DEGRADED);
+    }
+
+    /**
+     * A cycle, or part of one, failed. Call on the server thread.
+     */
+    public void recordFailure(String why) {
+        State current = state;
+        if (current != State.READY) {
+            return;
+        }
+        if (++consecutiveFailures >= FAILURES_TO_DEGRADE) {
+            degrade(why);
+        }
+    }
+
+    /**
+     * A cycle completed. Call on the server thread.
+     */
+    public void recordSuccess() {
+        consecutiveFailures = 0;
+        if (state == State.DEGRADED) {
+            ready();
+        }
+    }
+
+    /**
+     * In DEGRADED, run the probe if the backoff allows it and go back to READY if it passes.
+     *
+     * @return true if the state is READY afterwards
+     */
+    public boolean tryRecover(BooleanSupplier probe) {
+        State current = state;
+        if (current != State.DEGRADED) {
+            return current == State.READY;
+        }
+        long now = System.nanoTime();
+        if (now < nextRecoveryNanos) {
+            return false;
+        }
+        boolean recovered;
+        try {
+            recovered = probe.getAsBoolean();
+        } catch (Exception e) {
+            recovered = false;
+        }
+        if (recovered) {
+            LOGGER.info("[mc_mod] MineColonies answers again, autofulfill resumed");
+            ready();
+            return true;
+        }
+        long delaySeconds = Math.min(MAX_RECOVERY_SECONDS, (long) MIN_RECOVERY_SECONDS << Math.min(++recoveryAttempts, 10));
+        nextRecoveryNanos = now + TimeUnit.SECONDS.toNanos(delaySeconds);
+        return false;
+    }
+
+    private void transition(State next) {
+        State previous = state;
+        state = next;
+        if (previous != next) {
+            if (next == State.DEGRADED) {
+                LOGGER.warn("[mc_mod] Autofulfill degraded: {}", reason);
+            } else {
+                LOGGER.info("[mc_mod] Autofulfill lifecycle: {} -> {}", previous, next);
+            }
+        }
+    }
+}
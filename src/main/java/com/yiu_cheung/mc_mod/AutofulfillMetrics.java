@@ -0,0 +1,285 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Autofulfill counters and latency histograms.
+ *
+ * Counters are {@link LongAdder}s, so recording from the server thread and the discovery workers
+ * never contends. Besides lifetime totals, everything is kept in one-minute slots covering the
+ * last hour, from which the 1m, 5m and 1h windows are summed. Windows are aligned to whole
+ * minutes: the 1m window is the current minute plus the previous one. Outcomes are also broken
+ * down by colony, building type, resolver and item.
+ */
+public final class AutofulfillMetrics {
+
+    public enum Outcome {
+        PROCESSED, SUCCESS, FAILED, SKIPPED
+    }
+
+    public enum Timer {
+        /** Wall time from the start of a scheduled cycle to its last commit */
+        CYCLE("Cycle"),
+        /** Server thread time in the discovery slices of a cycle, i.e. the MineColonies lookups */
+        DISCOVERY("Discovery"),
+        /** Commit time per citizen batch, however many of the citizen's requests it delivers */
+        BATCH("Batch"),
+        /** Time from server start until the MineColonies API, and then each colony, was ready */
+        READINESS("Readiness");
+
+        private final String label;
+
+        Timer(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Window {
+        ONE_MINUTE("1m", 1),
+        FIVE_MINUTES("5m", 5),
+        ONE_HOUR("1h", 60);
+
+        private final String label;
+        private final int minutes;
+
+        Window(String label, int minutes) {
+            this.label = label;
+            this.minutes = minutes;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    public enum Dimension {
+        COLONY, BUILDING, RESOLVER, ITEM;
+
+        public static Dimension parse(String value) {
+            return Dimension.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * Lifetime success and failure counts for one breakdown key.
+     */
+    public record BreakdownEntry(String key, long successes, long failures) {
+        public long total() {
+            return successes + failures;
+        }
+    }
+
+    /**
+     * Counts and a merged histogram over one window.
+     */
+    public record Snapshot(long[] outcomes, LatencyHistogram[] timers) {
+        public long get(Outcome outcome) {
+            return outcomes[outcome.ordinal()];
+        }
+
+        public long getPercentileMicros(Timer timer, double percentile) {
+            return timers[timer.ordinal()].getValueAtPercentile(percentile);
+        }
+
+        public long getMaxMicros(Timer timer) {
+            return timers[timer.ordinal()].getMaxMicros();
+        }
+
+        public long getCount(Timer timer) {
+            return timers[timer.ordinal()].getTotalCount();
+        }
+    }
+
+    private static final long SLOT_MILLIS = 60_000;
+    // One hour plus the slot being filled
+    private static final int SLOT_COUNT = 61;
+    private static final int MAX_BREAKDOWN_KEYS = 256;
+    private static final String OTHER_KEY = "(other)";
+
+    private static final class Slot {
+        volatile long minute = -1;
+        final LongAdder[] outcomes = newAdders(Outcome.values().length);
+        // Allocated on first use and guarded by the slot's lock
+        final LatencyHistogram[] timers = new LatencyHistogram[Timer.values().length];
+    }
+
+    private final LongAdder[] totals = newAdders(Outcome.values().length);
+    private final Slot[] slots = new Slot[SLOT_COUNT];
+    private final List<Map<Object, LongAdder[]>> breakdowns = new ArrayList<>();
+
+    public AutofulfillMetrics() {
+        for (int i = 0; i < SLOT_COUNT; i++) {
+            slots[i] = new Slot();
+        }
+        for (int i = 0; i < Dimension.values().length; i++) {
+            breakdowns.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    public void record(Outcome outcome) {
+        record(outcome, 1);
+    }
+
+    public void record(Outcome outcome, long count) {
+        if (count <= 0) {
+            return;
+        }
+        totals[outcome.ordinal()].add(count);
+        currentSlot().outcomes[outcome.ordinal()].add(count);
+    }
+
+    public void recordTime(Timer timer, long nanos) {
+        Slot slot = currentSlot();
+        synchronized (slot) {
+            LatencyHistogram histogram = slot.timers[timer.ordinal()];
+            if (histogram == null) {
+                histogram = new LatencyHistogram();
+                slot.timers[timer.ordinal()] = histogram;
+            }
+            histogram.recordNanos(nanos);
+        }
+    }
+
+    /**
+     * Count a success or failure against a key of each dimension.
+     */
+    public void recordBreakdown(boolean success, Object colony, String building, String resolver, String item) {
+        addBreakdown(Dimension.COLONY, colony, success);
+        addBreakdown(Dimension.BUILDING, building, success);
+        addBreakdown(Dimension.RESOLVER, resolver, success);
+        addBreakdown(Dimension.ITEM, item, success);
+    }
+
+    private void addBreakdown(Dimension dimension, Object key, boolean success) {
+        Map<Object, LongAdder[]> counts = breakdowns.get(dimension.ordinal());
+        LongAdder[] adders = counts.get(key);
+        if (adders == null) {
+            // Keep the key space bounded, late keys are lumped together
+            Object bounded = counts.size() < MAX_BREAKDOWN_KEYS ? key : OTHER_KEY;
+            adders = counts.computeIfAbsent(bounded, k -> newAdders(2));
+        }
+        adders[success ? 0 : 1].increment();
+    }
+
+    public long getTotal(Outcome outcome) {
+        return totals[outcome.ordinal()].sum();
+    }
+
+    /**
+     * Add lifetime totals carried over from an earlier run.
+     */
+    public void restoreTotal(Outcome outcome, long count) {
+        totals[outcome.ordinal()].add(count);
+    }
+
+    /**
+     * @return lifetime {successes, failures} of one key, zeros if it was never counted
+     */
+    public long[] getBreakdown(Dimension dimension, Object key) {
+        LongAdder[] adders = breakdowns.get(dimension.ordinal()).get(key);
+        return adders != null ? new long[] {adders[0].sum(), adders[1].sum()} : new long[2];
+    }
+
+    /**
+     * Add breakdown counts carried over from an earlier run.
+     */
+    public void restoreBreakdown(Dimension dimension, Object key, long successes, long failures) {
+        if (successes == 0 && failures == 0) {
+            return;
+        }
+        Map<Object, LongAdder[]> counts = breakdowns.get(dimension.ordinal());
+        Object bounded = counts.containsKey(key) || counts.size() < MAX_BREAKDOWN_KEYS ? key : OTHER_KEY;
+        LongAdder[] adders = counts.computeIfAbsent(bounded, k -> newAdders(2));
+        adders[0].add(successes);
+        adders[1].add(failures);
+    }
+
+    public Snapshot snapshot(Window window) {
+        long now = System.currentTimeMillis() / SLOT_MILLIS;
+        long[] outcomes = new long[Outcome.values().length];
+        LatencyHistogram[] timers = new LatencyHistogram[Timer.values().length];
+        for (int t = 0; t < timers.length; t++) {
+            timers[t] = new LatencyHistogram();
+        }
+        for (long minute = now - window.minutes; minute <= now; minute++) {
+            Slot slot = slots[(int) (minute % SLOT_COUNT)];
+            if (slot.minute != minute) continue;
+            for (int o = 0; o < outcomes.length; o++) {
+                outcomes[o] += slot.outcomes[o].sum();
+            }
+            synchronized (slot) {
+                for (int t = 0; t < timers.length; t++) {
+                    if (slot.timers[t] != null) {
+                        timers[t].add(slot.timers[t]);
+                    }
+                }
+            }
+        }
+        return new Snapshot(outcomes, timers);
+    }
+
+    /**
+     * @return the keys of a dimension with the most outcomes, highest first
+     */
+    public List<BreakdownEntry> getTopBreakdown(Dimension dimension, int limit) {
+        List<BreakdownEntry> entries = new ArrayList<>();
+        for (Map.Entry<Object, LongAdder[]> entry : breakdowns.get(dimension.ordinal()).entrySet()) {
+            entries.add(new BreakdownEntry(String.valueOf(entry.getKey()), entry.getValue()[0].sum(), entry.getValue()[1].sum()));
+        }
+        entries.sort(Comparator.comparingLong(BreakdownEntry::total).reversed());
+        return entries.size() > limit ? entries.subList(0, limit) : entries;
+    }
+
+    public void reset() {
+        for (LongAdder adder : totals) {
+            adder.reset();
+        }
+        for (Slot slot : slots) {
+            synchronized (slot) {
+                slot.minute = -1;
+            }
+        }
+        for (Map<Object, LongAdder[]> counts : breakdowns) {
+            counts.clear();
+        }
+    }
+
+    private Slot currentSlot() {
+        long minute = System.currentTimeMillis() / SLOT_MILLIS;
+        Slot slot = slots[(int) (minute % SLOT_COUNT)];
+        if (slot.minute != minute) {
+            synchronized (slot) {
+                if (slot.minute != minute) {
+                    // Slot last held data from an hour ago, start it over
+                    for (LongAdder adder : slot.outcomes) {
+                        adder.reset();
+                    }
+                    for (LatencyHistogram histogram : slot.timers) {
+                        if (histogram != null) {
+                            histogram.reset();
+                        }
+                    }
+                    slot.minute = minute;
+                }
+            }
+        }
+        return slot;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
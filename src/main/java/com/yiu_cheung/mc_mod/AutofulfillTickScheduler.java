@@ -0,0 +1,345 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.server.MinecraftServer;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs autofulfill cycles on the server thread, one slice per tick.
+ *
+ * A cycle has two phases. Discovery plans every colony's requests in parallel (see
+ * {@link FulfillmentDiscovery}) while the server thread waits, a slice per tick within the
+ * per-tick budget and resuming each colony where it stopped. Commit then applies the plans,
+ * grouped per citizen into {@link InventoryBatch}es: each server tick commits batches until the
+ * per-tick budget is used up and keeps its place in a cursor for the next tick. A large backlog
+ * is spread over several ticks rather than causing a tick spike, and MineColonies state is only
+ * ever changed from the server thread. The batches are taken from the colonies in turn, see
+ * {@link ColonyFairness}.
+ *
+ * In {@link RequestIntake.Mode#INCREMENTAL} mode every tick also runs a {@link RequestIntake}
+ * scan over the colonies that are due, and newly assigned tokens are processed ahead of the full
+ * cycle, so new requests do not wait for the next interval. The scan and the tokens count against
+ * the same per-tick budget as the commit. Their outcomes are reported with the next cycle's chat
+ * summary.
+ *
+ * The interval adapts between a minimum and a maximum. It halves after a cycle that found work
+ * or left tokens queued, and grows by half after a cycle that found nothing, so a busy colony is
+ * served quickly and idle ones cost a scan every so often. While the server's average tick time
+ * is above the threshold the scheduler backs off: no cycle or intake scan starts, the interval
+ * doubles each time a cycle is due, and a cycle already running commits one batch per tick.
+ */
+public class AutofulfillTickScheduler {
+    private static final Logger LOGGER = McMod.LOGGER;
+    public static final int TICKS_PER_SECOND = 20;
+
+    private final McMod mod;
+
+    // Written from command/startup code, read on the server thread
+    private volatile boolean running = false;
+    private volatile boolean cycleRequested = false;
+    private volatile int baseIntervalTicks;
+    private volatile int minIntervalTicks;
+    private volatile int maxIntervalTicks;
+    // Where the adaptive interval currently is, between the bounds
+    private volatile int intervalTicks;
+    private volatile long msptThresholdNanos = 0;
+    private volatile long averageTickNanos = 0;
+    private volatile boolean overloaded = false;
+    private volatile long budgetNanos;
+    private volatile RequestIntake.Mode intakeMode;
+
+    // Commit cursor, only touched on the server thread
+    private int ticksSinceLastCycle = 0;
+    private FulfillmentDiscovery.Pass discovery = null;
+    private Iterator<InventoryBatch> batchCursor = null;
+    private int coloniesThisCycle = 0;
+    private int plannedThisCycle = 0;
+    private final ColonyFairness fairness = new ColonyFairness();
+
+    // Incremental intake, only touched on the server thread
+    private final RequestIntake intake = new RequestIntake();
+    private final Deque<RequestIntake.PendingToken> pendingTokens = new ArrayDeque<>();
+
+    public AutofulfillTickScheduler(McMod mod, int intervalSeconds, int budgetMicros, RequestIntake.Mode intakeMode) {
+        this.mod = mod;
+        this.intakeMode = intakeMode;
+        minIntervalTicks = TICKS_PER_SECOND;
+        maxIntervalTicks = Math.max(1, intervalSeconds * TICKS_PER_SECOND);
+        setIntervalSeconds(intervalSeconds);
+        setBudgetMicros(budgetMicros);
+    }
+
+    /**
+     * Start scheduling cycles. In polling mode the first cycle runs on the next tick; in
+     * incremental mode the first intake scan already picks up every open request.
+     */
+    public void start() {
+        cycleRequested = intakeMode == RequestIntake.Mode.POLLING;
+        running = true;
+        LOGGER.info("[mc_mod] Autofulfill tick scheduler started ({} ticks interval, {} us budget)",
+            intervalTicks, budgetNanos / 1000);
+    }
+
+    public void stop() {
+        running = false;
+        cycleRequested = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Ask for a cycle on the next tick instead of waiting for the interval. Has no effect while a
+     * cycle is already in progress.
+     */
+    public void requestCycle() {
+        cycleRequested = true;
+    }
+
+    /**
+     * Set where the interval starts, and restart it from there.
+     */
+    public void setIntervalSeconds(int seconds) {
+        baseIntervalTicks = Math.max(1, seconds * TICKS_PER_SECOND);
+        intervalTicks = clampInterval(baseIntervalTicks);
+    }
+
+    public void setIntervalBounds(int minSeconds, int maxSeconds) {
+        minIntervalTicks = Math.max(1, minSeconds * TICKS_PER_SECOND);
+        maxIntervalTicks = Math.max(minIntervalTicks, maxSeconds * TICKS_PER_SECOND);
+        intervalTicks = clampInterval(intervalTicks);
+    }
+
+    /**
+     * @param millis average tick time above which the scheduler backs off, 0 to never back off
+     */
+    public void setMsptThresholdMillis(int millis) {
+        msptThresholdNanos = Math.max(0, millis) * 1_000_000L;
+        if (msptThresholdNanos == 0) {
+            overloaded = false;
+        }
+    }
+
+    public double getIntervalSeconds() {
+        return intervalTicks / (double) TICKS_PER_SECOND;
+    }
+
+    public int getMinIntervalSeconds() {
+        return minIntervalTicks / TICKS_PER_SECOND;
+    }
+
+    public int getMaxIntervalSeconds() {
+        return maxIntervalTicks / TICKS_PER_SECOND;
+    }
+
+    public double getAverageTickMillis() {
+        return averageTickNanos / 1_000_000.0;
+    }
+
+    public int getMsptThresholdMillis() {
+        return (int) (msptThresholdNanos / 1_000_000);
+    }
+
+    /**
+     * @return true while the server's tick time is over the threshold and the scheduler backs off
+     */
+    public boolean isOverloaded() {
+        return overloaded;
+    }
+
+    public void setBudgetMicros(int micros) {
+        budgetNanos = Math.max(1, micros) * 1000L;
+    }
+
+    public int getBudgetMicros() {
+        return (int) (budgetNanos / 1000);
+    }
+
+    public void setIntakeMode(RequestIntake.Mode mode) {
+        intakeMode = mode;
+    }
+
+    public RequestIntake.Mode getIntakeMode() {
+        return intakeMode;
+    }
+
+    public ColonyFairness getFairness() {
+        return fairness;
+    }
+
+    /**
+     * @return colony ID to tokens the intake has queued and not processed yet
+     */
+    public Map<Integer, Integer> getPendingIntakeByColony() {
+        Map<Integer, Integer> pending = new HashMap<>();
+        for (RequestIntake.PendingToken token : pendingTokens) {
+            pending.merge(MineColoniesBindings.getColonyId(token.colony()), 1, Integer::sum);
+        }
+        return pending;
+    }
+
+    public boolean isCycleInProgress() {
+        return batchCursor != null || discovery != null;
+    }
+
+    public void onServerTick(ServerTickEvent.Post event) {
+        if (!running) {
+            resetCursor();
+            resetIntake();
+            return;
+        }
+
+        updateLoad(event.getServer());
+        long deadline = System.nanoTime() + budgetNanos;
+        if (intakeMode != RequestIntake.Mode.INCREMENTAL) {
+            resetIntake();
+        } else if (!overloaded) {
+            // Tokens already queued wait for the load to drop
+            runIntake(deadline);
+        }
+
+        try {
+            if (batchCursor == null && discovery == null) {
+                ticksSinceLastCycle++;
+                if (!cycleRequested && ticksSinceLastCycle < intervalTicks) {
+                    return;
+                }
+                if (overloaded) {
+                    // A requested cycle still runs as soon as the load drops
+                    ticksSinceLastCycle = 0;
+                    intervalTicks = Math.min(maxIntervalTicks, intervalTicks * 2);
+                    LOGGER.debug("[mc_mod] Server tick at {} ms, postponing autofulfill cycle by {} ticks",
+                        averageTickNanos / 1_000_000, intervalTicks);
+                    return;
+                }
+                cycleRequested = false;
+                ticksSinceLastCycle = 0;
+                Collection<?> colonies = mod.beginAutofulfillCycle();
+                if (colonies == null) {
+                    // Still report what the intake did since the last cycle
+                    McMod.flushMessages();
+                    return;
+                }
+                discovery = mod.beginDiscovery(colonies);
+            }
+
+            if (discovery != null) {
+                // One request per colony per tick while the server is overloaded
+                if (!discovery.advance(overloaded ? System.nanoTime() : deadline)) {
+                    return;
+                }
+                List<FulfillmentPlan> plans = mod.finishDiscovery(discovery);
+                List<InventoryBatch> batches = InventoryBatch.group(plans);
+                LOGGER.debug("[mc_mod] Discovery planned {} requests for {} citizens across {} colonies",
+                    plans.size(), batches.size(), discovery.getColonyCount());
+                batchCursor = fairness.order(batches);
+                coloniesThisCycle = discovery.getColonyCount();
+                plannedThisCycle = plans.size();
+                discovery = null;
+                if (System.nanoTime() >= deadline) {
+                    return;
+                }
+            }
+
+            // Always make progress, even if the budget is smaller than a single commit
+            do {
+                if (!batchCursor.hasNext()) {
+                    int colonyCount = coloniesThisCycle;
+                    adaptInterval(plannedThisCycle + pendingTokens.size());
+                    resetCursor();
+                    mod.finishAutofulfillCycle(colonyCount);
+                    return;
+                }
+                mod.commitBatch(batchCursor.next());
+            } while (!overloaded && System.nanoTime() < deadline);
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error in autofulfill tick slice, abandoning cycle: {}", e.getMessage(), e);
+            mod.recordCycleFailure("cycle failed: " + e.getMessage());
+            resetCursor();
+        }
+    }
+
+    /**
+     * Queue newly assigned tokens and process as many queued tokens as the budget allows. Whatever
+     * of the budget this uses is no longer there for the commit.
+     */
+    private void runIntake(long deadline) {
+        try {
+            if (!mod.isAutofulfillActive()) {
+                return;
+            }
+            int queued = intake.scan(mod.getReadyColonies(), pendingTokens, deadline);
+            if (queued > 0) {
+                LOGGER.debug("[mc_mod] Intake queued {} new request tokens", queued);
+            }
+            while (!pendingTokens.isEmpty() && System.nanoTime() < deadline) {
+                RequestIntake.PendingToken pending = pendingTokens.poll();
+                mod.processToken(pending.colony(), pending.requestManager(), pending.token());
+            }
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error in request intake, resetting: {}", e.getMessage(), e);
+            mod.recordCycleFailure("request intake failed: " + e.getMessage());
+            resetIntake();
+        }
+    }
+
+    /**
+     * Read the server's average tick time. The scheduler only counts as recovered once the
+     * average is a tenth below the threshold, so it doesn't flap around it.
+     */
+    private void updateLoad(MinecraftServer server) {
+        if (server == null) {
+            return;
+        }
+        long average = server.getAverageTickTimeNanos();
+        averageTickNanos = average;
+        long threshold = msptThresholdNanos;
+        if (threshold == 0) {
+            return;
+        }
+        if (!overloaded && average > threshold) {
+            overloaded = true;
+            LOGGER.info("[mc_mod] Server tick time {} ms is over {} ms, autofulfill backing off",
+                average / 1_000_000, threshold / 1_000_000);
+        } else if (overloaded && average < threshold - threshold / 10) {
+            overloaded = false;
+            LOGGER.info("[mc_mod] Server tick time back to {} ms, autofulfill resuming", average / 1_000_000);
+        }
+    }
+
+    /**
+     * Shorten the interval after a cycle with work to do, lengthen it after an idle one.
+     *
+     * @param backlog requests the cycle planned plus tokens still queued by the intake
+     */
+    private void adaptInterval(int backlog) {
+        int current = intervalTicks;
+        int next = backlog > 0 ? current / 2 : current + Math.max(1, current / 2);
+        intervalTicks = clampInterval(next);
+    }
+
+    private int clampInterval(int ticks) {
+        return Math.max(minIntervalTicks, Math.min(maxIntervalTicks, ticks));
+    }
+
+    private void resetIntake() {
+        pendingTokens.clear();
+        intake.reset();
+    }
+
+    private void resetCursor() {
+        discovery = null;
+        batchCursor = null;
+        coloniesThisCycle = 0;
+        plannedThisCycle = 0;
+    }
+}
@@ -0,0 +1,248 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shares a cycle's commit work out between colonies, so one colony with hundreds of requests
+ * can't keep the others waiting until it is done.
+ *
+ * Each colony gets a queue of its batches, and {@link #order} hands them out by deficit
+ * round-robin: a colony earns {@value #QUANTUM} requests per round for each point of weight and
+ * spends them on its batches, one request each. Weights come from the config by colony ID
+ * (1 otherwise). A colony whose oldest queued request has waited {@code agingSeconds} earns one
+ * more point for each such period, up to four times its weight. Within a colony, batches for the
+ * buildings listed in the building priority go first, in list order, then the oldest requests.
+ *
+ * A request's age counts from the first cycle that planned it, for as long as later cycles keep
+ * planning it. The wait recorded when it is handed out gives the per-colony wait times; the
+ * intake, which serves new requests within the tick they show up, is not counted. Only touched
+ * on the server thread.
+ */
+public final class ColonyFairness {
+    private static final int QUANTUM = 4;
+    private static final int MAX_AGE_BOOST = 3;
+
+    /**
+     * One colony's share of the current cycle and its waits so far.
+     *
+     * @param queued requests of the current cycle not handed out yet
+     * @param served requests handed out since the server started
+     */
+    public record ColonyStats(int colonyId, int weight, int queued, long served,
+                              long waitMedianMicros, long waitP90Micros, long waitMaxMicros, long lastServedMillisAgo) {
+    }
+
+    private static final class ColonyState {
+        final int colonyId;
+        final ArrayDeque<InventoryBatch> queue = new ArrayDeque<>();
+        final LatencyHistogram waits = new LatencyHistogram();
+        int weight = 1;
+        long deficit = 0;
+        int queued = 0;
+        long served = 0;
+        long lastServedNanos = 0;
+
+        ColonyState(int colonyId) {
+            this.colonyId = colonyId;
+        }
+    }
+
+    private final Map<Integer, ColonyState> colonies = new LinkedHashMap<>();
+    // Token -> when a cycle first planned it
+    private Map<Object, Long> firstPlannedNanos = new HashMap<>();
+
+    private Map<Integer, Integer> weights = Map.of();
+    private List<String> buildingPriority = List.of();
+    private long agingNanos = 0;
+
+    /**
+     * @param colonyWeights see {@link #parseWeights}
+     * @param buildingPriority see {@link #parseBuildings}
+     * @param agingSeconds 0 to not favour colonies with old requests
+     * @throws IllegalArgumentException if the weights can't be read
+     */
+    public void configure(String colonyWeights, String buildingPriority, int agingSeconds) {
+        this.weights = parseWeights(colonyWeights);
+        this.buildingPriority = parseBuildings(buildingPriority);
+        this.agingNanos = TimeUnit.SECONDS.toNanos(Math.max(0, agingSeconds));
+    }
+
+    /**
+     * Queue a cycle's batches and return them in the order to commit. Forgets the age of
+     * requests this cycle did not plan.
+     */
+    public Iterator<InventoryBatch> order(List<InventoryBatch> batches) {
+        long now = System.nanoTime();
+        Map<Object, Long> previous = firstPlannedNanos;
+        Map<Object, Long> planned = new HashMap<>();
+        Map<InventoryBatch, Long> oldest = new IdentityHashMap<>();
+        Map<InventoryBatch, Integer> rank = new IdentityHashMap<>();
+
+        for (ColonyState colony : colonies.values()) {
+            colony.queue.clear();
+            colony.queued = 0;
+            colony.deficit = 0;
+        }
+        for (InventoryBatch batch : batches) {
+            long batchOldest = now;
+            for (FulfillmentPlan plan : batch.getPlans()) {
+                Long since = previous.get(plan.token());
+                long first = since != null ? since : now;
+                planned.put(plan.token(), first);
+                batchOldest = Math.min(batchOldest, first);
+            }
+            FulfillmentPlan head = batch.getPlans().get(0);
+            oldest.put(batch, batchOldest);
+            rank.put(batch, buildingRank(head.buildingName()));
+            int colonyId = MineColoniesBindings.getColonyId(head.colony());
+            ColonyState colony = colonies.computeIfAbsent(colonyId, ColonyState::new);
+            colony.queue.add(batch);
+            colony.queued += batch.getPlans().size();
+        }
+        firstPlannedNanos = planned;
+
+        Comparator<InventoryBatch> byPriority = Comparator.comparing(rank::get);
+        byPriority = byPriority.thenComparing(oldest::get);
+        ArrayDeque<ColonyState> active = new ArrayDeque<>();
+        for (ColonyState colony : colonies.values()) {
+            if (colony.queue.isEmpty()) {
+                continue;
+            }
+            List<InventoryBatch> sorted = new ArrayList<>(colony.queue);
+            sorted.sort(byPriority);
+            colony.queue.clear();
+            colony.queue.addAll(sorted);
+            colony.weight = weights.getOrDefault(colony.colonyId, 1);
+            if (agingNanos > 0) {
+                long waited = now - oldest.get(sorted.get(0));
+                colony.weight += (int) Math.min((long) colony.weight * MAX_AGE_BOOST, waited / agingNanos);
+            }
+            active.add(colony);
+        }
+        return new Round(active);
+    }
+
+    public List<ColonyStats> getStats() {
+        long now = System.nanoTime();
+        List<ColonyStats> stats = new ArrayList<>(colonies.size());
+        for (ColonyState colony : colonies.values()) {
+            stats.add(new ColonyStats(colony.colonyId, colony.weight, colony.queued, colony.served,
+                colony.waits.getValueAtPercentile(50), colony.waits.getValueAtPercentile(90), colony.waits.getMaxMicros(),
+                colony.lastServedNanos == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(now - colony.lastServedNanos)));
+        }
+        return stats;
+    }
+
+    public void clear() {
+        colonies.clear();
+        firstPlannedNanos = new HashMap<>();
+    }
+
+    /**
+     * Colony weights, e.g. "1=3, 12=2". Weights are 1-100.
+     */
+    static Map<Integer, Integer> parseWeights(String text) {
+        Map<Integer, Integer> parsed = new HashMap<>();
+        for (String entry : text.split("[,\\s]+")) {
+            if (entry.isEmpty()) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            try {
+                int colonyId = Integer.parseInt(entry.substring(0, equals));
+                int weight = Integer.parseInt(entry.substring(equals + 1));
+                if (weight < 1 || weight > 100) {
+                    throw new IllegalArgumentException("weight of colony " + colonyId + " must be 1-100");
+                }
+                parsed.put(colonyId, weight);
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                throw new IllegalArgumentException("expected <colony id>=<weight>, got '" + entry + "'");
+            }
+        }
+        return Collections.unmodifiableMap(parsed);
+    }
+
+    /**
+     * Building types in the order they are served, e.g. "builder, miner", as named in
+     * /mcmod stats breakdown building.
+     */
+    static List<String> parseBuildings(String text) {
+        List<String> parsed = new ArrayList<>();
+        for (String name : text.split("[,\\s]+")) {
+            if (!name.isEmpty()) {
+                parsed.add(name.toLowerCase(Locale.ROOT));
+            }
+        }
+        return List.copyOf(parsed);
+    }
+
+    private int buildingRank(String buildingName) {
+        int index = buildingName == null ? -1 : buildingPriority.indexOf(buildingName.toLowerCase(Locale.ROOT));
+        return index >= 0 ? index : buildingPriority.size();
+    }
+
+    private void served(ColonyState colony, InventoryBatch batch) {
+        long now = System.nanoTime();
+        for (FulfillmentPlan plan : batch.getPlans()) {
+            Long since = firstPlannedNanos.get(plan.token());
+            colony.waits.recordNanos(since != null ? now - since : 0);
+        }
+        colony.served += batch.getPlans().size();
+        colony.lastServedNanos = now;
+    }
+
+    /**
+     * Deficit round-robin over the colonies with batches left. A colony that can't afford its
+     * next batch goes to the back of the line with another quantum.
+     */
+    private final class Round implements Iterator<InventoryBatch> {
+        private final ArrayDeque<ColonyState> active;
+
+        Round(ArrayDeque<ColonyState> active) {
+            this.active = active;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !active.isEmpty();
+        }
+
+        @Override
+        public InventoryBatch next() {
+            if (active.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            while (true) {
+                ColonyState colony = active.peekFirst();
+                InventoryBatch batch = colony.queue.peekFirst();
+                int cost = batch.getPlans().size();
+                if (colony.deficit >= cost) {
+                    colony.queue.pollFirst();
+                    colony.deficit -= cost;
+                    colony.queued -= cost;
+                    if (colony.queue.isEmpty()) {
+                        colony.deficit = 0;
+                        active.pollFirst();
+                    }
+                    served(colony, batch);
+                    return batch;
+                }
+                active.pollFirst();
+                colony.deficit += (long) QUANTUM * colony.weight;
+                active.addLast(colony);
+            }
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.yiu_cheung.mc_mod;
+
+import net.neoforged.neoforge.event.level.LevelEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds out when MineColonies, and each colony's request system, can be used, instead of waiting a
+ * fixed time after the server started.
+ *
+ * From server start the API is probed on every server tick (bind, API instance, colony manager,
+ * colony list) until it answers. A colony counts as ready once its request manager, both
+ * resolvers and the assigned token lists can be read. Colonies are gated one by one: a colony
+ * that isn't ready yet is probed again at most every {@value #COLONY_PROBE_MILLIS} ms, while the
+ * ones that are ready are already served. MineColonies loads its colonies while a level loads, so
+ * every server-side {@link LevelEvent.Load} probes all colonies again on the next tick.
+ *
+ * The API probe moves the {@link AutofulfillLifecycle} from STARTING to READY. Time from server
+ * start to API and colony readiness is recorded as the {@link AutofulfillMetrics.Timer#READINESS}
+ * timer. Probing, including {@link #filterReady}, runs on the server thread.
+ */
+public final class ColonyReadiness {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    private static final long COLONY_PROBE_MILLIS = 1000;
+
+    private final AutofulfillLifecycle lifecycle;
+    private final AutofulfillMetrics metrics;
+    private final Runnable onReady;
+
+    private volatile long startNanos = 0;
+    private volatile long apiReadyNanos = -1;
+    private volatile boolean reprobeRequested = false;
+
+    // Colony ID -> nanoseconds from server start until it was ready
+    private final Map<Integer, Long> readyColonies = new ConcurrentHashMap<>();
+    // Colony ID -> earliest System.nanoTime() of the next probe, for colonies not ready yet
+    private final Map<Integer, Long> nextProbe = new ConcurrentHashMap<>();
+
+    /**
+     * @param onReady run on the server thread once the MineColonies API answers
+     */
+    public ColonyReadiness(AutofulfillLifecycle lifecycle, AutofulfillMetrics metrics, Runnable onReady) {
+        this.lifecycle = lifecycle;
+        this.metrics = metrics;
+        this.onReady = onReady;
+    }
+
+    public void start() {
+        readyColonies.clear();
+        nextProbe.clear();
+        apiReadyNanos = -1;
+        startNanos = System.nanoTime();
+        lifecycle.starting();
+    }
+
+    public void stop() {
+        apiReadyNanos = -1;
+        readyColonies.clear();
+        nextProbe.clear();
+    }
+
+    /**
+     * A level finished loading, so MineColonies may have loaded more colonies: probe every colony
+     * that isn't ready on the next tick instead of waiting for its retry.
+     */
+    public void onLevelLoad(LevelEvent.Load event) {
+        if (lifecycle.get() != AutofulfillLifecycle.State.STOPPING && !event.getLevel().isClientSide()) {
+            reprobeRequested = true;
+        }
+    }
+
+    public void onServerTick(ServerTickEvent.Post event) {
+        AutofulfillLifecycle.State current = lifecycle.get();
+        if (current == AutofulfillLifecycle.State.STARTING) {
+            probeApi();
+        } else if (current == AutofulfillLifecycle.State.READY && reprobeRequested) {
+            reprobeRequested = false;
+            nextProbe.clear();
+            try {
+                filterReady(MineColoniesBindings.getAllColonies());
+            } catch (Exception e) {
+                LOGGER.debug("[mc_mod] Colony probe after level load failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the colonies whose request system is ready; the others are probed if their retry is
+     * due
+     */
+    public List<Object> filterReady(Collection<?> colonies) {
+        List<Object> ready = new ArrayList<>(colonies.size());
+        for (Object colony : colonies) {
+            if (isColonyReady(colony)) {
+                ready.add(colony);
+            }
+        }
+        return ready;
+    }
+
+    public boolean isColonyReady(Object colony) {
+        if (apiReadyNanos < 0) {
+            return false;
+        }
+        int colonyId;
+        try {
+            colonyId = MineColoniesBindings.getColonyId(colony);
+        } catch (Exception e) {
+            return false;
+        }
+        if (readyColonies.containsKey(colonyId)) {
+            return true;
+        }
+        long now = System.nanoTime();
+        Long due = nextProbe.get(colonyId);
+        if (due != null && now < due) {
+            return false;
+        }
+        if (!probeColony(colony)) {
+            nextProbe.put(colonyId, now + TimeUnit.MILLISECONDS.toNanos(COLONY_PROBE_MILLIS));
+            return false;
+        }
+        long elapsed = now - startNanos;
+        nextProbe.remove(colonyId);
+        readyColonies.put(colonyId, elapsed);
+        metrics.recordTime(AutofulfillMetrics.Timer.READINESS, elapsed);
+        LOGGER.info("[mc_mod] Colony {} ready for autofulfill after {} ms", colonyId, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        return true;
+    }
+
+    public int getReadyColonyCount() {
+        return readyColonies.size();
+    }
+
+    public int getWaitingColonyCount() {
+        return nextProbe.size();
+    }
+
+    /**
+     * @return milliseconds from server start until the API answered, or -1 if it hasn't yet
+     */
+    public long getApiReadyMillis() {
+        long nanos = apiReadyNanos;
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * @return milliseconds from server start until the slowest colony so far was ready, or -1
+     */
+    public long getSlowestColonyMillis() {
+        long slowest = -1;
+        for (long nanos : readyColonies.values()) {
+            slowest = Math.max(slowest, nanos);
+        }
+        return slowest < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(slowest);
+    }
+
+    /**
+     * The full walk from the API to the colony list, for startup and for recovering from
+     * DEGRADED.
+     *
+     * @return true if every step answered
+     */
+    public static boolean isApiAnswering() {
+        if (!MineColoniesBindings.isBound()) {
+            return false;
+        }
+        try {
+            Object api = MineColoniesBindings.getApi();
+            if (api == null) return false;
+            Object colonyManager = MineColoniesBindings.getColonyManager(api);
+            if (colonyManager == null) return false;
+            return MineColoniesBindings.getAllColonies(colonyManager) != null;
+        } catch (Exception e) {
+            LOGGER.debug("[mc_mod] MineColonies not answering: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void probeApi() {
+        // A missing binding is permanent, so stop probing
+        if (!MineColoniesBindings.bind()) {
+            LOGGER.error("[mc_mod] Autofulfill disabled, MineColonies API does not match:\n{}", MineColoniesBindings.getFailureReport());
+            lifecycle.degrade("MineColonies API does not match this version");
+            return;
+        }
+        // Not initialised yet, try again next tick
+        if (!isApiAnswering()) {
+            return;
+        }
+        long elapsed = System.nanoTime() - startNanos;
+        apiReadyNanos = elapsed;
+        metrics.recordTime(AutofulfillMetrics.Timer.READINESS, elapsed);
+        LOGGER.info("[mc_mod] MineColonies API ready after {} ms", TimeUnit.NANOSECONDS.toMillis(elapsed));
+        onReady.run();
+    }
+
+    /**
+     * A colony is ready once everything a cycle reads from its request system answers.
+     */
+    private static boolean probeColony(Object colony) {
+        try {
+            Object requestManager = MineColoniesBindings.getRequestManager(colony);
+            if (requestManager == null) return false;
+            Object playerResolver = MineColoniesBindings.getPlayerResolver(requestManager);
+            Object retryingResolver = MineColoniesBindings.getRetryingResolver(requestManager);
+            if (playerResolver == null || retryingResolver == null) return false;
+            MineColoniesBindings.getPlayerAssignedRequests(playerResolver);
+            MineColoniesBindings.getRetryingAssignedRequests(retryingResolver);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
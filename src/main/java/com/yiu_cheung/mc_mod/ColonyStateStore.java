@@ -0,0 +1,406 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Autofulfill state kept in the world save, so a restart picks up where the last run stopped.
+ *
+ * Each colony has its own small binary snapshot in {@code <world>/mc_mod/state/colony-<id>.bin}:
+ * retry attempts and backoff deadlines, dead letters and partial deliveries for its open requests,
+ * keyed by the token's identifier, plus the colony's lifetime success and failure counts. A
+ * colony's snapshot is only read the first time the colony is touched after a start, and matched
+ * against the tokens still assigned; anything resolved while the server was down is dropped.
+ * Only colonies whose state changed since the last save are written again.
+ *
+ * Server-wide state (per-player message levels and the lifetime totals) goes into
+ * {@code global.bin}.
+ *
+ * Snapshots are built on the server thread, since they read MineColonies, and written on the
+ * given executor to a temporary file that is then moved over the old one.
+ */
+public final class ColonyStateStore {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    private static final int MAGIC = 0x4D435354; // "MCST"
+    private static final int VERSION = 1;
+
+    private static final int HAS_RETRY = 1;
+    private static final int HAS_DEAD_LETTER = 2;
+    private static final int HAS_PROGRESS = 4;
+
+    /**
+     * Server-wide state. Whether autofulfill is enabled is not part of it, config/mc_mod.toml
+     * decides that.
+     *
+     * @param totals         lifetime count per {@link AutofulfillMetrics.Outcome}, by name
+     * @param messageLevels  chat level chosen by each player
+     */
+    public record GlobalState(Map<String, Long> totals, Map<UUID, MessagePipeline.Level> messageLevels) {
+    }
+
+    /**
+     * Saved state of one request token. Each part is only present if its flag is set.
+     */
+    private record SavedToken(String tokenId, int flags, RetryTracker.SavedRetry retry, String description,
+                              int deadAttempts, long deadLetteredAtMillis, int delivered) {
+    }
+
+    private record ColonySnapshot(long successes, long failures, List<SavedToken> tokens) {
+    }
+
+    private record LoadedColony(Object colony, Object requestManager) {
+    }
+
+    private final Path directory;
+    private final ExecutorService io;
+    private final Function<Object, ? extends Collection<?>> assignedTokens;
+    private final RetryTracker retryTracker;
+    private final DeliveryProgress deliveryProgress;
+    private final AutofulfillMetrics metrics;
+
+    // Colonies restored since the start, by ID; only these are ever saved, so a colony that was
+    // never touched keeps its file as it is
+    private final Map<Integer, LoadedColony> loaded = new ConcurrentHashMap<>();
+    private final Set<Integer> dirty = ConcurrentHashMap.newKeySet();
+    private volatile boolean globalDirty = false;
+
+    /**
+     * @param assignedTokens the tokens currently assigned in a request manager
+     */
+    public ColonyStateStore(Path directory, ExecutorService io, Function<Object, ? extends Collection<?>> assignedTokens,
+                            RetryTracker retryTracker, DeliveryProgress deliveryProgress, AutofulfillMetrics metrics) throws IOException {
+        this.directory = directory;
+        this.io = io;
+        this.assignedTokens = assignedTokens;
+        this.retryTracker = retryTracker;
+        this.deliveryProgress = deliveryProgress;
+        this.metrics = metrics;
+        Files.createDirectories(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public int getLoadedCount() {
+        return loaded.size();
+    }
+
+    public int getDirtyCount() {
+        return dirty.size();
+    }
+
+    /**
+     * Restore a colony's saved state the first time it is seen; later calls return right away.
+     * Safe to call from the discovery workers, as long as a colony is only handled by one at a time.
+     */
+    public void restore(Object colony, Object requestManager) {
+        int colonyId = MineColoniesBindings.getColonyId(colony);
+        if (loaded.containsKey(colonyId) || loaded.putIfAbsent(colonyId, new LoadedColony(colony, requestManager)) != null) {
+            return;
+        }
+        ColonySnapshot snapshot;
+        try {
+            snapshot = readColony(colonyFile(colonyId));
+        } catch (IOException e) {
+            LOGGER.warn("[mc_mod] Ignoring unreadable state for colony {}: {}", colonyId, e.getMessage());
+            return;
+        }
+        if (snapshot == null) {
+            return;
+        }
+        metrics.restoreBreakdown(AutofulfillMetrics.Dimension.COLONY, colonyId, snapshot.successes(), snapshot.failures());
+        if (snapshot.tokens().isEmpty()) {
+            return;
+        }
+
+        Map<String, Object> tokensById = new HashMap<>();
+        for (Object token : assignedTokens.apply(requestManager)) {
+            tokensById.put(String.valueOf(MineColoniesBindings.getTokenIdentifier(token)), token);
+        }
+        int restored = 0;
+        for (SavedToken saved : snapshot.tokens()) {
+            Object token = tokensById.get(saved.tokenId());
+            if (token == null) {
+                // Resolved or cancelled while the server was down
+                continue;
+            }
+            Object request = MineColoniesBindings.getRequestForToken(requestManager, token);
+            if (request == null) {
+                continue;
+            }
+            Object state = MineColoniesBindings.getRequestState(request);
+            if ((saved.flags() & HAS_RETRY) != 0) {
+                retryTracker.restoreRetry(token, saved.retry());
+            }
+            if ((saved.flags() & HAS_DEAD_LETTER) != 0) {
+                retryTracker.restoreDeadLetter(new RetryTracker.DeadLetter(token, request, state, saved.description(),
+                    saved.deadAttempts(), saved.deadLetteredAtMillis()));
+            }
+            if ((saved.flags() & HAS_PROGRESS) != 0) {
+                deliveryProgress.add(token, request, state, saved.delivered());
+            }
+            restored++;
+        }
+        LOGGER.info("[mc_mod] Restored state of {} requests for colony {}, {} no longer open", restored, colonyId,
+            snapshot.tokens().size() - restored);
+    }
+
+    /**
+     * Note that a colony's state changed and should be saved with the next {@link #flush}.
+     */
+    public void markDirty(Object colony, Object requestManager) {
+        restore(colony, requestManager);
+        dirty.add(MineColoniesBindings.getColonyId(colony));
+    }
+
+    /**
+     * Mark every restored colony for saving, for changes that aren't tied to one colony.
+     */
+    public void markAllDirty() {
+        dirty.addAll(loaded.keySet());
+    }
+
+    public void markGlobalDirty() {
+        globalDirty = true;
+    }
+
+    /**
+     * Save the changed colonies, and the server-wide state if it changed. Call on the server
+     * thread.
+     *
+     * @param global current server-wide state, only asked for if it changed
+     * @param wait   true to block until everything is on disk, as on shutdown
+     */
+    public void flush(Supplier<GlobalState> global, boolean wait) {
+        List<Integer> colonies = new ArrayList<>(dirty);
+        Future<?> last = null;
+        for (Integer colonyId : colonies) {
+            dirty.remove(colonyId);
+            LoadedColony colony = loaded.get(colonyId);
+            if (colony == null) continue;
+            try {
+                byte[] bytes = encodeColony(colonyId, colony);
+                Path file = colonyFile(colonyId);
+                last = io.submit(() -> write(file, bytes));
+            } catch (Exception e) {
+                LOGGER.warn("[mc_mod] Could not save state for colony {}: {}", colonyId, e.getMessage());
+            }
+        }
+        if (globalDirty) {
+            globalDirty = false;
+            try {
+                byte[] bytes = encodeGlobal(global.get());
+                Path file = directory.resolve("global.bin");
+                last = io.submit(() -> write(file, bytes));
+            } catch (IOException e) {
+                LOGGER.warn("[mc_mod] Could not save autofulfill state: {}", e.getMessage());
+            }
+        }
+        if (wait && last != null) {
+            // One writer thread, so the last write finishing means all of them have
+            try {
+                last.get(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                LOGGER.warn("[mc_mod] Autofulfill state may not be fully saved: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Read the server-wide state. Called once when the server starts.
+     *
+     * @return the saved state, or null if there is none
+     */
+    public GlobalState readGlobal() {
+        try (DataInputStream in = open(directory.resolve("global.bin"))) {
+            if (in == null) {
+                return null;
+            }
+            // Was the enabled flag, kept so existing files still read
+            in.readBoolean();
+            Map<String, Long> totals = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                totals.put(in.readUTF(), in.readLong());
+            }
+            Map<UUID, MessagePipeline.Level> levels = new HashMap<>();
+            for (int i = in.readInt(); i > 0; i--) {
+                UUID player = new UUID(in.readLong(), in.readLong());
+                String level = in.readUTF();
+                try {
+                    levels.put(player, MessagePipeline.Level.parse(level));
+                } catch (IllegalArgumentException e) {
+                    // Level from a newer version, fall back to the default
+                }
+            }
+            return new GlobalState(totals, levels);
+        } catch (IOException e) {
+            LOGGER.warn("[mc_mod] Ignoring unreadable autofulfill state: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private Path colonyFile(int colonyId) {
+        return directory.resolve("colony-" + colonyId + ".bin");
+    }
+
+    private byte[] encodeColony(int colonyId, LoadedColony colony) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        long[] counts = metrics.getBreakdown(AutofulfillMetrics.Dimension.COLONY, colonyId);
+        writeHeader(out);
+        out.writeLong(counts[0]);
+        out.writeLong(counts[1]);
+
+        List<SavedToken> tokens = new ArrayList<>();
+        for (Object token : assignedTokens.apply(colony.requestManager())) {
+            RetryTracker.SavedRetry retry = retryTracker.getSavedRetry(token);
+            RetryTracker.DeadLetter deadLetter = retryTracker.getDeadLetter(token);
+            Object request = MineColoniesBindings.getRequestForToken(colony.requestManager(), token);
+            int delivered = request != null ? deliveryProgress.getDelivered(token, request) : 0;
+            int flags = (retry != null ? HAS_RETRY : 0) | (deadLetter != null ? HAS_DEAD_LETTER : 0) | (delivered > 0 ? HAS_PROGRESS : 0);
+            if (flags == 0) continue;
+            tokens.add(new SavedToken(String.valueOf(MineColoniesBindings.getTokenIdentifier(token)), flags, retry,
+                deadLetter != null ? deadLetter.description() : null,
+                deadLetter != null ? deadLetter.attempts() : 0,
+                deadLetter != null ? deadLetter.deadLetteredAtMillis() : 0,
+                delivered));
+        }
+        out.writeInt(tokens.size());
+        for (SavedToken token : tokens) {
+            out.writeUTF(token.tokenId());
+            out.writeByte(token.flags());
+            if ((token.flags() & HAS_RETRY) != 0) {
+                out.writeInt(token.retry().attempts());
+                out.writeLong(token.retry().retryAtMillis());
+            }
+            if ((token.flags() & HAS_DEAD_LETTER) != 0) {
+                out.writeUTF(token.description());
+                out.writeInt(token.deadAttempts());
+                out.writeLong(token.deadLetteredAtMillis());
+            }
+            if ((token.flags() & HAS_PROGRESS) != 0) {
+                out.writeInt(token.delivered());
+            }
+        }
+        return tokens.isEmpty() && counts[0] == 0 && counts[1] == 0 ? null : bytes.toByteArray();
+    }
+
+    private static ColonySnapshot readColony(Path file) throws IOException {
+        try (DataInputStream in = open(file)) {
+            if (in == null) {
+                return null;
+            }
+            long successes = in.readLong();
+            long failures = in.readLong();
+            int count = in.readInt();
+            List<SavedToken> tokens = new ArrayList<>(Math.min(count, 4096));
+            for (int i = 0; i < count; i++) {
+                String tokenId = in.readUTF();
+                int flags = in.readUnsignedByte();
+                RetryTracker.SavedRetry retry = null;
+                String description = null;
+                int deadAttempts = 0;
+                long deadLetteredAt = 0;
+                int delivered = 0;
+                if ((flags & HAS_RETRY) != 0) {
+                    retry = new RetryTracker.SavedRetry(in.readInt(), in.readLong());
+                }
+                if ((flags & HAS_DEAD_LETTER) != 0) {
+                    description = in.readUTF();
+                    deadAttempts = in.readInt();
+                    deadLetteredAt = in.readLong();
+                }
+                if ((flags & HAS_PROGRESS) != 0) {
+                    delivered = in.readInt();
+                }
+                tokens.add(new SavedToken(tokenId, flags, retry, description, deadAttempts, deadLetteredAt, delivered));
+            }
+            return new ColonySnapshot(successes, failures, tokens);
+        }
+    }
+
+    private static byte[] encodeGlobal(GlobalState state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out);
+        out.writeBoolean(false);
+        out.writeInt(state.totals().size());
+        for (Map.Entry<String, Long> total : state.totals().entrySet()) {
+            out.writeUTF(total.getKey());
+            out.writeLong(total.getValue());
+        }
+        out.writeInt(state.messageLevels().size());
+        for (Map.Entry<UUID, MessagePipeline.Level> level : state.messageLevels().entrySet()) {
+            out.writeLong(level.getKey().getMostSignificantBits());
+            out.writeLong(level.getKey().getLeastSignificantBits());
+            out.writeUTF(level.getValue().name());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+    }
+
+    /**
+     * @return a stream positioned after the header, or null if the file doesn't exist
+     */
+    private static DataInputStream open(Path file) throws IOException {
+        InputStream stream;
+        try {
+            stream = Files.newInputStream(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            in.close();
+            throw new IOException("not a version " + VERSION + " state file: " + file.getFileName());
+        }
+        return in;
+    }
+
+    /**
+     * Replace a file in one step, so a crash mid-write leaves the previous snapshot. Null deletes
+     * the file, for a colony with nothing left to remember.
+     */
+    private static void write(Path file, byte[] bytes) {
+        try {
+            if (bytes == null) {
+                Files.deleteIfExists(file);
+                return;
+            }
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("[mc_mod] Could not write {}: {}", file, e.getMessage());
+        }
+    }
+}
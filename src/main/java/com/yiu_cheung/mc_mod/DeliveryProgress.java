@@ -0,0 +1,56 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
+
+/**
+ * Items already handed over per request token, for requests too big to fit into the citizen's
+ * inventory in one go. Planning subtracts this from the requested count, so the next pass only
+ * delivers the rest.
+ *
+ * Progress is tied to the request object and state it was recorded for; if the token now maps to
+ * a different request it no longer counts.
+ */
+public class DeliveryProgress {
+
+    private record Entry(Object request, Object state, int delivered) {
+    }
+
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+
+    public int getDelivered(Object token, Object request) {
+        Entry entry = entries.get(token);
+        return entry != null && entry.request() == request ? entry.delivered() : 0;
+    }
+
+    /**
+     * @return the total delivered for this token so far
+     */
+    public int add(Object token, Object request, Object state, int count) {
+        Entry updated = entries.merge(token, new Entry(request, state, count), (previous, added) ->
+            previous.request() == request ? new Entry(request, state, previous.delivered() + count) : added);
+        return updated.delivered();
+    }
+
+    public void clear(Object token) {
+        entries.remove(token);
+    }
+
+    /**
+     * Drop progress for requests that are no longer open.
+     *
+     * @param stillOpen tested with the request and the state the progress was recorded in
+     */
+    public void prune(BiPredicate<Object, Object> stillOpen) {
+        entries.values().removeIf(entry -> !stillOpen.test(entry.request(), entry.state()));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+}
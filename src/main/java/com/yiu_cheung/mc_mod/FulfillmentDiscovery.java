@@ -0,0 +1,189 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Read-only discovery phase of an autofulfill cycle.
+ *
+ * A {@link Pass} keeps a cursor per colony into its {@link RequestTraversal} and is advanced a
+ * slice at a time from the server tick: each slice plans the unfinished colonies in parallel on
+ * the discovery pool until the tick's deadline, while the server thread waits, so no slice runs
+ * much past the budget and a big backlog is spread over several ticks. Nothing writes to
+ * MineColonies or mod state during a slice, so the workers only ever see a stable world; the one
+ * exception is a colony's saved state being restored the first time the colony is seen. Between
+ * slices the world moves on, which the commit step checks for before using a plan. The
+ * resulting {@link FulfillmentPlan}s are applied afterwards on the server thread.
+ */
+public final class FulfillmentDiscovery {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    /**
+     * Plans and counts from one discovery pass.
+     *
+     * @param examined requests looked at
+     * @param skipped  requests filtered out
+     * @param failed   requests that could not be planned because of an error
+     */
+    public record Result(List<FulfillmentPlan> plans, int examined, int skipped, int failed) {
+    }
+
+    /**
+     * Mutable side of a {@link Result} while a traversal is being planned.
+     */
+    private static final class Tally {
+        final List<FulfillmentPlan> plans = new ArrayList<>();
+        int examined;
+        int skipped;
+        int failed;
+
+        Tally combine(Tally other) {
+            plans.addAll(other.plans);
+            examined += other.examined;
+            skipped += other.skipped;
+            failed += other.failed;
+            return this;
+        }
+
+        Result toResult() {
+            return new Result(plans, examined, skipped, failed);
+        }
+    }
+
+    /**
+     * One cycle's discovery over a fixed list of colonies, advanced from the server thread.
+     */
+    public static final class Pass {
+        private final McMod mod;
+        private final RequestFilter filter;
+        private final RequestTraversal traversal;
+        private final List<ColonyCursor> cursors = new ArrayList<>();
+        private final List<ColonyCursor> unfinished;
+        private long busyNanos = 0;
+
+        private Pass(McMod mod, Collection<?> colonies, RequestFilter filter) {
+            this.mod = mod;
+            this.filter = filter;
+            this.traversal = RequestTraversal.of(colonies)
+                .filter(filter)
+                .onColony(mod::restoreColonyState)
+                .tokens(token -> {
+                    if (mod.isRetryBlocked(token)) {
+                        RequestTrace.record(RequestTrace.Event.BACKING_OFF, token);
+                        return false;
+                    }
+                    return true;
+                });
+            for (Object colony : colonies) {
+                cursors.add(new ColonyCursor(colony));
+            }
+            this.unfinished = new ArrayList<>(cursors);
+        }
+
+        /**
+         * Plan until the deadline; every unfinished colony plans at least one request, so a tiny
+         * budget still makes progress. Blocks until every worker has stopped.
+         *
+         * @return true once every colony is done
+         */
+        public boolean advance(long deadlineNanos) {
+            long start = System.nanoTime();
+            RequestTraversal.inParallel(unfinished, cursor -> cursor.advance(deadlineNanos));
+            unfinished.removeIf(cursor -> cursor.done);
+            busyNanos += System.nanoTime() - start;
+            return unfinished.isEmpty();
+        }
+
+        public boolean isDone() {
+            return unfinished.isEmpty();
+        }
+
+        public int getColonyCount() {
+            return cursors.size();
+        }
+
+        /**
+         * @return time the server thread spent in {@link #advance}, over all slices
+         */
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        /**
+         * Plans in colony order; only complete once {@link #isDone}.
+         */
+        public Result result() {
+            Tally total = new Tally();
+            for (ColonyCursor cursor : cursors) {
+                total.combine(cursor.tally);
+            }
+            return total.toResult();
+        }
+
+        /**
+         * Where one colony's walk stopped. Only ever advanced by one thread at a time.
+         */
+        private final class ColonyCursor {
+            final Object colony;
+            final Tally tally = new Tally();
+            Iterator<RequestTraversal.RequestView> requests = null;
+            boolean done = false;
+
+            ColonyCursor(Object colony) {
+                this.colony = colony;
+            }
+
+            void advance(long deadlineNanos) {
+                try {
+                    if (requests == null) {
+                        RequestTraversal.ColonyView view = traversal.open(colony);
+                        if (view == null) {
+                            done = true;
+                            return;
+                        }
+                        requests = traversal.requests(view).iterator();
+                    }
+                    do {
+                        if (!requests.hasNext()) {
+                            done = true;
+                            return;
+                        }
+                        plan(mod, requests.next(), filter, tally);
+                    } while (System.nanoTime() < deadlineNanos);
+                } catch (Exception e) {
+                    LOGGER.error("[mc_mod] Error discovering requests of colony {}, skipping it this cycle: {}", colony, e.getMessage(), e);
+                    done = true;
+                }
+            }
+        }
+    }
+
+    private FulfillmentDiscovery() {
+    }
+
+    /**
+     * Start discovery for a cycle; nothing is read until the first {@link Pass#advance}.
+     */
+    public static Pass start(McMod mod, Collection<?> colonies, RequestFilter filter) {
+        return new Pass(mod, colonies, filter);
+    }
+
+    private static void plan(McMod mod, RequestTraversal.RequestView view, RequestFilter filter, Tally tally) {
+        tally.examined++;
+        try {
+            FulfillmentPlan plan = mod.planRequest(view.colony(), view.requestManager(), view.request(), filter);
+            if (plan == null) {
+                tally.skipped++;
+            } else {
+                tally.plans.add(plan);
+            }
+        } catch (Exception e) {
+            LOGGER.debug("[mc_mod] Could not plan request", e);
+            tally.failed++;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.yiu_cheung.mc_mod;
+
+/**
+ * Result of the discovery phase for one request: everything the commit phase needs to hand the
+ * items over on the server thread.
+ *
+ * {@code item} describes the request's display stack without copying it; see
+ * {@link RequestedItem}. {@code citizen} or {@code item} may be null, in which case the commit step
+ * reports the request as unfulfillable. {@code count} is what is still missing for the request and
+ * may be more than one stack.
+ */
+public record FulfillmentPlan(
+    Object colony,
+    Object requestManager,
+    Object token,
+    Object request,
+    Object state,
+    String stateName,
+    String resolverName,
+    Class<?> resolverClass,
+    Object building,
+    String buildingName,
+    Object citizen,
+    String citizenName,
+    RequestedItem item,
+    int count
+) {
+    public String itemName() {
+        return item != null ? item.name() : ItemNames.UNKNOWN;
+    }
+}
@@ -0,0 +1,150 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of {@link FulfillmentPlan}s keyed by request token.
+ *
+ * A request that stays open (for example because the citizen's inventory is full) would
+ * otherwise have its building, citizen, item and count looked up again on every pass. A cached
+ * plan is reused as long as the token still maps to the same request object in the same state;
+ * the caller also checks on each hit that the plan's building and citizen are still the live
+ * ones. Entries expire after a fixed time so other changes are picked up, and the least recently
+ * used entries are dropped once the cache is full.
+ *
+ * Safe to use from the parallel discovery workers without a shared lock: entries live in a
+ * {@link ConcurrentHashMap} and a hit only writes the entry's own access stamp, so LRU is
+ * approximate. An insert that takes the cache over its limit trims it in bulk, dropping expired
+ * entries and then the least recently used ones down to {@value #TRIM_PERCENT}% of the limit,
+ * so the sort is paid once every few hundred inserts. One thread trims at a time; the others
+ * carry on without waiting for it.
+ */
+public class FulfillmentPlanCache {
+    private static final int TRIM_PERCENT = 90;
+
+    private static final class Entry {
+        final FulfillmentPlan plan;
+        final long createdAtNanos;
+        volatile long accessedNanos;
+
+        Entry(FulfillmentPlan plan, long createdAtNanos) {
+            this.plan = plan;
+            this.createdAtNanos = createdAtNanos;
+            this.accessedNanos = createdAtNanos;
+        }
+    }
+
+    private record Stamped(Object token, Entry entry, long accessedNanos) {
+    }
+
+    private volatile int maxEntries;
+    private volatile long ttlNanos;
+    private final Map<Object, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean trimming = new AtomicBoolean();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public FulfillmentPlanCache(int maxEntries, int ttlSeconds) {
+        configure(maxEntries, ttlSeconds);
+    }
+
+    /**
+     * @return the cached plan for this token if it is still valid for the given request and
+     *         state, otherwise null (and any stale entry is dropped)
+     */
+    public FulfillmentPlan get(Object token, Object request, Object state) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        FulfillmentPlan plan = entry.plan;
+        long now = System.nanoTime();
+        if (plan.request() != request
+                || plan.state() != state
+                || now - entry.createdAtNanos > ttlNanos) {
+            entries.remove(token, entry);
+            misses.increment();
+            return null;
+        }
+        entry.accessedNanos = now;
+        hits.increment();
+        return plan;
+    }
+
+    /**
+     * Cache a complete plan. Plans without a citizen or item are not cached, so a citizen being
+     * assigned later is noticed on the next pass.
+     */
+    public void put(FulfillmentPlan plan) {
+        if (plan.citizen() == null || plan.item() == null) {
+            return;
+        }
+        entries.put(plan.token(), new Entry(plan, System.nanoTime()));
+        if (entries.size() > maxEntries) {
+            trim();
+        }
+    }
+
+    /**
+     * Change the limits, e.g. after a config reload. A smaller maximum evicts the least recently
+     * used plans on the next insert.
+     */
+    public void configure(int maxEntries, int ttlSeconds) {
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    public void invalidate(Object token) {
+        entries.remove(token);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    private void trim() {
+        if (!trimming.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.nanoTime();
+            long ttl = ttlNanos;
+            entries.entrySet().removeIf(e -> now - e.getValue().createdAtNanos > ttl);
+            int target = (int) ((long) maxEntries * TRIM_PERCENT / 100);
+            int excess = entries.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            // Stamps are read once, hits may move them while sorting
+            List<Stamped> byAccess = new ArrayList<>(entries.size());
+            entries.forEach((token, entry) -> byAccess.add(new Stamped(token, entry, entry.accessedNanos)));
+            byAccess.sort(Comparator.comparingLong(Stamped::accessedNanos));
+            for (int i = 0; i < excess && i < byAccess.size(); i++) {
+                Stamped eldest = byAccess.get(i);
+                entries.remove(eldest.token(), eldest.entry());
+            }
+        } finally {
+            trimming.set(false);
+        }
+    }
+}
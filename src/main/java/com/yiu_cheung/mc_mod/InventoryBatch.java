@@ -0,0 +1,208 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.items.IItemHandler;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A cycle's plans for one citizen, committed as a single inventory transaction.
+ *
+ * The batch is first simulated against a snapshot of the citizen's inventory to find out how
+ * many items of each request fit. The snapshot only records what each slot holds and how many;
+ * neither the inventory's stacks nor the requests' display stacks are copied for it. The
+ * allocations are then merged into as few stacks as possible and inserted together, so a builder
+ * with twenty outstanding material requests costs one inventory pass instead of twenty.
+ */
+public final class InventoryBatch {
+
+    /**
+     * How many of a plan's items the simulation found room for: all of them, some whole stacks,
+     * or none.
+     */
+    public record Allocation(FulfillmentPlan plan, int count) {
+    }
+
+    /**
+     * Allocations of the same item and components, inserted as one stack (split at the max stack
+     * size).
+     */
+    public record MergedStack(RequestedItem item, int count, List<Allocation> allocations) {
+    }
+
+    /**
+     * Slot contents during a simulation: the handler's own stack, read only, or the requested item
+     * the simulation put there, and the simulated count.
+     */
+    private static final class Snapshot {
+        final ItemStack[] stacks;
+        final RequestedItem[] planned;
+        final int[] counts;
+
+        Snapshot(IItemHandler handler) {
+            int slots = handler.getSlots();
+            stacks = new ItemStack[slots];
+            planned = new RequestedItem[slots];
+            counts = new int[slots];
+            for (int i = 0; i < slots; i++) {
+                ItemStack stack = handler.getStackInSlot(i);
+                stacks[i] = stack;
+                counts[i] = stack.isEmpty() ? 0 : stack.getCount();
+            }
+        }
+
+        boolean holds(int slot, RequestedItem item) {
+            return planned[slot] != null ? planned[slot].matches(item) : item.matches(stacks[slot]);
+        }
+    }
+
+    private final Object citizen;
+    private final List<FulfillmentPlan> plans = new ArrayList<>();
+
+    private InventoryBatch(Object citizen) {
+        this.citizen = citizen;
+    }
+
+    public Object getCitizen() {
+        return citizen;
+    }
+
+    public List<FulfillmentPlan> getPlans() {
+        return plans;
+    }
+
+    /**
+     * Group plans by target citizen, keeping discovery order. Plans without a citizen or item get a
+     * batch of their own so the commit step can report them.
+     */
+    public static List<InventoryBatch> group(List<FulfillmentPlan> plans) {
+        List<InventoryBatch> batches = new ArrayList<>();
+        Map<Object, InventoryBatch> byCitizen = new IdentityHashMap<>();
+        for (FulfillmentPlan plan : plans) {
+            InventoryBatch batch;
+            if (plan.citizen() == null || plan.item() == null) {
+                batch = new InventoryBatch(plan.citizen());
+                batches.add(batch);
+            } else {
+                batch = byCitizen.get(plan.citizen());
+                if (batch == null) {
+                    batch = new InventoryBatch(plan.citizen());
+                    byCitizen.put(plan.citizen(), batch);
+                    batches.add(batch);
+                }
+            }
+            batch.plans.add(plan);
+        }
+        return batches;
+    }
+
+    /**
+     * Work out, in order and without touching the handler, how many items of each plan fit. A
+     * plan that fits completely gets its full count; one that doesn't gets as many whole stacks as
+     * fit, so oversized requests make progress. Mirrors {@code insertItemStacked}: existing
+     * matching stacks are topped up first, then empty slots.
+     */
+    public static List<Allocation> simulate(IItemHandler handler, List<FulfillmentPlan> plans) {
+        Snapshot snapshot = new Snapshot(handler);
+        List<Allocation> allocations = new ArrayList<>(plans.size());
+        for (FulfillmentPlan plan : plans) {
+            RequestedItem item = plan.item();
+            int fits = plan.count() - fill(handler, snapshot, item, plan.count(), false);
+            if (fits < plan.count()) {
+                int maxStackSize = item.maxStackSize();
+                fits = fits / maxStackSize * maxStackSize;
+            }
+            if (fits > 0) {
+                fill(handler, snapshot, item, fits, true);
+            }
+            allocations.add(new Allocation(plan, fits));
+        }
+        return allocations;
+    }
+
+    /**
+     * @return how many items would not fit
+     */
+    private static int fill(IItemHandler handler, Snapshot snapshot, RequestedItem item, int count, boolean apply) {
+        int remaining = count;
+        int maxStackSize = item.maxStackSize();
+        int[] counts = snapshot.counts;
+
+        // Top up matching stacks first
+        for (int i = 0; i < counts.length && remaining > 0; i++) {
+            if (counts[i] == 0 || !snapshot.holds(i, item)) continue;
+            int space = Math.min(handler.getSlotLimit(i), maxStackSize) - counts[i];
+            if (space <= 0) continue;
+            int moved = Math.min(space, remaining);
+            if (apply) counts[i] += moved;
+            remaining -= moved;
+        }
+
+        // Then empty slots
+        for (int i = 0; i < counts.length && remaining > 0; i++) {
+            if (counts[i] != 0 || !handler.isItemValid(i, item.view())) continue;
+            int moved = Math.min(Math.min(handler.getSlotLimit(i), maxStackSize), remaining);
+            if (apply) {
+                snapshot.planned[i] = item;
+                counts[i] = moved;
+            }
+            remaining -= moved;
+        }
+        return remaining;
+    }
+
+    /**
+     * Merge non-empty allocations for the same item and components. Each merged stack keeps its
+     * allocations in order.
+     */
+    public static List<MergedStack> merge(List<Allocation> allocations) {
+        List<RequestedItem> prototypes = new ArrayList<>();
+        List<List<Allocation>> groups = new ArrayList<>();
+        for (Allocation allocation : allocations) {
+            if (allocation.count() == 0) continue;
+            RequestedItem item = allocation.plan().item();
+            int index = -1;
+            for (int i = 0; i < prototypes.size(); i++) {
+                if (prototypes.get(i).matches(item)) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) {
+                prototypes.add(item);
+                groups.add(new ArrayList<>());
+                index = prototypes.size() - 1;
+            }
+            groups.get(index).add(allocation);
+        }
+
+        List<MergedStack> merged = new ArrayList<>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            int total = 0;
+            for (Allocation allocation : groups.get(i)) {
+                total += allocation.count();
+            }
+            merged.add(new MergedStack(prototypes.get(i), total, groups.get(i)));
+        }
+        return merged;
+    }
+
+    /**
+     * Take items that were inserted but can't be accounted to a request back out of the handler,
+     * starting from the last slot.
+     *
+     * @return how many items were removed
+     */
+    public static int rollback(IItemHandler handler, RequestedItem item, int count) {
+        int removed = 0;
+        for (int i = handler.getSlots() - 1; i >= 0 && removed < count; i--) {
+            ItemStack existing = handler.getStackInSlot(i);
+            if (!item.matches(existing)) continue;
+            removed += handler.extractItem(i, count - removed, false).getCount();
+        }
+        return removed;
+    }
+}
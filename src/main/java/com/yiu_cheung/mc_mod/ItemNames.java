@@ -0,0 +1,72 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.event.TagsUpdatedEvent;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Short display names for items, e.g. "oak_planks" for item.minecraft.oak_planks.
+ *
+ * The name is derived from the description ID once per {@link Item} and cached by identity, so
+ * every request for the same item shares one interned string. Lookups read an immutable map
+ * without locking, which keeps them safe from the discovery workers; a miss copies the map,
+ * which only happens the first time an item is seen. The cache is dropped whenever datapacks and
+ * tags reload and when the server stops, in case the registries changed underneath it.
+ */
+public final class ItemNames {
+    public static final String UNKNOWN = "Unknown Item";
+
+    private static volatile Map<Item, String> names = new IdentityHashMap<>();
+
+    private ItemNames() {
+    }
+
+    public static String of(ItemStack stack) {
+        return stack == null ? UNKNOWN : of(stack.getItem());
+    }
+
+    public static String of(Item item) {
+        if (item == null) {
+            return UNKNOWN;
+        }
+        String name = names.get(item);
+        return name != null ? name : add(item);
+    }
+
+    public static int size() {
+        return names.size();
+    }
+
+    public static void clear() {
+        names = new IdentityHashMap<>();
+    }
+
+    public static void onTagsUpdated(TagsUpdatedEvent event) {
+        clear();
+    }
+
+    private static synchronized String add(Item item) {
+        String name = names.get(item);
+        if (name == null) {
+            name = shorten(item.getDescriptionId());
+            Map<Item, String> copy = new IdentityHashMap<>(names);
+            copy.put(item, name);
+            names = copy;
+        }
+        return name;
+    }
+
+    private static String shorten(String descriptionId) {
+        if (descriptionId == null) {
+            return UNKNOWN;
+        }
+        String name = descriptionId;
+        if (name.startsWith("item.")) name = name.substring(5);
+        if (name.startsWith("block.")) name = name.substring(6);
+        name = name.replace("minecraft.", "").replace("minecolonies.", "");
+        return name.intern();
+    }
+}
@@ -0,0 +1,95 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.Arrays;
+
+/**
+ * Log-linear latency histogram in microseconds, in the style of HdrHistogram.
+ *
+ * Values below 16 us get a bucket each; above that every power of two is split into 16 linear
+ * sub-buckets, so reported percentiles are within about 6% of the true value. Values are clamped
+ * at about 35 minutes. Recording is a couple of shifts and an array increment, with no
+ * allocation.
+ *
+ * Not thread-safe; {@link AutofulfillMetrics} guards each histogram with its slot's lock.
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 30;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final int[] counts = new int[BUCKETS];
+    private long totalCount = 0;
+    private long maxValue = 0;
+
+    void recordNanos(long nanos) {
+        long micros = Math.min(Math.max(0, nanos / 1000), MAX_VALUE);
+        counts[bucketIndex(micros)]++;
+        totalCount++;
+        if (micros > maxValue) {
+            maxValue = micros;
+        }
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        maxValue = Math.max(maxValue, other.maxValue);
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        totalCount = 0;
+        maxValue = 0;
+    }
+
+    long getTotalCount() {
+        return totalCount;
+    }
+
+    long getMaxMicros() {
+        return maxValue;
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return the highest value equivalent to the recorded value at that percentile, in
+     *         microseconds, or 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100.0 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(highestEquivalentValue(i), maxValue);
+            }
+        }
+        return maxValue;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >> (exponent - SUB_BUCKET_BITS)) - SUB_BUCKETS;
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestEquivalentValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
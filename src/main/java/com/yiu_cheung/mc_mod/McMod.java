@@ -1,17 +1,21 @@
 package com.yiu_cheung.mc_mod;
 
 import net.neoforged.fml.common.Mod;
+import net.neoforged.bus.api.EventPriority;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.neoforge.event.server.ServerStartedEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import net.neoforged.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.network.chat.Component;
+import net.minecraft.world.item.ItemStack;
+import net.neoforged.neoforge.items.IItemHandler;
 import com.mojang.brigadier.arguments.IntegerArgumentType;
-import java.lang.reflect.Method;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Executors;
@@ -19,18 +23,19 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.Collection;
 import net.neoforged.neoforge.server.ServerLifecycleHooks;
-import java.util.Map;
 import net.minecraft.commands.Commands;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Set;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
 import net.neoforged.neoforge.common.NeoForge;
 import net.minecraft.core.BlockPos;
 import java.util.Collections;
-import java.util.HashMap;
-import java.io.File;
+import net.neoforged.fml.loading.FMLPaths;
 import com.mojang.brigadier.arguments.StringArgumentType;
-import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import net.minecraft.world.level.storage.LevelResource;
+import java.util.function.Supplier;
 
 
 @Mod("mc_mod")
@@ -39,43 +44,106 @@ public class McMod {
     public static final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
     public static McMod INSTANCE;
     
-    // Startup safety flag
-    private static boolean modFullyEnabled = false;
-    private static long modStartTime = 0;
+    // STARTING until MineColonies answers, then READY, or DEGRADED while cycles keep failing
+    private static final AutofulfillLifecycle lifecycle = new AutofulfillLifecycle();
 
-    // Message tracking and statistics
-    private static final Map<String, Long> lastMessageTime = new HashMap<>();
-    private static final Map<String, Integer> messageCount = new HashMap<>();
-    private static final int MAX_MESSAGES_PER_TYPE = 3; // Max messages per type per session
-    
     // Autofulfill statistics
-    private static int totalRequestsProcessed = 0;
-    private static int successfulFulfillments = 0;
-    private static int failedFulfillments = 0;
-    private static int skippedRequests = 0;
-    private static long lastStatsReset = System.currentTimeMillis();
-    private static final long STATS_RESET_INTERVAL = 300000; // 5 minutes
+    private static final AutofulfillMetrics metrics = new AutofulfillMetrics();
+    private static int completedCycles = 0;
+    private static long cycleStartNanos = 0;
 
-    // Configuration variables
+    // Current config snapshot, swapped whole by a reload of config/mc_mod.toml or a command
+    private static volatile McModConfig config = McModConfig.DEFAULTS;
     private static boolean autofulfillEnabled = true;
-    private static int autofulfillCheckTimeSeconds = 5;
-    private static boolean showInGameMessages = true;
+    // Compiled from config.filter(), replaced by /mcmod autofullfill filter
+    private static volatile RequestFilter autofulfillFilter = null;
+    
+    // Per-cycle chat summaries, per-player message levels and the chat rate limit
+    private static final MessagePipeline messages = new MessagePipeline();
+    
+    // Dead letters are kept until requeued or closed, so the chat listing stops after this many
+    private static final int MAX_LISTED_DEAD_LETTERS = 50;
+    
+    // Building class -> name without "Building", worked out once per class
+    private static final ClassValue<String> BUILDING_NAMES = new ClassValue<>() {
+        @Override
+        protected String computeValue(Class<?> type) {
+            return type.getSimpleName().replace("Building", "");
+        }
+    };
+    
+    // Runs autofulfill cycles on the server thread within the per-tick budget
+    private final AutofulfillTickScheduler tickScheduler;
+    
+    // Probes MineColonies and each colony after server start, gating colonies until they are ready
+    private final ColonyReadiness readiness;
+    
+    // Plans for requests that stay open, reused across cycles
+    private final FulfillmentPlanCache planCache;
+    
+    // Backoff and dead letters for requests that keep failing
+    private final RetryTracker retryTracker;
+    
+    // Items already handed over for requests too big to deliver in one go
+    private final DeliveryProgress deliveryProgress = new DeliveryProgress();
+    // Open requests by requester, for the /mcmod listing; server thread only
+    final RequesterIndex requesterIndex = new RequesterIndex();
+    
+    // Record of everything handed out, open while a server is running
+    private volatile AuditJournal auditJournal = null;
+    
+    // Retry, dead-letter and delivery state saved with the world, open while a server is running
+    private volatile ColonyStateStore stateStore = null;
+    private long lastStateSaveNanos = 0;
     
-    // Scheduled task reference for restarting with new delay
-    private static java.util.concurrent.ScheduledFuture<?> autofulfillTask = null;
+    // Watches config/mc_mod.toml; null when built without touching the config directory
+    private final McModConfigFile configFile;
 
     public McMod() {
+        this(true);
+    }
+    
+    /**
+     * @param standalone false to build the mod without touching the config directory or the
+     *                   event bus, as the benchmarks do
+     */
+    McMod(boolean standalone) {
         LOGGER.info("MC Mod - Auto-Fulfill Builder Requests initialized!");
         INSTANCE = this;
         
         // Load configuration
-        loadConfig();
+        configFile = standalone ? new McModConfigFile(FMLPaths.CONFIGDIR.get().resolve("mc_mod.toml"), this::onConfigReloaded) : null;
+        if (configFile != null) {
+            loadConfig();
+        }
+        McModConfig initial = config;
+        autofulfillEnabled = initial.enabled();
+        messages.setDefaultLevel(initial.messageLevel());
+        planCache = new FulfillmentPlanCache(initial.planCacheMaxEntries(), initial.planCacheTtlSeconds());
+        autofulfillFilter = compileFilter(initial.filter());
+        retryTracker = new RetryTracker(initial.retryBaseSeconds(), initial.retryMaxSeconds(), initial.retryMaxAttempts());
+        tickScheduler = new AutofulfillTickScheduler(this, initial.checkTimeSeconds(), initial.tickBudgetMicros(), initial.intakeMode());
+        tickScheduler.setIntervalBounds(initial.minCheckTimeSeconds(), initial.maxCheckTimeSeconds());
+        tickScheduler.setMsptThresholdMillis(initial.msptThresholdMillis());
+        configureFairness(initial);
+        readiness = new ColonyReadiness(lifecycle, metrics, this::onMineColoniesReady);
+        if (!standalone) {
+            return;
+        }
         
-        // Register command handler
+        // Register command handlers
         NeoForge.EVENT_BUS.addListener(this::onRegisterCommands);
         
-        // Register server started event listener
+        // Register server lifecycle and tick listeners
         NeoForge.EVENT_BUS.addListener(McMod::onServerStarted);
+        NeoForge.EVENT_BUS.addListener(McMod::onServerStopping);
+        // Readiness first, so the scheduler sees a colony on the tick it became ready
+        NeoForge.EVENT_BUS.addListener(readiness::onServerTick);
+        NeoForge.EVENT_BUS.addListener(tickScheduler::onServerTick);
+        // After MineColonies' own handler has loaded the level's colonies
+        NeoForge.EVENT_BUS.addListener(EventPriority.LOWEST, readiness::onLevelLoad);
+        // Item names are cached per item; drop them when datapacks reload
+        NeoForge.EVENT_BUS.addListener(ItemNames::onTagsUpdated);
         
         // Don't start background thread here - wait for server to be ready
         LOGGER.info("[mc_mod] Mod initialized, waiting for server to start...");
@@ -86,50 +154,92 @@ public class McMod {
 
     private void loadConfig() {
         try {
-            // Generate config file in Minecraft config folder
-            generateConfigFile();
-            
-            // For now, we'll use the default values
-            // In a full implementation, this would read from mc_mod.toml
+            config = configFile.load();
+            McModConfig loaded = config;
             LOGGER.info("[mc_mod] Loading configuration...");
-            LOGGER.info("[mc_mod] Autofulfill enabled: {}", autofulfillEnabled);
-            LOGGER.info("[mc_mod] Check interval: {} seconds", autofulfillCheckTimeSeconds);
-            LOGGER.info("[mc_mod] In-game messages: {}", showInGameMessages);
+            LOGGER.info("[mc_mod] Autofulfill enabled: {}", loaded.enabled());
+            LOGGER.info("[mc_mod] Check interval: {} seconds, adapting within {}-{} seconds", loaded.checkTimeSeconds(),
+                loaded.minCheckTimeSeconds(), loaded.maxCheckTimeSeconds());
+            LOGGER.info("[mc_mod] Backing off above {} ms server tick time", loaded.msptThresholdMillis());
+            LOGGER.info("[mc_mod] In-game messages: {}, default level {}", loaded.showInGameMessages(), loaded.messageLevel());
+            LOGGER.info("[mc_mod] Tick budget: {} microseconds", loaded.tickBudgetMicros());
+            LOGGER.info("[mc_mod] Request intake mode: {}", loaded.intakeMode());
+            LOGGER.info("[mc_mod] Autofulfill filter: {}", loaded.filter());
+            LOGGER.info("[mc_mod] Colony weights: '{}', building priority: '{}', aging: {} seconds",
+                loaded.colonyWeights(), loaded.buildingPriority(), loaded.agingSeconds());
+            LOGGER.info("[mc_mod] Plan cache: {} entries, {} seconds", loaded.planCacheMaxEntries(), loaded.planCacheTtlSeconds());
+            LOGGER.info("[mc_mod] Retry backoff: {}-{} seconds, {} attempts", loaded.retryBaseSeconds(), loaded.retryMaxSeconds(), loaded.retryMaxAttempts());
+            LOGGER.info("[mc_mod] Audit journal: {}, {} MB segments, {} kept", loaded.auditEnabled(), loaded.auditSegmentMegabytes(), loaded.auditMaxSegments());
+            LOGGER.info("[mc_mod] State saved every {} seconds", loaded.stateSaveSeconds());
+            // Edits to the file are applied while the game runs
+            configFile.watch();
         } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error loading configuration: {}", e.getMessage());
+            LOGGER.error("[mc_mod] Error loading configuration: {}", e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Called on the config watcher thread with the new snapshot. The components are only touched
+     * on the server thread, so the swap waits for the next task slot when a server is running.
+     */
+    private void onConfigReloaded(McModConfig next) {
+        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+        if (server != null && !server.isSameThread()) {
+            server.execute(() -> applyConfig(next));
+        } else {
+            applyConfig(next);
+        }
+    }
+    
+    /**
+     * Swap in a reloaded snapshot and push whatever changed into the running components. The
+     * audit journal settings apply from the next server start.
+     */
+    private void applyConfig(McModConfig next) {
+        McModConfig previous = config;
+        config = next;
+        // The file decides, also over an enable or disable command since the last reload
+        autofulfillEnabled = next.enabled();
+        if (next.minCheckTimeSeconds() != previous.minCheckTimeSeconds() || next.maxCheckTimeSeconds() != previous.maxCheckTimeSeconds()) {
+            tickScheduler.setIntervalBounds(next.minCheckTimeSeconds(), next.maxCheckTimeSeconds());
+        }
+        if (next.checkTimeSeconds() != previous.checkTimeSeconds()) {
+            tickScheduler.setIntervalSeconds(next.checkTimeSeconds());
+        }
+        tickScheduler.setMsptThresholdMillis(next.msptThresholdMillis());
+        if (next.tickBudgetMicros() != previous.tickBudgetMicros()) {
+            tickScheduler.setBudgetMicros(next.tickBudgetMicros());
+        }
+        if (next.intakeMode() != previous.intakeMode()) {
+            tickScheduler.setIntakeMode(next.intakeMode());
+        }
+        if (!next.filter().equals(previous.filter())) {
+            autofulfillFilter = compileFilter(next.filter());
+            tickScheduler.requestCycle();
         }
+        messages.setDefaultLevel(next.messageLevel());
+        configureFairness(next);
+        planCache.configure(next.planCacheMaxEntries(), next.planCacheTtlSeconds());
+        retryTracker.configure(next.retryBaseSeconds(), next.retryMaxSeconds(), next.retryMaxAttempts());
+        LOGGER.info("[mc_mod] Applied reloaded config (enabled: {}, interval: {}s, budget: {}us, filter: '{}')",
+            next.enabled(), next.checkTimeSeconds(), next.tickBudgetMicros(), next.filter());
     }
     
-    private void generateConfigFile() {
+    private void configureFairness(McModConfig settings) {
         try {
-            // Get the Minecraft config directory - use the correct NeoForge path
-            String configDir = "C:/Users/LokYiu/AppData/Roaming/.minecraft/home/NeoForge 1.21.1/config";
-            
-            File configFile = new File(configDir, "mc_mod.toml");
-            
-            // Create config directory if it doesn't exist
-            configFile.getParentFile().mkdirs();
-            
-            // Only create the file if it doesn't exist
-            if (!configFile.exists()) {
-                String configContent = "# MC Mod Configuration File\n" +
-                    "# This file is auto-generated. You can modify these settings.\n" +
-                    "# Changes require server restart to take effect.\n\n" +
-                    "[autofulfill]\n" +
-                    "# Enable or disable autofulfill feature\n" +
-                    "enabled = true\n\n" +
-                    "# Interval in seconds for autofulfill checks (1-3600)\n" +
-                    "checkTimeSeconds = 5\n\n" +
-                    "# Show in-game messages for autofulfill actions\n" +
-                    "showInGameMessages = true\n";
-                
-                java.nio.file.Files.write(configFile.toPath(), configContent.getBytes());
-                LOGGER.info("[mc_mod] Generated config file: {}", configFile.getAbsolutePath());
-            } else {
-                LOGGER.info("[mc_mod] Config file already exists: {}", configFile.getAbsolutePath());
-            }
-        } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error generating config file: {}", e.getMessage());
+            tickScheduler.getFairness().configure(settings.colonyWeights(), settings.buildingPriority(), settings.agingSeconds());
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("[mc_mod] Invalid colony weights '{}', using equal weights: {}", settings.colonyWeights(), e.getMessage());
+            tickScheduler.getFairness().configure("", settings.buildingPriority(), settings.agingSeconds());
+        }
+    }
+    
+    private static RequestFilter compileFilter(String text) {
+        try {
+            return RequestFilter.parse(text);
+        } catch (IllegalArgumentException e) {
+            LOGGER.error("[mc_mod] Invalid autofulfill filter '{}', using the default: {}", text, e.getMessage());
+            return RequestFilter.parse(RequestFilter.DEFAULT);
         }
     }
 
@@ -144,7 +254,7 @@ public class McMod {
     
     public static void sendServerMessage(String msg, String type) {
         // Check if in-game messages are enabled
-        if (!showInGameMessages) {
+        if (!config.showInGameMessages()) {
             LOGGER.debug("[mc_mod] In-game messages disabled, only logging: {}", msg);
             LOGGER.info("[mc_mod] sendServerMessage [{}]: {}", type, msg);
             return;
@@ -161,664 +271,824 @@ public class McMod {
             return;
         }
         
-        // Check message cooldown and limits
-        if (!shouldSendMessage(msg, type)) {
-            return;
-        }
-        
         LOGGER.info("[mc_mod] sendServerMessage [{}]: {}", type, msg);
-        var playerList = server.getPlayerList().getPlayers();
-        if (playerList.isEmpty()) {
-            LOGGER.debug("[mc_mod] sendServerMessage: no players online to receive: {}", msg);
-            return;
-        }
-        
-        // Format message based on type
-        String formattedMsg = formatMessage(msg, type);
-        
-        for (var player : playerList) {
-            player.sendSystemMessage(Component.literal(formattedMsg));
-            LOGGER.debug("[mc_mod] Sent message to player: {}", player.getName().getString());
-        }
+        messages.broadcast(server, type, msg);
     }
     
-    private static boolean shouldSendMessage(String msg, String type) {
-        String messageKey = type + ":" + msg.hashCode();
-        long currentTime = System.currentTimeMillis();
-        
-        // Calculate cooldown based on current autofulfill delay time
-        int messageCooldownMs = autofulfillCheckTimeSeconds * 1000;
-        
-        // Check cooldown
-        if (lastMessageTime.containsKey(messageKey)) {
-            if (currentTime - lastMessageTime.get(messageKey) < messageCooldownMs) {
-                return false;
-            }
-        }
-        
-        // Check message limit
-        int count = messageCount.getOrDefault(messageKey, 0);
-        if (count >= MAX_MESSAGES_PER_TYPE) {
-            return false;
-        }
-        
-        // Update tracking
-        lastMessageTime.put(messageKey, currentTime);
-        messageCount.put(messageKey, count + 1);
-        return true;
+    /**
+     * Send the summary of everything recorded since the last flush. Call on the server thread.
+     */
+    static void flushMessages() {
+        messages.flush(ServerLifecycleHooks.getCurrentServer(), config.showInGameMessages());
     }
     
-    private static String formatMessage(String msg, String type) {
-        String prefix = "";
-        switch (type.toUpperCase()) {
-            case "SUCCESS":
-                prefix = "§a[✓] "; // Green checkmark
-                break;
-            case "ERROR":
-                prefix = "§c[✗] "; // Red X
-                break;
-            case "WARNING":
-                prefix = "§e[⚠] "; // Yellow warning
-                break;
-            case "INFO":
-                prefix = "§b[ℹ] "; // Blue info
-                break;
-            case "PROGRESS":
-                prefix = "§6[→] "; // Gold arrow
-                break;
-            case "STATS":
-                prefix = "§d[📊] "; // Purple stats
-                break;
-            default:
-                prefix = "§7[?] "; // Gray question mark
+    private static void sendStatsMessage() {
+        AutofulfillMetrics.Snapshot snapshot = metrics.snapshot(AutofulfillMetrics.Window.FIVE_MINUTES);
+        long processed = snapshot.get(AutofulfillMetrics.Outcome.PROCESSED);
+        if (processed > 0) {
+            String statsMsg = String.format("Autofulfill Stats (5m): %d processed, %d successful (%.1f%%), %d failed, %d skipped, cycle p90 %s",
+                processed, snapshot.get(AutofulfillMetrics.Outcome.SUCCESS), successRate(snapshot),
+                snapshot.get(AutofulfillMetrics.Outcome.FAILED), snapshot.get(AutofulfillMetrics.Outcome.SKIPPED),
+                formatMicros(snapshot.getPercentileMicros(AutofulfillMetrics.Timer.CYCLE, 90)));
+            sendServerMessage(statsMsg, "STATS");
         }
-        return prefix + msg;
     }
     
-    private static void resetStats() {
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastStatsReset > STATS_RESET_INTERVAL) {
-            totalRequestsProcessed = 0;
-            successfulFulfillments = 0;
-            failedFulfillments = 0;
-            skippedRequests = 0;
-            lastStatsReset = currentTime;
-            lastMessageTime.clear();
-            messageCount.clear();
-        }
+    private static double successRate(AutofulfillMetrics.Snapshot snapshot) {
+        long processed = snapshot.get(AutofulfillMetrics.Outcome.PROCESSED);
+        return processed > 0 ? (double) snapshot.get(AutofulfillMetrics.Outcome.SUCCESS) / processed * 100 : 0;
     }
     
-    private static void sendStatsMessage() {
-        if (totalRequestsProcessed > 0) {
-            double successRate = (double) successfulFulfillments / totalRequestsProcessed * 100;
-            String statsMsg = String.format("Autofulfill Stats: %d processed, %d successful (%.1f%%), %d failed, %d skipped", 
-                totalRequestsProcessed, successfulFulfillments, successRate, failedFulfillments, skippedRequests);
-            sendServerMessage(statsMsg, "STATS");
+    private static String formatMicros(long micros) {
+        if (micros >= 1_000_000) {
+            return String.format("%.2fs", micros / 1_000_000.0);
         }
+        if (micros >= 1000) {
+            return String.format("%.1fms", micros / 1000.0);
+        }
+        return micros + "us";
     }
     
-    public void autoFulfillBuilderRequests() {
+    /**
+     * Start of an autofulfill cycle, called by the tick scheduler on the server thread.
+     *
+     * @return the colonies to walk this cycle, or null if the cycle should be skipped
+     */
+    Collection<?> beginAutofulfillCycle() {
         try {
             // Check if autofulfill is enabled via config
             if (!autofulfillEnabled) {
                 LOGGER.debug("[mc_mod] Autofulfill disabled via config, skipping cycle");
-                return;
-            }
-            
-            // Check if mod is fully enabled
-            if (!modFullyEnabled) {
-                LOGGER.debug("[mc_mod] Mod not fully enabled yet, skipping autofulfill cycle");
-                return;
-            }
-            
-            // Additional safety check: ensure we're not interfering with MineColonies' data sync
-            if (!isGameFullyStable()) {
-                LOGGER.debug("[mc_mod] Game not fully stable, skipping autofulfill cycle");
-                return;
-            }
-            
-            // Get the MineColonies API
-            Class<?> apiClass = Class.forName("com.minecolonies.api.IMinecoloniesAPI");
-            Object apiInstance = apiClass.getMethod("getInstance").invoke(null);
-            
-            if (apiInstance == null) {
-                LOGGER.warn("[mc_mod] MineColonies API not available, skipping autofulfill cycle");
-                return;
-            }
-            
-            // Get the colony manager
-            Object colonyManager = apiInstance.getClass().getMethod("getColonyManager").invoke(apiInstance);
-            if (colonyManager == null) {
-                LOGGER.warn("[mc_mod] Colony manager not available, skipping autofulfill cycle");
-                return;
+                return null;
             }
             
-            // Get all colonies
-            Object colonies = colonyManager.getClass().getMethod("getAllColonies").invoke(colonyManager);
-            if (colonies == null) {
-                LOGGER.warn("[mc_mod] No colonies available, skipping autofulfill cycle");
-                return;
+            // READY needs no further checks; DEGRADED probes MineColonies first, with backoff
+            if (!lifecycle.tryRecover(ColonyReadiness::isApiAnswering)) {
+                LOGGER.debug("[mc_mod] Autofulfill {}, skipping cycle", lifecycle.get());
+                return null;
             }
             
-            // Convert to collection and process
-            Collection<?> colonyCollection = (Collection<?>) colonies;
+            Collection<?> colonyCollection = MineColoniesBindings.getAllColonies();
             if (colonyCollection.isEmpty()) {
                 LOGGER.debug("[mc_mod] No colonies found, skipping autofulfill cycle");
-                return;
-            }
-            
-            // Reset stats periodically
-            resetStats();
-            
-            int colonyCount = 0;
-            for (Object colony : colonyCollection) {
-                colonyCount++;
-                LOGGER.debug("[mc_mod] Processing colony: {}", colony);
-                processColonyRequests(colony);
+                return null;
             }
             
-            // Send progress message
-            if (colonyCount > 0) {
-                sendServerMessage("Processed " + colonyCount + " colonies for autofulfill", "PROGRESS");
+            // Colonies whose request system isn't up yet wait for a later cycle. The result is a
+            // snapshot, the cycle may span several ticks
+            List<Object> readyColonies = readiness.filterReady(colonyCollection);
+            if (readyColonies.isEmpty()) {
+                LOGGER.debug("[mc_mod] No colony ready yet, skipping autofulfill cycle");
+                return null;
             }
             
-            // Send stats every 10 cycles (about 50 seconds)
-            if (totalRequestsProcessed > 0 && totalRequestsProcessed % 10 == 0) {
-                sendStatsMessage();
-            }
+            cycleStartNanos = System.nanoTime();
+            return readyColonies;
             
         } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error in autoFulfillBuilderRequests: {}", e.getMessage(), e);
+            LOGGER.error("[mc_mod] Error starting autofulfill cycle: {}", e.getMessage(), e);
+            recordCycleFailure("could not start a cycle: " + e.getMessage());
             // Don't send error message to players for initialization issues
-            if (!e.getMessage().contains("not ready")) {
+            if (e.getMessage() == null || !e.getMessage().contains("not ready")) {
                 sendServerMessage("Autofulfill error: " + e.getMessage(), "ERROR");
             }
+            return null;
         }
     }
     
-    private void processColonyRequests(Object colony) {
-        try {
-            // Use direct approach like fulfillAllRequestsNoFilter
-            Object requestManager = colony.getClass().getMethod("getRequestManager").invoke(colony);
-            if (requestManager == null) {
-                log("[mc_mod] Request manager is null for colony");
-                return;
-            }
-            
-            // Get resolvers
-            Object playerResolver = requestManager.getClass().getMethod("getPlayerResolver").invoke(requestManager);
-            Object retryingResolver = requestManager.getClass().getMethod("getRetryingRequestResolver").invoke(requestManager);
-            
-            // Get all assigned tokens
-            Collection<?> playerTokens = (Collection<?>) playerResolver.getClass().getMethod("getAllAssignedRequests").invoke(playerResolver);
-            Collection<?> retryingTokens = (Collection<?>) retryingResolver.getClass().getMethod("getAllAssignedRequests").invoke(retryingResolver);
-            
-            Set<Object> allTokens = new HashSet<>();
-            if (playerTokens != null) allTokens.addAll(playerTokens);
-            if (retryingTokens != null) allTokens.addAll(retryingTokens);
-            
-            if (allTokens.isEmpty()) {
-                log("[mc_mod] No assigned tokens found for colony");
-                return;
-            }
-            
-            // Process each token/request
-            Class<?> iTokenClass = Class.forName("com.minecolonies.api.colony.requestsystem.token.IToken");
-            for (Object token : allTokens) {
-                Object request = requestManager.getClass().getMethod("getRequestForToken", iTokenClass).invoke(requestManager, token);
-                if (request == null) continue;
-                
-                // Process the request with our new direct approach
-                processRequest(request, colony);
-            }
-            
-        } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error processing colony requests: {}", e.getMessage(), e);
-        }
+    /**
+     * A cycle or intake pass failed. Enough of them in a row degrade autofulfill until MineColonies
+     * answers again.
+     */
+    void recordCycleFailure(String reason) {
+        lifecycle.recordFailure(reason);
     }
     
-    private void processRequest(Object request, Object colony) {
-        // Use direct approach like fulfillAllRequestsNoFilter but with filters
-        try {
-            totalRequestsProcessed++;
-            
-            // Get the request state for filtering
-            Object state = request.getClass().getMethod("getState").invoke(request);
-            String stateName = state.toString();
-            
-            // Get the request ID for resolver lookup
-            Object requestId = request.getClass().getMethod("getId").invoke(request);
-            
-            // Get the resolver for filtering
-            String resolverName = "Unknown";
+    /**
+     * End of an autofulfill cycle, called once every colony has been walked.
+     */
+    void finishAutofulfillCycle(int colonyCount) {
+        if (colonyCount > 0) {
+            messages.note(MessagePipeline.Level.VERBOSE, "PROGRESS", "Processed " + colonyCount + " colonies for autofulfill");
+        }
+        
+        metrics.recordTime(AutofulfillMetrics.Timer.CYCLE, System.nanoTime() - cycleStartNanos);
+        lifecycle.recordSuccess();
+        
+        // One summary per player for everything this cycle and the intake since the last one did
+        flushMessages();
+        
+        // Send stats every 10 cycles (about 50 seconds)
+        if (++completedCycles % 10 == 0) {
+            sendStatsMessage();
+        }
+        
+        // Forget retry state, dead letters and delivery progress for requests that were closed elsewhere
+        retryTracker.pruneStale();
+        deliveryProgress.prune((request, state) -> {
             try {
-                Class<?> iTokenClass = Class.forName("com.minecolonies.api.colony.requestsystem.token.IToken");
-                Object requestManager = colony.getClass().getMethod("getRequestManager").invoke(colony);
-                Object resolver = requestManager.getClass().getMethod("getResolverForRequest", iTokenClass).invoke(requestManager, requestId);
-                if (resolver != null) {
-                    resolverName = resolver.getClass().getSimpleName();
-                }
+                return MineColoniesBindings.getRequestState(request) == state;
             } catch (Exception e) {
-                log("[mc_mod][processRequest] Could not get resolver name: " + e.getMessage());
-            }
-            
-            // Apply filters: state must be IN_PROGRESS or FOLLOWUP_IN_PROGRESS
-            // and resolver must be StandardPlayerRequestResolver or StandardRetryingRequestResolver
-            boolean isActiveState = "IN_PROGRESS".equals(stateName) || "FOLLOWUP_IN_PROGRESS".equals(stateName);
-            boolean isAllowedResolver = "StandardPlayerRequestResolver".equals(resolverName) || "StandardRetryingRequestResolver".equals(resolverName);
-            
-            if (!isActiveState || !isAllowedResolver) {
-                log("[mc_mod][processRequest] Skipped request: state or resolver not allowed. state=" + stateName + ", resolver=" + resolverName);
-                skippedRequests++;
-                return;
-            }
-            
-            // Get the requester and building
-            Object requester = request.getClass().getMethod("getRequester").invoke(request);
-            if (requester == null) {
-                log("[mc_mod][processRequest] Skipping request: requester is null");
-                skippedRequests++;
-                return;
-            }
-            
-            // Get the building for this request
-            Object building = getBuildingOfficial(requester, colony, request);
-            if (building == null) {
-                log("[mc_mod][processRequest] Skipping request: building is null");
-                skippedRequests++;
-                return;
-            }
-            
-            // Get the citizen for this request
-            Object citizen = getCitizenForRequest(building, request);
-            String citizenName = "Unknown";
-            if (citizen != null) {
-                try {
-                    citizenName = (String) citizen.getClass().getMethod("getName").invoke(citizen);
-                } catch (Exception e) {
-                    log("[mc_mod][processRequest] Could not get citizen name: " + e.getMessage());
-                }
+                return false;
             }
-            
-            // Get the requestable and item information
-            Object requestable = request.getClass().getMethod("getRequest").invoke(request);
-            List<Object> displayStacks = getDisplayStacks(request);
-            String itemName = "Unknown Item";
-            int finalCount = 1;
-            
-            if (displayStacks != null && !displayStacks.isEmpty()) {
-                try {
-                    Object itemStack = displayStacks.get(0);
-                    Object stackCopy = itemStack.getClass().getMethod("copy").invoke(itemStack);
-                    int count = getRequestCount(requestable);
-                    int maxStackSize = (int) stackCopy.getClass().getMethod("getMaxStackSize").invoke(stackCopy);
-                    finalCount = Math.min(count, maxStackSize);
-                    Object item = stackCopy.getClass().getMethod("getItem").invoke(stackCopy);
-                    itemName = item.getClass().getMethod("getDescriptionId").invoke(item).toString();
-                    if (itemName.startsWith("item.")) itemName = itemName.substring(5);
-                    if (itemName.startsWith("block.")) itemName = itemName.substring(6);
-                    itemName = itemName.replace("minecraft.", "").replace("minecolonies.", "");
-                } catch (Exception e) {
-                    log("[mc_mod][processRequest] Could not get item name: " + e.getMessage());
-                }
+        });
+        retryTracker.pruneDeadLetters(deadLetter -> {
+            try {
+                return MineColoniesBindings.getRequestState(deadLetter.request()) == deadLetter.state();
+            } catch (Exception e) {
+                return false;
             }
-            
-            String buildingName = building.getClass().getSimpleName().replace("Building", "");
-            log("[mc_mod][processRequest] About to fulfill request: " + finalCount + "x " + itemName + " for " + buildingName + " (state: " + stateName + ", citizen: " + citizenName + ", resolver: " + resolverName + ")");
-            
-            // Fulfill the request
-            fulfillRequestWithCreativeResolve(request, colony, building, requestable, stateName, resolverName);
-            
-        } catch (Exception e) {
-            log("[mc_mod][processRequest] Exception: " + e);
-            java.io.StringWriter sw = new java.io.StringWriter();
-            e.printStackTrace(new java.io.PrintWriter(sw));
-            log("[mc_mod][processRequest] Stack trace: " + sw.toString());
-            failedFulfillments++;
+        });
+        
+        if (System.nanoTime() - lastStateSaveNanos >= TimeUnit.SECONDS.toNanos(config.stateSaveSeconds())) {
+            saveState(false);
         }
     }
     
-    private boolean isDeliverable(Object requestable) {
-            try {
-            // Check if the requestable implements IDeliverable
-            Class<?> deliverableClass = Class.forName("com.minecolonies.api.colony.requestsystem.requestable.IDeliverable");
-            return deliverableClass.isInstance(requestable);
-            } catch (Exception e) {
-            log("[mc_mod] Exception checking if requestable is deliverable: " + e);
-            return false;
+    /**
+     * Bring back a colony's saved retry, dead-letter and delivery state the first time it is seen
+     * after a start. Called before a colony's tokens are looked at; cheap once it is loaded.
+     */
+    void restoreColonyState(Object colony, Object requestManager) {
+        ColonyStateStore store = stateStore;
+        if (store != null) {
+            store.restore(colony, requestManager);
         }
     }
     
-    private void fulfillRequestWithCreativeResolve(Object request, Object colony, Object building, Object requestable, String stateName, String resolverName) {
-        try {
-            // Get the request ID
-            Object requestId = request.getClass().getMethod("getId").invoke(request);
-            
-            // Get the citizen for this request
-            Object citizen = getCitizenForRequest(building, request);
-            String citizenName = "Unknown";
-            if (citizen != null) {
-                try {
-                    citizenName = (String) citizen.getClass().getMethod("getName").invoke(citizen);
-                } catch (Exception e) {
-                    log("[mc_mod] Could not get citizen name: " + e.getMessage());
-                }
-            }
-            
-            if (citizen == null) {
-                log("[mc_mod] No citizen found for request, cannot fulfill");
-                sendServerMessage("No citizen assigned for request", "WARNING");
-                failedFulfillments++;
-                return;
-            }
-            
-            // Get the display stacks to know what items to give (like official logic)
-            List<Object> displayStacks = getDisplayStacks(request);
-            if (displayStacks == null || displayStacks.isEmpty()) {
-                log("[mc_mod] No display stacks found for request");
-                sendServerMessage("No items found for request", "WARNING");
-                failedFulfillments++;
-                return;
-            }
-            
-            // Get the first display stack and set the correct count (like official logic)
-            Object itemStack = displayStacks.get(0);
-            Object stackCopy = itemStack.getClass().getMethod("copy").invoke(itemStack);
-            
-            // Calculate count like official logic: Math.min(getCount(), getMaxStackSize())
-            int count = getRequestCount(requestable);
-            int maxStackSize = (int) stackCopy.getClass().getMethod("getMaxStackSize").invoke(stackCopy);
-            int finalCount = Math.min(count, maxStackSize);
-            stackCopy.getClass().getMethod("setCount", int.class).invoke(stackCopy, finalCount);
-            
-            // Get item name for better messaging
-            String itemName = "Unknown Item";
+    private void markStateDirty(FulfillmentPlan plan) {
+        ColonyStateStore store = stateStore;
+        if (store != null) {
             try {
-                Object item = stackCopy.getClass().getMethod("getItem").invoke(stackCopy);
-                itemName = item.getClass().getMethod("getDescriptionId").invoke(item).toString();
-                // Clean up the item name
-                if (itemName.startsWith("item.")) {
-                    itemName = itemName.substring(5);
-                }
-                if (itemName.startsWith("block.")) {
-                    itemName = itemName.substring(6);
-                }
-                itemName = itemName.replace("minecraft.", "").replace("minecolonies.", "");
-                            } catch (Exception e) {
-                log("[mc_mod] Could not get item name: " + e.getMessage());
-            }
-            
-            // Add the items to the citizen's inventory using official method
-            Object remainingItemStack = addItemToCitizenInventoryOfficial(citizen, stackCopy);
-            
-            // Log details about the remaining item stack
-            log("[mc_mod] Remaining item stack: " + (remainingItemStack != null ? remainingItemStack.getClass().getName() : "null"));
-            if (remainingItemStack != null) {
-                boolean isEmpty = isItemStackEmpty(remainingItemStack);
-                log("[mc_mod] Remaining item stack is empty: " + isEmpty);
-            }
-            
-            // Only resolve if all items were added successfully (like official logic)
-            if (remainingItemStack != null && isItemStackEmpty(remainingItemStack)) {
-                // Mark the request as resolved
-                Object requestManager = colony.getClass().getMethod("getRequestManager").invoke(colony);
-                Class<?> iTokenClass = Class.forName("com.minecolonies.api.colony.requestsystem.token.IToken");
-                Class<?> requestStateClass = Class.forName("com.minecolonies.api.colony.requestsystem.request.RequestState");
-                requestManager.getClass().getMethod("updateRequestState", iTokenClass, requestStateClass)
-                    .invoke(requestManager, requestId, getRequestState("RESOLVED"));
-                
-                log("[mc_mod] Successfully fulfilled request with creative resolve");
-                String buildingName = building.getClass().getSimpleName().replace("Building", "");
-                sendServerMessage("Fulfilled " + finalCount + "x " + itemName + " for " + buildingName + " (state: " + stateName + ", citizen: " + citizenName + ", resolver: " + resolverName + ")", "SUCCESS");
-                log("Fulfilled " + finalCount + "x " + itemName + " for " + buildingName + " (state: " + stateName + ", citizen: " + citizenName + ", resolver: " + resolverName + ")");
-                
-                successfulFulfillments++;
-                } else {
-                log("[mc_mod] Could not add all items to inventory, request not resolved");
-                log("[mc_mod] Remaining item stack is null: " + (remainingItemStack == null));
-                if (remainingItemStack != null) {
-                    log("[mc_mod] Remaining item stack is empty: " + isItemStackEmpty(remainingItemStack));
-                }
-                String buildingName = building.getClass().getSimpleName().replace("Building", "");
-                sendServerMessage("Could not add " + finalCount + "x " + itemName + " to inventory for " + buildingName + " (state: " + stateName + ", citizen: " + citizenName + ", resolver: " + resolverName + ")", "ERROR");
-                failedFulfillments++;
-            }
-            
+                store.markDirty(plan.colony(), plan.requestManager());
             } catch (Exception e) {
-            log("[mc_mod] Exception in fulfillRequestWithCreativeResolve: " + e);
-            sendServerMessage("Error fulfilling request: " + e.getMessage(), "ERROR");
-            failedFulfillments++;
-        }
-    }
-    
-    private Object addItemToCitizenInventoryOfficial(Object citizen, Object itemStack) {
-        try {
-            // Use official method: citizen.getInventory() (like official creative resolve logic)
-            Object inventory = citizen.getClass().getMethod("getInventory").invoke(citizen);
-            
-            // Log inventory details for debugging
-            log("[mc_mod] Inventory type: " + (inventory != null ? inventory.getClass().getName() : "null"));
-            log("[mc_mod] ItemStack type: " + (itemStack != null ? itemStack.getClass().getName() : "null"));
-            
-            if (inventory == null) {
-                log("[mc_mod] Inventory is null, cannot add item");
-                return null;
-            }
-            
-            if (itemStack == null) {
-                log("[mc_mod] ItemStack is null, cannot add item");
-                return null;
+                LOGGER.debug("[mc_mod] Could not mark colony state for saving", e);
             }
-            
-            // Add the item to the inventory using InventoryUtils.addItemStackToItemHandlerWithResult
-            // Use getDeclaredMethod to find the method with exact parameter types
-            Class<?> inventoryUtilsClass = Class.forName("com.minecolonies.api.util.InventoryUtils");
-            Class<?> itemStackClass = Class.forName("net.minecraft.world.item.ItemStack");
-            
-            log("[mc_mod] Calling InventoryUtils.addItemStackToItemHandlerWithResult");
-            // Get all declared methods and find the one with the correct signature
-            java.lang.reflect.Method targetMethod = null;
-            for (java.lang.reflect.Method method : inventoryUtilsClass.getDeclaredMethods()) {
-                if (method.getName().equals("addItemStackToItemHandlerWithResult") && 
-                    method.getParameterCount() == 2 &&
-                    method.getParameterTypes()[1] == itemStackClass) {
-                    targetMethod = method;
-                                break;
-                            }
-                        }
-            
-            if (targetMethod == null) {
-                log("[mc_mod] Could not find addItemStackToItemHandlerWithResult method");
-                return null;
-            }
-            
-            Object result = targetMethod.invoke(null, inventory, itemStack);
-            
-            log("[mc_mod] InventoryUtils.addItemStackToItemHandlerWithResult returned: " + (result != null ? result.getClass().getName() : "null"));
-            return result;
-                } catch (Exception e) {
-            log("[mc_mod] Exception adding item to citizen inventory: " + e.getMessage());
-            log("[mc_mod] Exception stack trace: " + e.toString());
-            return null;
         }
     }
     
-    private boolean isItemStackEmpty(Object itemStack) {
-        try {
-            // Use official ItemStackUtils.isEmpty method (like official creative resolve logic)
-            Class<?> itemStackUtilsClass = Class.forName("com.minecolonies.api.util.ItemStackUtils");
-            return (boolean) itemStackUtilsClass.getMethod("isEmpty", Class.forName("net.minecraft.world.item.ItemStack")).invoke(null, itemStack);
-                    } catch (Exception e) {
-            log("[mc_mod] Exception checking if item stack is empty: " + e.getMessage());
-            return false;
+    /**
+     * Write changed colonies and the server-wide state. Call on the server thread.
+     */
+    private void saveState(boolean wait) {
+        lastStateSaveNanos = System.nanoTime();
+        ColonyStateStore store = stateStore;
+        if (store == null) {
+            return;
         }
+        if (store.getDirtyCount() > 0) {
+            // The lifetime totals moved along with the colonies
+            store.markGlobalDirty();
+        }
+        store.flush(this::captureGlobalState, wait);
     }
     
-    private int getRequestCount(Object requestable) {
-        try {
-            // Try to get count from IDeliverable
-            Class<?> deliverableClass = Class.forName("com.minecolonies.api.colony.requestsystem.requestable.IDeliverable");
-            if (deliverableClass.isInstance(requestable)) {
-                return (int) requestable.getClass().getMethod("getCount").invoke(requestable);
-            }
-            return 1; // Default to 1 if we can't determine
-                        } catch (Exception e) {
-            log("[mc_mod] Exception getting request count: " + e);
-            return 1;
+    private ColonyStateStore.GlobalState captureGlobalState() {
+        Map<String, Long> totals = new HashMap<>();
+        for (AutofulfillMetrics.Outcome outcome : AutofulfillMetrics.Outcome.values()) {
+            totals.put(outcome.name(), metrics.getTotal(outcome));
         }
+        return new ColonyStateStore.GlobalState(totals, messages.getLevels());
     }
     
-    private Object getRequestState(String stateName) {
-        try {
-            Class<?> requestStateClass = Class.forName("com.minecolonies.api.colony.requestsystem.request.RequestState");
-            for (Object state : requestStateClass.getEnumConstants()) {
-                if (state.toString().equals(stateName)) {
-                    return state;
-                }
-            }
-            return null;
-            } catch (Exception e) {
-            log("[mc_mod] Exception getting request state: " + e);
-            return null;
-        }
+    /**
+     * True if the token failed recently and is still backing off, or has been dead-lettered.
+     * Only scheduled processing honours this; the manual commands try every request.
+     */
+    boolean isRetryBlocked(Object token) {
+        return retryTracker.isBlocked(token);
     }
     
     /**
-     * Check if a request state is active and can be fulfilled.
-     * This method determines which request states should be processed.
+     * Cheap gate for per-tick work: autofulfill is enabled and the lifecycle is READY.
      */
-    private boolean isActiveRequestState(String stateName) {
-        // Include more request states to capture more requests
-        // All type status: "IN_PROGRESS", "FOLLOWUP_IN_PROGRESS", "IN_PROGRESS_DELIVERY", 
-        // "FOLLOWUP_IN_PROGRESS_DELIVERY", "IN_PROGRESS_PICKUP", "FOLLOWUP_IN_PROGRESS_PICKUP"
-        return "IN_PROGRESS".equals(stateName) ||
-               "FOLLOWUP_IN_PROGRESS".equals(stateName);
+    boolean isAutofulfillActive() {
+        return autofulfillEnabled && lifecycle.isReady();
     }
     
     /**
-     * Check if a resolver type is allowed for auto-fulfillment.
-     * This method determines which resolver types should be processed.
+     * Colonies whose request system is ready, for the per-tick intake scan.
      */
-    private boolean isAllowedResolver(String resolverName) {
-        // Accept more resolver types to capture more requests
-        // All type resolver: "StandardPlayerRequestResolver", "StandardRetryingRequestResolver", "StandardDeliveryRequestResolver", 
-        // "StandardPickupRequestResolver", "StandardCraftingRequestResolver", "StandardBuildingRequestResolver", "WarehouseConcreteRequestResolver"
-        return "StandardPlayerRequestResolver".equals(resolverName) ||
-               "StandardRetryingRequestResolver".equals(resolverName);
+    Collection<?> getReadyColonies() {
+        return readiness.filterReady(MineColoniesBindings.getAllColonies());
     }
     
-    private MinecraftServer getServerInstance() {
+    /**
+     * Process a single assigned token. The request may have been resolved since the token was
+     * collected, in which case it is skipped.
+     */
+    void processToken(Object colony, Object requestManager, Object token) {
         try {
-            MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
-            if (server == null) {
-                LOGGER.info("[mc_mod] ServerLifecycleHooks.getCurrentServer() returned null");
+            restoreColonyState(colony, requestManager);
+            if (isRetryBlocked(token)) {
+                RequestTrace.record(RequestTrace.Event.BACKING_OFF, token);
+                return;
+            }
+            Object request = MineColoniesBindings.getRequestForToken(requestManager, token);
+            if (request == null) return;
+            
+            // Process the request with our new direct approach
+            processRequest(token, request, colony, requestManager);
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error processing colony request: {}", e.getMessage(), e);
+        }
+    }
+    
+    private void processRequest(Object token, Object request, Object colony, Object requestManager) {
+        // Plan and commit in one go, for requests handled straight from the server thread
+        try {
+            metrics.record(AutofulfillMetrics.Outcome.PROCESSED);
+            
+            FulfillmentPlan plan = planRequest(colony, requestManager, request, autofulfillFilter);
+            if (plan == null) {
+                metrics.record(AutofulfillMetrics.Outcome.SKIPPED);
+                return;
+            }
+            
+            // Fulfill the request
+            fulfillRequestWithCreativeResolve(plan);
+            
+        } catch (Exception e) {
+            // Log4j renders the stack trace, and only if debug is on
+            LOGGER.debug("[mc_mod][processRequest] Exception processing request", e);
+            RequestTrace.record(RequestTrace.Event.ERROR, token);
+            metrics.record(AutofulfillMetrics.Outcome.FAILED);
+        }
+    }
+    
+    /**
+     * Discovery step for one request: filters it and looks up building, citizen and item. Only
+     * reads MineColonies state. On the mod side it reads delivery progress, records trace events
+     * and writes the plan cache, all of which take concurrent use, so it is safe to run off the
+     * server thread while the server thread waits for it.
+     *
+     * @param filter which requests to plan; checked stage by stage as the lookups are made
+     * @return the plan, or null if the request should be skipped
+     */
+    FulfillmentPlan planRequest(Object colony, Object requestManager, Object request, RequestFilter filter) {
+        // Get the request state for filtering
+        Object state = MineColoniesBindings.getRequestState(request);
+        
+        // Get the request ID for resolver lookup
+        Object requestId = MineColoniesBindings.getRequestId(request);
+        
+        // Reuse the plan from an earlier pass if the request has not changed since
+        FulfillmentPlan cached = planCache.get(requestId, request, state);
+        if (cached != null && !isTargetLive(cached)) {
+            // Citizen moved or died, or the hut is gone: look both up again
+            planCache.invalidate(requestId);
+            cached = null;
+        }
+        if (cached != null) {
+            boolean accepted = filter.accepts(cached);
+            RequestTrace.record(accepted ? RequestTrace.Event.PLAN_CACHED : RequestTrace.Event.FILTERED, requestId, cached.count());
+            return accepted ? cached : null;
+        }
+        
+        if (!filter.acceptsState(state)) {
+            log("[mc_mod][planRequest] Skipped request: state {} not allowed", state);
+            RequestTrace.record(RequestTrace.Event.FILTERED, requestId);
+            return null;
+        }
+        String stateName = state.toString();
+        
+        // Get the resolver for filtering
+        Object resolver = null;
+        try {
+            resolver = MineColoniesBindings.getResolverForRequest(requestManager, requestId);
+        } catch (Exception e) {
+            log("[mc_mod][planRequest] Could not get resolver: {}", e.getMessage());
+        }
+        
+        if (!filter.acceptsResolver(resolver)) {
+            log("[mc_mod][planRequest] Skipped request: resolver not allowed. state={}, resolver={}", stateName, resolver);
+            RequestTrace.record(RequestTrace.Event.FILTERED, requestId);
+            return null;
+        }
+        Class<?> resolverClass = resolver != null ? resolver.getClass() : null;
+        String resolverName = resolverClass != null ? resolverClass.getSimpleName() : "Unknown";
+        
+        // Get the requester and building
+        Object requester = MineColoniesBindings.getRequester(request);
+        if (requester == null) {
+            log("[mc_mod][planRequest] Skipping request: requester is null");
+            RequestTrace.record(RequestTrace.Event.NO_REQUESTER, requestId);
+            return null;
+        }
+        
+        // Get the building for this request
+        Object building = getBuildingOfficial(requester, requestManager, requestId);
+        if (building == null) {
+            log("[mc_mod][planRequest] Skipping request: building is null");
+            RequestTrace.record(RequestTrace.Event.NO_BUILDING, requestId);
+            return null;
+        }
+        if (!filter.acceptsBuilding(building)) {
+            RequestTrace.record(RequestTrace.Event.FILTERED, requestId);
+            return null;
+        }
+        
+        // Get the citizen for this request
+        Object citizen = getCitizenForRequest(building, requestId);
+        String citizenName = "Unknown";
+        if (citizen != null) {
+            try {
+                citizenName = MineColoniesBindings.getCitizenName(citizen);
+            } catch (Exception e) {
+                log("[mc_mod][planRequest] Could not get citizen name: {}", e.getMessage());
+            }
+        }
+        if (!filter.acceptsCitizen(citizenName)) {
+            RequestTrace.record(RequestTrace.Event.FILTERED, requestId);
+            return null;
+        }
+        
+        // Get the requestable and item information
+        Object requestable = MineColoniesBindings.getRequestable(request);
+        List<ItemStack> displayStacks = getDisplayStacks(request);
+        RequestedItem item = null;
+        int finalCount = 1;
+        
+        if (displayStacks != null && !displayStacks.isEmpty()) {
+            try {
+                // Full requested count, minus anything already delivered; the commit step splits it into stacks
+                int count = getRequestCount(requestable);
+                item = RequestedItem.of(displayStacks.get(0), count);
+                finalCount = Math.max(1, count - deliveryProgress.getDelivered(requestId, request));
+            } catch (Exception e) {
+                log("[mc_mod][planRequest] Could not read requested item: {}", e.getMessage());
+            }
+        }
+        
+        if (!filter.acceptsItem(item) || !filter.acceptsCount(finalCount)) {
+            RequestTrace.record(RequestTrace.Event.FILTERED, requestId);
+            return null;
+        }
+        
+        String buildingName = BUILDING_NAMES.get(building.getClass());
+        LOGGER.debug("[mc_mod][planRequest] Planned request: {}x {} for {} (state: {}, citizen: {}, resolver: {})",
+            finalCount, item != null ? item.name() : ItemNames.UNKNOWN, buildingName, stateName, citizenName, resolverName);
+        RequestTrace.record(RequestTrace.Event.PLANNED, requestId, finalCount);
+        
+        FulfillmentPlan plan = new FulfillmentPlan(colony, requestManager, requestId, request, state, stateName, resolverName, resolverClass,
+            building, buildingName, citizen, citizenName, item, finalCount);
+        planCache.put(plan);
+        return plan;
+    }
+    
+    /**
+     * Discovery phase of a scheduled cycle, advanced by the tick scheduler a slice per tick.
+     */
+    FulfillmentDiscovery.Pass beginDiscovery(Collection<?> colonies) {
+        return FulfillmentDiscovery.start(this, colonies, autofulfillFilter);
+    }
+    
+    /**
+     * Applies a finished discovery's skip/failure counts here on the server thread.
+     */
+    List<FulfillmentPlan> finishDiscovery(FulfillmentDiscovery.Pass pass) {
+        FulfillmentDiscovery.Result result = pass.result();
+        metrics.recordTime(AutofulfillMetrics.Timer.DISCOVERY, pass.getBusyNanos());
+        metrics.record(AutofulfillMetrics.Outcome.PROCESSED, result.examined());
+        metrics.record(AutofulfillMetrics.Outcome.SKIPPED, result.skipped());
+        metrics.record(AutofulfillMetrics.Outcome.FAILED, result.failed());
+        return result.plans();
+    }
+    
+    /**
+     * Plan every colony's requests in one go, without a tick budget.
+     */
+    List<FulfillmentPlan> discoverPlans(Collection<?> colonies) {
+        FulfillmentDiscovery.Pass pass = beginDiscovery(colonies);
+        pass.advance(Long.MAX_VALUE);
+        return finishDiscovery(pass);
+    }
+    
+    /**
+     * Commit phase for all of one citizen's planned requests, see {@link #commitPlans}.
+     */
+    void commitBatch(InventoryBatch batch) {
+        List<FulfillmentPlan> plans = new ArrayList<>(batch.getPlans().size());
+        for (FulfillmentPlan plan : batch.getPlans()) {
+            if (isStillPlanned(plan)) {
+                plans.add(plan);
+            }
+        }
+        if (!plans.isEmpty()) {
+            commitPlans(batch.getCitizen(), plans);
+        }
+    }
+    
+    /**
+     * False if the request changed state since it was planned, e.g. because it was resolved in
+     * the ticks between discovery and commit, or its citizen or building is no longer the one
+     * planned for.
+     */
+    private boolean isStillPlanned(FulfillmentPlan plan) {
+        try {
+            if (MineColoniesBindings.getRequestState(plan.request()) == plan.state() && isTargetLive(plan)) {
+                return true;
+            }
+            log("[mc_mod] Request, citizen or building changed since it was planned, skipping");
+            RequestTrace.record(RequestTrace.Event.STALE, plan.token());
+            planCache.invalidate(plan.token());
+            metrics.record(AutofulfillMetrics.Outcome.SKIPPED);
+        } catch (Exception e) {
+            log("[mc_mod] Exception checking planned request", e);
+            metrics.record(AutofulfillMetrics.Outcome.FAILED);
+        }
+        return false;
+    }
+    
+    /**
+     * True while the plan's building is still registered in its colony and its citizen is still
+     * assigned to that building, so items don't go to a dead, moved or homeless citizen. Costs a
+     * map lookup and a walk over the building's few assigned citizens.
+     */
+    private static boolean isTargetLive(FulfillmentPlan plan) {
+        Object building = plan.building();
+        if (building == null) {
+            return true;
+        }
+        Map<?, ?> buildings = MineColoniesBindings.getBuildings(MineColoniesBindings.getBuildingManager(plan.colony()));
+        Object position = MineColoniesBindings.getBuildingPosition(building);
+        if (position != null ? buildings.get(position) != building : !buildings.containsValue(building)) {
+            return false;
+        }
+        Object citizen = plan.citizen();
+        if (citizen == null) {
+            return true;
+        }
+        for (Object assigned : MineColoniesBindings.getAllAssignedCitizens(building)) {
+            if (assigned == citizen) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Deliver one citizen's requests and record the time the batch took.
+     *
+     * @return how many of the requests were delivered in full and resolved
+     */
+    private int commitPlans(Object citizen, List<FulfillmentPlan> plans) {
+        long start = System.nanoTime();
+        int resolved = deliverPlans(citizen, plans);
+        metrics.recordTime(AutofulfillMetrics.Timer.BATCH, System.nanoTime() - start);
+        return resolved;
+    }
+    
+    /**
+     * Hand the items for one citizen's requests over in a single inventory transaction.
+     *
+     * The requests are simulated against the inventory first. A request whose items all fit is
+     * delivered in full and resolved; one that is too big for the free space gets as many whole
+     * stacks as fit, recorded as partial progress for its token. Allocations of the same item are
+     * inserted together in max-size stacks. If the real insert falls short of the simulation, the
+     * items of the allocation that didn't fully make it are taken out again, so the inventory only
+     * ever holds items that were accounted for.
+     *
+     * @return how many of the requests were delivered in full and resolved
+     */
+    private int deliverPlans(Object citizen, List<FulfillmentPlan> plans) {
+        List<FulfillmentPlan> deliverable = new ArrayList<>(plans.size());
+        for (FulfillmentPlan plan : plans) {
+            if (plan.citizen() == null) {
+                log("[mc_mod] No citizen found for request, cannot fulfill");
+                recordFulfillFailure(plan, () -> "No citizen assigned for request");
+            } else if (plan.item() == null) {
+                // The display stack tells us what items to give (like official logic)
+                log("[mc_mod] No display stacks found for request");
+                recordFulfillFailure(plan, () -> "No items found for request");
+            } else {
+                deliverable.add(plan);
+            }
+        }
+        if (deliverable.isEmpty()) {
+            return 0;
+        }
+        
+        int resolved = 0;
+        try {
+            Object inventory = MineColoniesBindings.getCitizenInventory(citizen);
+            if (!(inventory instanceof IItemHandler handler)) {
+                log("[mc_mod] Inventory is not an item handler: {}", inventory);
+                for (FulfillmentPlan plan : deliverable) {
+                    recordFulfillFailure(plan, describeInsertFailure(plan));
+                }
+                return 0;
+            }
+            
+            List<InventoryBatch.Allocation> allocations = InventoryBatch.simulate(handler, deliverable);
+            for (InventoryBatch.Allocation allocation : allocations) {
+                if (allocation.count() == 0) {
+                    FulfillmentPlan plan = allocation.plan();
+                    recordFulfillFailure(plan, describeInsertFailure(plan));
+                }
+            }
+            
+            for (InventoryBatch.MergedStack merged : InventoryBatch.merge(allocations)) {
+                int inserted = insertMergedStack(inventory, merged);
+                if (inserted < merged.count()) {
+                    log("[mc_mod] Inventory took {} of {} simulated items", inserted, merged.count());
+                }
+                // Settle allocations in order for as long as the inserted items cover them
+                int covered = 0;
+                for (InventoryBatch.Allocation allocation : merged.allocations()) {
+                    FulfillmentPlan plan = allocation.plan();
+                    if (covered + allocation.count() <= inserted) {
+                        covered += allocation.count();
+                        if (allocation.count() == plan.count()) {
+                            resolveFulfilledPlan(plan);
+                            resolved++;
+                        } else {
+                            recordPartialDelivery(plan, allocation.count());
+                        }
+                    } else {
+                        int stray = Math.max(0, inserted - covered);
+                        if (stray > 0) {
+                            int removed = InventoryBatch.rollback(handler, merged.item(), stray);
+                            log("[mc_mod] Rolled back {} of {} items for a short insert", removed, stray);
+                            covered = inserted;
+                        }
+                        recordFulfillFailure(plan, describeInsertFailure(plan));
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log("[mc_mod] Exception committing plans", e);
+            for (FulfillmentPlan plan : deliverable) {
+                recordFulfillFailure(plan, () -> "Error fulfilling request: " + e.getMessage());
+            }
+        }
+        return resolved;
+    }
+    
+    /**
+     * Insert a merged stack in max-size chunks.
+     *
+     * @return how many items the inventory took
+     */
+    private int insertMergedStack(Object inventory, InventoryBatch.MergedStack merged) {
+        int maxStackSize = merged.item().maxStackSize();
+        int inserted = 0;
+        while (inserted < merged.count()) {
+            int chunk = Math.min(maxStackSize, merged.count() - inserted);
+            ItemStack remainder = MineColoniesBindings.addItemStackToItemHandlerWithResult(inventory, merged.item().copyWithCount(chunk));
+            if (remainder == null) {
+                break;
+            }
+            inserted += chunk - (isItemStackEmpty(remainder) ? 0 : remainder.getCount());
+            if (!isItemStackEmpty(remainder)) {
+                break;
+            }
+        }
+        return inserted;
+    }
+    
+    private static String describeItems(FulfillmentPlan plan) {
+        return plan.count() + "x " + plan.itemName();
+    }
+    
+    private static String describeDetails(FulfillmentPlan plan) {
+        return " for " + plan.buildingName() + " (state: " + plan.stateName() + ", citizen: " + plan.citizenName() + ", resolver: " + plan.resolverName() + ")";
+    }
+    
+    private static Supplier<String> describeInsertFailure(FulfillmentPlan plan) {
+        return () -> "Could not add " + describeItems(plan) + " to inventory" + describeDetails(plan);
+    }
+    
+    private boolean isDeliverable(Object requestable) {
+            try {
+            // Check if the requestable implements IDeliverable
+            return MineColoniesBindings.isDeliverable(requestable);
+            } catch (Exception e) {
+            log("[mc_mod] Exception checking if requestable is deliverable", e);
+            return false;
+        }
+    }
+    
+    /**
+     * @return true if the request was delivered in full and resolved, false if it failed or only
+     *         part of it fit
+     */
+    private boolean fulfillRequestWithCreativeResolve(FulfillmentPlan plan) {
+        return commitPlans(plan.citizen(), List.of(plan)) == 1;
+    }
+    
+    /**
+     * Record items handed over for a request that was too big for the free inventory space. The
+     * next plan for the token only asks for what is still missing.
+     */
+    private void recordPartialDelivery(FulfillmentPlan plan, int count) {
+        int delivered = deliveryProgress.add(plan.token(), plan.request(), plan.state(), count);
+        planCache.invalidate(plan.token());
+        int requested = delivered - count + plan.count();
+        RequestTrace.record(RequestTrace.Event.PARTIAL, plan.token(), count);
+        recordAudit(plan, AuditJournal.Outcome.PARTIAL, count);
+        markStateDirty(plan);
+        messages.record(MessagePipeline.Kind.PARTIAL, plan, count,
+            () -> "Delivered " + delivered + " of " + requested + "x " + plan.itemName() + describeDetails(plan));
+        LOGGER.debug("[mc_mod] Delivered {} of {}x {} for {}", delivered, requested, plan.itemName(), plan.buildingName());
+    }
+    
+    /**
+     * Mark a request whose items are in the citizen's inventory as resolved.
+     */
+    private void resolveFulfilledPlan(FulfillmentPlan plan) {
+        MineColoniesBindings.updateRequestState(plan.requestManager(), plan.token(), getRequestState("RESOLVED"));
+        planCache.invalidate(plan.token());
+        retryTracker.recordSuccess(plan.token());
+        deliveryProgress.clear(plan.token());
+        requesterIndex.remove(plan.colony(), plan.token());
+        
+        RequestTrace.record(RequestTrace.Event.RESOLVED, plan.token(), plan.count());
+        recordAudit(plan, AuditJournal.Outcome.RESOLVED, plan.count());
+        markStateDirty(plan);
+        messages.record(MessagePipeline.Kind.FULFILLED, plan, plan.count(), () -> "Fulfilled " + describeItems(plan) + describeDetails(plan));
+        LOGGER.debug("[mc_mod] Fulfilled {}x {} for {} (citizen: {})", plan.count(), plan.itemName(), plan.buildingName(), plan.citizenName());
+        
+        metrics.record(AutofulfillMetrics.Outcome.SUCCESS);
+        recordBreakdown(plan, true);
+    }
+    
+    private void recordAudit(FulfillmentPlan plan, AuditJournal.Outcome outcome, int count) {
+        AuditJournal journal = auditJournal;
+        if (journal == null) {
+            return;
+        }
+        int colonyId;
+        Object tokenId;
+        try {
+            colonyId = MineColoniesBindings.getColonyId(plan.colony());
+            tokenId = MineColoniesBindings.getTokenIdentifier(plan.token());
+        } catch (Exception e) {
+            colonyId = -1;
+            tokenId = plan.token();
+        }
+        journal.record(outcome, colonyId, tokenId, plan.item() != null ? plan.item().item() : null,
+            plan.itemName(), count, plan.citizenName(), plan.resolverName());
+    }
+    
+    private void recordBreakdown(FulfillmentPlan plan, boolean success) {
+        Object colonyId;
+        try {
+            colonyId = MineColoniesBindings.getColonyId(plan.colony());
+        } catch (Exception e) {
+            colonyId = "Unknown";
+        }
+        metrics.recordBreakdown(success, colonyId, plan.buildingName(), plan.resolverName(), plan.itemName());
+    }
+    
+    /**
+     * Count a failed fulfillment and schedule its retry. Only the first failure and the final
+     * dead-lettering go into the cycle summary, so a request failing on every retry doesn't spam chat.
+     */
+    private void recordFulfillFailure(FulfillmentPlan plan, Supplier<String> msg) {
+        metrics.record(AutofulfillMetrics.Outcome.FAILED);
+        recordBreakdown(plan, false);
+        RetryTracker.Outcome outcome = retryTracker.recordFailure(plan,
+            () -> plan.itemName() + " for " + plan.buildingName() + " (citizen: " + plan.citizenName() + ")");
+        RequestTrace.record(outcome == RetryTracker.Outcome.DEAD_LETTERED ? RequestTrace.Event.DEAD_LETTERED : RequestTrace.Event.FAILED, plan.token());
+        recordAudit(plan, outcome == RetryTracker.Outcome.DEAD_LETTERED ? AuditJournal.Outcome.DEAD_LETTERED : AuditJournal.Outcome.FAILED, plan.count());
+        markStateDirty(plan);
+        switch (outcome) {
+            case FIRST_FAILURE -> {
+                if (LOGGER.isDebugEnabled()) {
+                    log("[mc_mod] {}", msg.get());
+                }
+                messages.record(MessagePipeline.Kind.FAILED, plan, plan.count(), msg);
+            }
+            case RETRYING -> {
+                if (LOGGER.isDebugEnabled()) {
+                    log("[mc_mod] Retry failed: {}", msg.get());
+                }
+            }
+            case DEAD_LETTERED -> {
+                String text = msg.get();
+                LOGGER.warn("[mc_mod] Giving up on request after {} attempts: {}", retryTracker.getMaxAttempts(), text);
+                messages.record(MessagePipeline.Kind.DEAD_LETTERED, plan, plan.count(), () -> "Giving up after " + retryTracker.getMaxAttempts() + " attempts: " + text);
+            }
+        }
+    }
+    
+    private boolean isItemStackEmpty(ItemStack itemStack) {
+        try {
+            // Use official ItemStackUtils.isEmpty method (like official creative resolve logic)
+            return MineColoniesBindings.isItemStackEmpty(itemStack);
+                    } catch (Exception e) {
+            log("[mc_mod] Exception checking if item stack is empty: {}", e.getMessage());
+            return false;
+        }
+    }
+    
+    private int getRequestCount(Object requestable) {
+        try {
+            // Count from IDeliverable, defaults to 1 if we can't determine
+            return MineColoniesBindings.getRequestCount(requestable);
+                        } catch (Exception e) {
+            log("[mc_mod] Exception getting request count", e);
+            return 1;
+        }
+    }
+    
+    private Object getRequestState(String stateName) {
+        try {
+            return MineColoniesBindings.requestState(stateName);
+            } catch (Exception e) {
+            log("[mc_mod] Exception getting request state", e);
+            return null;
+        }
+    }
+    
+    private MinecraftServer getServerInstance() {
+        try {
+            MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
+            if (server == null) {
+                LOGGER.info("[mc_mod] ServerLifecycleHooks.getCurrentServer() returned null");
             }
             return server;
             } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error calling ServerLifecycleHooks.getCurrentServer(): {}", e.getMessage());
+            LOGGER.error("[mc_mod] Error calling ServerLifecycleHooks.getCurrentServer(): {}", e.getMessage(), e);
             return null;
         }
     }
     
-    private List<Object> getDisplayStacks(Object request) {
+    private List<ItemStack> getDisplayStacks(Object request) {
         try {
             // getDisplayStacks returns List<ItemStack> according to source code
-            List<Object> displayStacks = (List<Object>) request.getClass().getMethod("getDisplayStacks").invoke(request);
-            return displayStacks;
+            return MineColoniesBindings.getDisplayStacks(request);
         } catch (Exception e) {
             LOGGER.debug("[AutoFulfill] Could not get display stacks: {}", e.getMessage());
             return null;
         }
     }
     
-    private Object getBuildingOfficial(Object requester, Object colony, Object request) {
+    private Object getBuildingOfficial(Object requester, Object requestManager, Object requestId) {
         try {
-            // Get the request manager and request ID
-            Object requestManager = colony.getClass().getMethod("getRequestManager").invoke(colony);
-            Object requestId = request.getClass().getMethod("getId").invoke(request);
-            
             // Get the building using the official method (like creative resolve logic)
             Object building = null;
             try {
-                // Cast to the correct interface types
-                Class<?> iRequestManagerClass = Class.forName("com.minecolonies.api.colony.requestsystem.manager.IRequestManager");
-                Class<?> iTokenClass = Class.forName("com.minecolonies.api.colony.requestsystem.token.IToken");
-                
-                @SuppressWarnings("unchecked")
-                Optional<Object> buildingOptional = (Optional<Object>) requester.getClass()
-                    .getMethod("getBuilding", iRequestManagerClass, iTokenClass)
-                    .invoke(requester, requestManager, requestId);
+                Optional<Object> buildingOptional = MineColoniesBindings.getBuilding(requester, requestManager, requestId);
                 
                 if (buildingOptional != null && buildingOptional.isPresent()) {
                     building = buildingOptional.get();
                 }
             } catch (Exception e) {
-                log("[mc_mod] Exception getting building using official method: " + e);
+                log("[mc_mod] Exception getting building using official method", e);
             }
             
                     if (building != null) {
-                log("[mc_mod] Found building using official method: " + building.getClass().getSimpleName());
+                log("[mc_mod] Found building using official method: {}", building.getClass().getName());
                         return building;
                     }
         } catch (Exception e) {
-            log("[mc_mod] Exception in getBuildingOfficial: " + e);
+            log("[mc_mod] Exception in getBuildingOfficial", e);
         }
         return null;
     }
     
-    private Object getCitizenForRequest(Object building, Object request) {
+    private Object getCitizenForRequest(Object building, Object requestId) {
         try {
-            // Get the request ID
-            Object requestId = request.getClass().getMethod("getId").invoke(request);
-            
             // Log the building type for debugging
-            log("[mc_mod] Building type: " + building.getClass().getName());
-            log("[mc_mod] Building superclass: " + building.getClass().getSuperclass().getName());
-            
-            // Check if building implements IBuilding interface
-            Class<?> iBuildingClass = Class.forName("com.minecolonies.api.colony.buildings.IBuilding");
-            boolean isIBuilding = iBuildingClass.isInstance(building);
-            log("[mc_mod] Is IBuilding: " + isIBuilding);
+            log("[mc_mod] Building type: {}", building.getClass().getName());
             
-            // Check if building is AbstractBuilding
-            Class<?> abstractBuildingClass = Class.forName("com.minecolonies.core.colony.buildings.AbstractBuilding");
-            boolean isAbstractBuilding = abstractBuildingClass.isInstance(building);
-            log("[mc_mod] Is AbstractBuilding: " + isAbstractBuilding);
-            
-            if (!isIBuilding && !isAbstractBuilding) {
-                log("[mc_mod] Building is not an IBuilding or AbstractBuilding: " + building.getClass().getName());
-            return null;
+            // Check if building implements IBuilding interface (AbstractBuilding implements it too)
+            if (!MineColoniesBindings.isBuilding(building)) {
+                log("[mc_mod] Building is not an IBuilding: {}", building.getClass().getName());
+                return null;
             }
             
             // First try to get citizen for the specific request
             try {
-                Optional<Object> citizenOptional = (Optional<Object>) building.getClass().getMethod("getCitizenForRequest", requestId.getClass()).invoke(building, requestId);
+                Optional<Object> citizenOptional = MineColoniesBindings.getCitizenForRequest(building, requestId);
                 
                 if (citizenOptional != null && citizenOptional.isPresent()) {
                     log("[mc_mod] Found citizen for specific request");
                     return citizenOptional.get();
                     }
                 } catch (Exception e) {
-                log("[mc_mod] Exception getting citizen for specific request: " + e.getMessage());
+                log("[mc_mod] Exception getting citizen for specific request: {}", e.getMessage());
             }
             
             // If no citizen for specific request, try to get assigned citizens from building
             log("[mc_mod] No citizen for specific request, trying to get assigned citizens from building");
             try {
-                Set<Object> assignedCitizens = (Set<Object>) building.getClass().getMethod("getAllAssignedCitizen").invoke(building);
+                Set<?> assignedCitizens = MineColoniesBindings.getAllAssignedCitizens(building);
                 
                 if (assignedCitizens != null && !assignedCitizens.isEmpty()) {
-                    log("[mc_mod] Found " + assignedCitizens.size() + " assigned citizens, using first one");
+                    log("[mc_mod] Found {} assigned citizens, using first one", assignedCitizens.size());
                     return assignedCitizens.iterator().next();
                 }
         } catch (Exception e) {
-                log("[mc_mod] Exception getting assigned citizens: " + e.getMessage());
+                log("[mc_mod] Exception getting assigned citizens: {}", e.getMessage());
             }
             
             log("[mc_mod] No citizen found for request, cannot fulfill");
             return null;
         } catch (Exception e) {
-            log("[mc_mod] Exception getting citizen for request: " + e.getMessage());
+            log("[mc_mod] Exception getting citizen for request: {}", e.getMessage());
             return null;
         }
     }
@@ -857,6 +1127,63 @@ public class McMod {
                         context.getSource().sendFailure(Component.literal("Usage: /mcmod autofullfill delay <seconds>"));
                         return 0;
                     }))
+                .then(Commands.literal("budget")
+                    .then(Commands.argument("micros", IntegerArgumentType.integer(100, 50000))
+                        .executes(context -> {
+                            int micros = IntegerArgumentType.getInteger(context, "micros");
+                            setAutofulfillBudget(micros);
+                            context.getSource().sendSuccess(() -> Component.literal("Autofulfill tick budget set to " + micros + " microseconds"), false);
+                            return 1;
+                        }))
+                    .executes(context -> {
+                        context.getSource().sendFailure(Component.literal("Usage: /mcmod autofullfill budget <micros>"));
+                        return 0;
+                    }))
+                .then(Commands.literal("intake")
+                    .then(Commands.literal("incremental")
+                        .executes(context -> {
+                            setIntakeMode(RequestIntake.Mode.INCREMENTAL);
+                            context.getSource().sendSuccess(() -> Component.literal("Request intake set to incremental"), false);
+                            return 1;
+                        }))
+                    .then(Commands.literal("polling")
+                        .executes(context -> {
+                            setIntakeMode(RequestIntake.Mode.POLLING);
+                            context.getSource().sendSuccess(() -> Component.literal("Request intake set to polling"), false);
+                            return 1;
+                        })))
+                .then(Commands.literal("colonies")
+                    .executes(context -> {
+                        showColonyFairness(context.getSource());
+                        return 1;
+                    }))
+                .then(Commands.literal("deadletter")
+                    .then(Commands.literal("requeue")
+                        .then(Commands.literal("all")
+                            .executes(context -> {
+                                int count = requeueAllDeadLetters();
+                                context.getSource().sendSuccess(() -> Component.literal("Requeued " + count + " dead-lettered requests"), false);
+                                return 1;
+                            }))
+                        .then(Commands.argument("index", IntegerArgumentType.integer(1))
+                            .executes(context -> {
+                                int index = IntegerArgumentType.getInteger(context, "index");
+                                RetryTracker.DeadLetter deadLetter = requeueDeadLetter(index);
+                                if (deadLetter == null) {
+                                    context.getSource().sendFailure(Component.literal("No dead-lettered request #" + index));
+                                    return 0;
+                                }
+                                context.getSource().sendSuccess(() -> Component.literal("Requeued " + deadLetter.description()), false);
+                                return 1;
+                            }))
+                        .executes(context -> {
+                            context.getSource().sendFailure(Component.literal("Usage: /mcmod autofullfill deadletter requeue <index>|all"));
+                            return 0;
+                        }))
+                    .executes(context -> {
+                        showDeadLetters(context.getSource());
+                        return 1;
+                    }))
                 .then(Commands.literal("message")
                     .then(Commands.literal("enable")
                         .executes(context -> {
@@ -869,37 +1196,181 @@ public class McMod {
                             disableInGameMessages();
                             context.getSource().sendSuccess(() -> Component.literal("In-game messages disabled"), false);
                             return 1;
+                        }))
+                    .then(Commands.literal("level")
+                        .then(Commands.argument("level", StringArgumentType.word())
+                            .executes(context -> {
+                                String levelArg = StringArgumentType.getString(context, "level");
+                                ServerPlayer player = context.getSource().getPlayer();
+                                if (player == null) {
+                                    context.getSource().sendFailure(Component.literal("Only players have a message level"));
+                                    return 0;
+                                }
+                                try {
+                                    MessagePipeline.Level level = MessagePipeline.Level.parse(levelArg);
+                                    messages.setLevel(player.getUUID(), level);
+                                    markGlobalStateDirty();
+                                    context.getSource().sendSuccess(() -> Component.literal("Message level set to " + level.name().toLowerCase()), false);
+                                    return 1;
+                                } catch (IllegalArgumentException e) {
+                                    context.getSource().sendFailure(Component.literal("Unknown message level: " + levelArg + " (use off, errors, summary or verbose)"));
+                                    return 0;
+                                }
+                            }))
+                        .executes(context -> {
+                            ServerPlayer player = context.getSource().getPlayer();
+                            if (player == null) {
+                                context.getSource().sendFailure(Component.literal("Only players have a message level"));
+                                return 0;
+                            }
+                            MessagePipeline.Level level = messages.getLevel(player.getUUID());
+                            context.getSource().sendSuccess(() -> Component.literal("Message level: " + level.name().toLowerCase()), false);
+                            return 1;
                         })))
                 .then(Commands.literal("all")
                     .executes(context -> {
                         fulfillAllRequestsNoFilter();
+                        flushMessages();
                         context.getSource().sendSuccess(() -> Component.literal("All requests fulfilled (no state filter)"), false);
                         return 1;
                     }))
                 .then(Commands.literal("custom")
-                    .then(Commands.argument("statuses", StringArgumentType.greedyString())
-                        .then(Commands.argument("resolvers", StringArgumentType.greedyString())
-                            .executes(context -> {
-                                String statusesArg = StringArgumentType.getString(context, "statuses");
-                                String resolversArg = StringArgumentType.getString(context, "resolvers");
-                                List<String> statuses = Arrays.asList(statusesArg.split(","));
-                                List<String> resolvers = Arrays.asList(resolversArg.split(","));
-                                fulfillRequestsByStatusAndResolver(statuses, resolvers);
-                                context.getSource().sendSuccess(() -> Component.literal("Custom autofulfill: statuses=" + statuses + ", resolvers=" + resolvers), false);
-                                return 1;
-                            })
-                        )
+                    .then(Commands.argument("filter", StringArgumentType.greedyString())
+                        .executes(context -> {
+                            RequestFilter filter;
+                            try {
+                                filter = parseCustomFilter(StringArgumentType.getString(context, "filter"));
+                            } catch (IllegalArgumentException e) {
+                                context.getSource().sendFailure(Component.literal("Invalid filter: " + e.getMessage()));
+                                return 0;
+                            }
+                            int fulfilled = fulfillRequestsMatching(filter);
+                            flushMessages();
+                            context.getSource().sendSuccess(() -> Component.literal("Custom autofulfill: fulfilled " + fulfilled + " requests matching " + filter), false);
+                            return 1;
+                        })
                     )
                 )
+                .then(Commands.literal("filter")
+                    .then(Commands.literal("reset")
+                        .executes(context -> {
+                            setAutofulfillFilter(RequestFilter.parse(RequestFilter.DEFAULT));
+                            context.getSource().sendSuccess(() -> Component.literal("Autofulfill filter reset to: " + autofulfillFilter), false);
+                            return 1;
+                        }))
+                    .then(Commands.literal("set")
+                        .then(Commands.argument("filter", StringArgumentType.greedyString())
+                            .executes(context -> {
+                                try {
+                                    setAutofulfillFilter(RequestFilter.parse(StringArgumentType.getString(context, "filter")));
+                                } catch (IllegalArgumentException e) {
+                                    context.getSource().sendFailure(Component.literal("Invalid filter: " + e.getMessage()));
+                                    return 0;
+                                }
+                                context.getSource().sendSuccess(() -> Component.literal("Autofulfill filter set to: " + autofulfillFilter), false);
+                                return 1;
+                            })))
+                    .executes(context -> {
+                        context.getSource().sendSuccess(() -> Component.literal("Autofulfill filter: " + autofulfillFilter), false);
+                        return 1;
+                    }))
                 .executes(context -> {
                     showAutofulfillStatus(context.getSource());
                     return 1;
                 }))
             .then(Commands.literal("stats")
+                .then(Commands.literal("breakdown")
+                    .then(Commands.argument("dimension", StringArgumentType.word())
+                        .executes(context -> {
+                            String dimensionArg = StringArgumentType.getString(context, "dimension");
+                            try {
+                                showStatsBreakdown(context.getSource(), AutofulfillMetrics.Dimension.parse(dimensionArg));
+                                return 1;
+                            } catch (IllegalArgumentException e) {
+                                context.getSource().sendFailure(Component.literal("Unknown breakdown: " + dimensionArg + " (use colony, building, resolver or item)"));
+                                return 0;
+                            }
+                        })))
                 .executes(context -> {
                     showStats(context.getSource());
                     return 1;
                 }))
+            .then(Commands.literal("audit")
+                .then(Commands.literal("colony")
+                    .then(Commands.argument("id", IntegerArgumentType.integer())
+                        .then(Commands.argument("minutes", IntegerArgumentType.integer(1, 10080))
+                            .executes(context -> {
+                                showAuditColony(context.getSource(), IntegerArgumentType.getInteger(context, "id"), IntegerArgumentType.getInteger(context, "minutes"));
+                                return 1;
+                            }))
+                        .executes(context -> {
+                            showAuditColony(context.getSource(), IntegerArgumentType.getInteger(context, "id"), 60);
+                            return 1;
+                        })))
+                .then(Commands.literal("recent")
+                    .then(Commands.argument("count", IntegerArgumentType.integer(1, 100))
+                        .executes(context -> {
+                            showAuditRecent(context.getSource(), IntegerArgumentType.getInteger(context, "count"));
+                            return 1;
+                        }))
+                    .executes(context -> {
+                        showAuditRecent(context.getSource(), 10);
+                        return 1;
+                    }))
+                .executes(context -> {
+                    AuditJournal journal = auditJournal;
+                    if (journal == null) {
+                        context.getSource().sendSuccess(() -> Component.literal("Audit journal: off"), false);
+                    } else {
+                        context.getSource().sendSuccess(() -> Component.literal("Audit journal: " + journal.getWritten() + " records written, "
+                            + journal.getPending() + " pending, " + journal.getDropped() + " dropped (" + journal.getDirectory() + ")"), false);
+                    }
+                    return 1;
+                }))
+            .then(Commands.literal("trace")
+                .then(Commands.literal("on")
+                    .then(Commands.argument("token", StringArgumentType.word())
+                        .executes(context -> {
+                            String tokenArg = StringArgumentType.getString(context, "token");
+                            try {
+                                int tokenHash = Integer.parseUnsignedInt(tokenArg, 16);
+                                RequestTrace.enable(tokenHash);
+                                context.getSource().sendSuccess(() -> Component.literal("Tracing request " + tokenArg), false);
+                                return 1;
+                            } catch (NumberFormatException e) {
+                                context.getSource().sendFailure(Component.literal("Not a token hash: " + tokenArg + " (use the hex value from /mcmod trace dump)"));
+                                return 0;
+                            }
+                        }))
+                    .executes(context -> {
+                        RequestTrace.enable();
+                        context.getSource().sendSuccess(() -> Component.literal("Tracing all requests"), false);
+                        return 1;
+                    }))
+                .then(Commands.literal("off")
+                    .executes(context -> {
+                        RequestTrace.disable();
+                        context.getSource().sendSuccess(() -> Component.literal("Request tracing off"), false);
+                        return 1;
+                    }))
+                .then(Commands.literal("dump")
+                    .then(Commands.argument("count", IntegerArgumentType.integer(1, 1000))
+                        .executes(context -> {
+                            showTrace(context.getSource(), IntegerArgumentType.getInteger(context, "count"));
+                            return 1;
+                        }))
+                    .executes(context -> {
+                        showTrace(context.getSource(), 50);
+                        return 1;
+                    }))
+                .executes(context -> {
+                    Integer filter = RequestTrace.getFilter();
+                    String scope = filter != null ? "request " + String.format("%08x", filter) : "all requests";
+                    context.getSource().sendSuccess(() -> Component.literal("Request tracing: " + (RequestTrace.isEnabled() ? "on (" + scope + ")" : "off")
+                        + ", " + RequestTrace.getRecorded() + " events recorded"), false);
+                    return 1;
+                }))
+            .then(McModCommand.requestsCommand())
             .then(Commands.literal("trigger")
                 .executes(context -> {
                     triggerAutofulfill();
@@ -908,12 +1379,21 @@ public class McMod {
                 }))
             .executes(context -> {
                 context.getSource().sendSuccess(() -> Component.literal("MC Mod Commands:\n" +
-                    "/mcmod autofullfill enable|disable - Enable/disable autofulfill\n" +
+                    "/mcmod autofullfill enable|disable - Enable/disable autofulfill until the config file changes or the server restarts\n" +
                     "/mcmod autofullfill delay <seconds> - Set check interval\n" +
+                    "/mcmod autofullfill budget <micros> - Set per-tick time budget\n" +
+                    "/mcmod autofullfill intake incremental|polling - Set how new requests are found\n" +
+                    "/mcmod autofullfill colonies - Per-colony queue depth and wait times\n" +
+                    "/mcmod autofullfill deadletter [requeue <index>|all] - List or retry requests that kept failing\n" +
                     "/mcmod autofullfill message enable|disable - Enable/disable messages\n" +
+                    "/mcmod autofullfill message level [off|errors|summary|verbose] - Show or set how much chat you get\n" +
                     "/mcmod autofullfill all - Fulfill all requests (no state filter)\n" +
-                    "/mcmod autofullfill custom <statuses> <resolvers> - Fulfill all requests matching any status and resolver\n" +
-                    "/mcmod stats - Show statistics\n" +
+                    "/mcmod autofullfill custom <filter> - Fulfill all requests matching a filter, e.g. state=IN_PROGRESS building=builder\n" +
+                    "/mcmod autofullfill filter [set <filter>|reset] - Show or change which requests the cycles fulfill\n" +
+                    "/mcmod stats [breakdown colony|building|resolver|item] - Show statistics\n" +
+                    "/mcmod audit [colony <id> [minutes]|recent [count]] - What autofulfill handed out\n" +
+                    "/mcmod trace on [token]|off|dump [count] - Record and show a per-request event trail\n" +
+                    "/mcmod requests [page] - Open requests grouped by requester\n" +
                     "/mcmod trigger - Trigger autofulfill manually"), false);
                 return 1;
             }));
@@ -921,132 +1401,121 @@ public class McMod {
 
     // Remove @SubscribeEvent from onServerStarted, and register via event bus instead
     public static void onServerStarted(ServerStartedEvent event) {
-        LOGGER.info("[mc_mod] ServerStartedEvent received, waiting for game to be fully stable...");
+        LOGGER.info("[mc_mod] ServerStartedEvent received, waiting for MineColonies to become ready...");
         
-        // Set startup time and disable mod initially
-        modStartTime = System.currentTimeMillis();
-        modFullyEnabled = false;
+        INSTANCE.openAuditJournal(event.getServer());
+        INSTANCE.openStateStore(event.getServer());
         
-        // Wait much longer for the game to be fully stable and MineColonies to complete all initialization
-        executor.schedule(() -> {
-            try {
-                LOGGER.info("[mc_mod] Starting MineColonies readiness check...");
-                
-                // Check if MineColonies is ready
-                Class<?> apiClass = Class.forName("com.minecolonies.api.IMinecoloniesAPI");
-                Object apiInstance = apiClass.getMethod("getInstance").invoke(null);
-                
-                if (apiInstance == null) {
-                    LOGGER.warn("[mc_mod] MineColonies API not ready yet, retrying in 30 seconds...");
-                    executor.schedule(() -> onServerStarted(event), 30, TimeUnit.SECONDS);
-                return;
-            }
-            
-                // Check if colony manager is available
-                Object colonyManager = apiInstance.getClass().getMethod("getColonyManager").invoke(apiInstance);
-                if (colonyManager == null) {
-                    LOGGER.warn("[mc_mod] MineColonies ColonyManager not ready yet, retrying in 30 seconds...");
-                    executor.schedule(() -> onServerStarted(event), 30, TimeUnit.SECONDS);
-                return;
-            }
-            
-                // Additional check: try to get colonies to ensure everything is fully loaded
-                try {
-                    Object colonies = colonyManager.getClass().getMethod("getAllColonies").invoke(colonyManager);
-                    if (colonies == null) {
-                        LOGGER.warn("[mc_mod] MineColonies colonies not ready yet, retrying in 30 seconds...");
-                        executor.schedule(() -> onServerStarted(event), 30, TimeUnit.SECONDS);
-                        return;
-                    }
-                } catch (Exception e) {
-                    LOGGER.warn("[mc_mod] MineColonies colonies not ready yet, retrying in 30 seconds... Error: {}", e.getMessage());
-                    executor.schedule(() -> onServerStarted(event), 30, TimeUnit.SECONDS);
-                    return;
-                }
-                
-                LOGGER.info("[mc_mod] MineColonies is fully ready, starting auto-fulfill poller");
-                sendServerMessage("Autofulfill system started", "INFO");
-                
-                // Enable the mod
-                modFullyEnabled = true;
-                
-                // Start the autofulfill poller with a much longer initial delay
-                autofulfillTask = executor.scheduleAtFixedRate(() -> {
-                    try {
-                        INSTANCE.autoFulfillBuilderRequests();
-                    } catch (Exception e) {
-                        LOGGER.error("[mc_mod] Error in autofulfill cycle: {}", e.getMessage());
-                    }
-                }, 0, autofulfillCheckTimeSeconds, TimeUnit.SECONDS); // No initial delay, then configurable interval
-                
-            } catch (Exception e) {
-                LOGGER.error("[mc_mod] Error checking MineColonies readiness: {}", e.getMessage());
-                // Retry after 60 seconds if there's an error
-                executor.schedule(() -> onServerStarted(event), 60, TimeUnit.SECONDS);
-            }
-        }, 30, TimeUnit.SECONDS); // Wait 30 seconds before first check
+        // STARTING until MineColonies answers; probed on every server tick from here on
+        INSTANCE.readiness.start();
     }
-
-    // Replace log() to use debug for routine messages
-    private static void log(String msg) {
-        LOGGER.debug(msg);
+    
+    /**
+     * Called on the server thread once the MineColonies API answers. Colonies are still served one
+     * by one, as each becomes ready.
+     */
+    private void onMineColoniesReady() {
+        LOGGER.info("[mc_mod] MineColonies is ready after {} ms, starting auto-fulfill scheduler", readiness.getApiReadyMillis());
+        sendServerMessage("Autofulfill system started", "INFO");
+        
+        // Enable the mod
+        lifecycle.ready();
+        
+        // Cycles run on the server tick from here on; the first one on the next tick
+        tickScheduler.start();
     }
 
-    private boolean isGameFullyStable() {
+    public static void onServerStopping(ServerStoppingEvent event) {
+        LOGGER.info("[mc_mod] ServerStoppingEvent received, stopping autofulfill scheduler");
+        lifecycle.stopping();
+        INSTANCE.readiness.stop();
+        INSTANCE.tickScheduler.stop();
+        INSTANCE.tickScheduler.getFairness().clear();
+        // Plans hold colony objects, don't keep them past the server's lifetime
+        INSTANCE.planCache.clear();
+        INSTANCE.requesterIndex.clear();
+        ItemNames.clear();
+        INSTANCE.closeStateStore();
+        INSTANCE.retryTracker.clear();
+        INSTANCE.deliveryProgress.clear();
+        messages.clear();
+        // The totals were saved with the world, the next one starts from its own
+        metrics.reset();
+        INSTANCE.closeAuditJournal();
+    }
+    
+    /**
+     * Open the world's saved state and apply the server-wide part. Colonies are restored lazily,
+     * the first time each is processed.
+     */
+    private void openStateStore(MinecraftServer server) {
+        if (stateStore != null) {
+            return;
+        }
         try {
-            // Check if enough time has passed since server start
-            long currentTime = System.currentTimeMillis();
-            long timeSinceStart = currentTime - modStartTime;
-            if (timeSinceStart < 60000) { // 60 seconds
-                LOGGER.debug("[mc_mod] Not enough time passed since server start: {} ms", timeSinceStart);
-                return false;
-            }
-            
-            // Check if MineColonies API is available and stable
-            Class<?> apiClass = Class.forName("com.minecolonies.api.IMinecoloniesAPI");
-            Object apiInstance = apiClass.getMethod("getInstance").invoke(null);
-            
-            if (apiInstance == null) {
-                return false;
-            }
-            
-            // Check if colony manager is available
-            Object colonyManager = apiInstance.getClass().getMethod("getColonyManager").invoke(apiInstance);
-            if (colonyManager == null) {
-                return false;
-            }
-            
-            // Check if colonies are loaded and stable
-            Object colonies = colonyManager.getClass().getMethod("getAllColonies").invoke(colonyManager);
-            if (colonies == null) {
-                return false;
-            }
-            
-            // Simple check: if we can access colonies without error, the system is stable
-            Collection<?> colonyCollection = (Collection<?>) colonies;
-            
-            // Additional safety: check if we can access a basic colony method without error
-            if (!colonyCollection.isEmpty()) {
-                Object firstColony = colonyCollection.iterator().next();
-                // Try to access a basic method to ensure colony is fully loaded
-                try {
-                    Object colonyId = firstColony.getClass().getMethod("getID").invoke(firstColony);
-                    if (colonyId == null) {
-                        return false;
-                    }
-                } catch (Exception e) {
-                    // If we can't access basic colony data, it might not be fully loaded
-                    return false;
+            java.nio.file.Path directory = server.getWorldPath(LevelResource.ROOT).resolve("mc_mod").resolve("state");
+            ColonyStateStore store = new ColonyStateStore(directory, executor, RequestTraversal::assignedTokens, retryTracker, deliveryProgress, metrics);
+            ColonyStateStore.GlobalState global = store.readGlobal();
+            if (global != null) {
+                global.messageLevels().forEach(messages::setLevel);
+                for (AutofulfillMetrics.Outcome outcome : AutofulfillMetrics.Outcome.values()) {
+                    metrics.restoreTotal(outcome, global.totals().getOrDefault(outcome.name(), 0L));
                 }
+                LOGGER.info("[mc_mod] Restored autofulfill state from {}", directory);
             }
-            
-            return true;
+            stateStore = store;
+            lastStateSaveNanos = System.nanoTime();
         } catch (Exception e) {
-            LOGGER.debug("[mc_mod] Game stability check failed: {}", e.getMessage());
-            return false;
+            LOGGER.error("[mc_mod] Could not open autofulfill state: {}", e.getMessage(), e);
+        }
+    }
+    
+    private void closeStateStore() {
+        saveState(true);
+        stateStore = null;
+    }
+    
+    private void openAuditJournal(MinecraftServer server) {
+        McModConfig current = config;
+        if (!current.auditEnabled() || auditJournal != null) {
+            return;
+        }
+        try {
+            java.nio.file.Path directory = server.getWorldPath(LevelResource.ROOT).resolve("mc_mod").resolve("audit");
+            auditJournal = new AuditJournal(directory, current.auditSegmentMegabytes(), current.auditMaxSegments());
+            LOGGER.info("[mc_mod] Audit journal at {}", directory);
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Could not open audit journal: {}", e.getMessage(), e);
+        }
+    }
+    
+    private void closeAuditJournal() {
+        AuditJournal journal = auditJournal;
+        auditJournal = null;
+        if (journal != null) {
+            journal.close();
+            LOGGER.info("[mc_mod] Audit journal closed, {} records written, {} dropped", journal.getWritten(), journal.getDropped());
         }
     }
 
+    // Replace log() to use debug for routine messages. Pass values as parameters rather than
+    // concatenating them, so nothing is formatted unless debug logging is on.
+    private static void log(String msg) {
+        LOGGER.debug(msg);
+    }
+    
+    private static void log(String format, Object arg) {
+        LOGGER.debug(format, arg);
+    }
+    
+    private static void log(String msg, Throwable t) {
+        LOGGER.debug(msg, t);
+    }
+    
+    private static void log(String format, Object arg1, Object arg2) {
+        LOGGER.debug(format, arg1, arg2);
+    }
+
     // Command methods
     private void enableAutofulfill() {
         autofulfillEnabled = true;
@@ -1060,227 +1529,357 @@ public class McMod {
         LOGGER.info("[mc_mod] Autofulfill disabled via command");
     }
     
-    private void setAutofulfillDelay(int seconds) {
-        autofulfillCheckTimeSeconds = seconds;
-        LOGGER.info("[mc_mod] Autofulfill delay set to " + seconds + " seconds via command");
-        
-        // Restart the scheduled task with the new delay
-        restartAutofulfillTask();
+    private void markAllStateDirty() {
+        ColonyStateStore store = stateStore;
+        if (store != null) {
+            store.markAllDirty();
+        }
     }
     
-    private void restartAutofulfillTask() {
-        if (autofulfillTask != null) {
-            autofulfillTask.cancel(false);
+    private void markGlobalStateDirty() {
+        ColonyStateStore store = stateStore;
+        if (store != null) {
+            store.markGlobalDirty();
         }
+    }
+    
+    private void setAutofulfillDelay(int seconds) {
+        config = config.withCheckTimeSeconds(seconds);
+        LOGGER.info("[mc_mod] Autofulfill delay set to {} seconds via command", seconds);
         
-        if (autofulfillEnabled && modFullyEnabled) {
-            autofulfillTask = executor.scheduleAtFixedRate(() -> {
-                try {
-                    INSTANCE.autoFulfillBuilderRequests();
-                    } catch (Exception e) {
-                    LOGGER.error("[mc_mod] Error in autofulfill cycle: {}", e.getMessage());
-                }
-            }, 0, autofulfillCheckTimeSeconds, TimeUnit.SECONDS);
-            LOGGER.info("[mc_mod] Autofulfill task restarted with {} second interval", autofulfillCheckTimeSeconds);
+        // Takes effect for the next cycle and adapts from there, within min/maxCheckTimeSeconds
+        tickScheduler.setIntervalSeconds(seconds);
+    }
+    
+    private void setAutofulfillFilter(RequestFilter filter) {
+        autofulfillFilter = filter;
+        config = config.withFilter(filter.getText());
+        // Cached plans are checked against the filter on reuse, but new requests may now qualify
+        tickScheduler.requestCycle();
+        LOGGER.info("[mc_mod] Autofulfill filter set to '{}' via command", filter);
+    }
+    
+    /**
+     * Filter text from the custom command. The older "statuses resolvers" form, two comma-separated
+     * lists, is still understood.
+     */
+    private static RequestFilter parseCustomFilter(String text) {
+        String trimmed = text.trim();
+        if (!trimmed.contains("=")) {
+            String[] lists = trimmed.split("\\s+");
+            if (lists.length != 2) {
+                throw new IllegalArgumentException("expected key=value clauses, or <statuses> <resolvers>");
+            }
+            return RequestFilter.parse("state=" + lists[0] + " resolver=" + lists[1]);
         }
+        return RequestFilter.parse(trimmed);
+    }
+    
+    private void setIntakeMode(RequestIntake.Mode mode) {
+        config = config.withIntakeMode(mode);
+        tickScheduler.setIntakeMode(mode);
+        LOGGER.info("[mc_mod] Request intake mode set to {} via command", mode);
+    }
+    
+    private void setAutofulfillBudget(int micros) {
+        config = config.withTickBudgetMicros(micros);
+        tickScheduler.setBudgetMicros(micros);
+        LOGGER.info("[mc_mod] Autofulfill tick budget set to {} microseconds via command", micros);
     }
     
     private void enableInGameMessages() {
-        showInGameMessages = true;
+        config = config.withShowInGameMessages(true);
         LOGGER.info("[mc_mod] In-game messages enabled via command");
     }
     
     private void disableInGameMessages() {
-        showInGameMessages = false;
+        config = config.withShowInGameMessages(false);
         LOGGER.info("[mc_mod] In-game messages disabled via command");
     }
     
     private void showAutofulfillStatus(net.minecraft.commands.CommandSourceStack context) {
+        McModConfig current = config;
         context.sendSuccess(() -> Component.literal("Autofulfill Status:"), false);
         context.sendSuccess(() -> Component.literal("Enabled: " + (autofulfillEnabled ? "Yes" : "No")), false);
-        context.sendSuccess(() -> Component.literal("Check Interval: " + autofulfillCheckTimeSeconds + " seconds"), false);
-        context.sendSuccess(() -> Component.literal("In-game Messages: " + (showInGameMessages ? "Yes" : "No")), false);
+        context.sendSuccess(() -> Component.literal(String.format("Check Interval: %.1f seconds now, adapting within %d-%d (starts at %d)",
+            tickScheduler.getIntervalSeconds(), tickScheduler.getMinIntervalSeconds(), tickScheduler.getMaxIntervalSeconds(), current.checkTimeSeconds())), false);
+        if (tickScheduler.getMsptThresholdMillis() > 0) {
+            context.sendSuccess(() -> Component.literal(String.format("Server Tick: %.1f ms average, backing off above %d ms%s",
+                tickScheduler.getAverageTickMillis(), tickScheduler.getMsptThresholdMillis(), tickScheduler.isOverloaded() ? " (backing off now)" : "")), false);
+        }
+        context.sendSuccess(() -> Component.literal("Tick Budget: " + current.tickBudgetMicros() + " microseconds"), false);
+        context.sendSuccess(() -> Component.literal("Intake Mode: " + current.intakeMode().name().toLowerCase()), false);
+        context.sendSuccess(() -> Component.literal("Cycle In Progress: " + (tickScheduler.isCycleInProgress() ? "Yes" : "No")), false);
+        context.sendSuccess(() -> Component.literal("State: " + describeReadiness()), false);
+        context.sendSuccess(() -> Component.literal("Plan Cache: " + planCache.size() + " entries, " + planCache.getHits() + " hits, " + planCache.getMisses() + " misses"), false);
+        context.sendSuccess(() -> Component.literal("Backing Off: " + retryTracker.getRetryingCount() + ", Dead-lettered: " + retryTracker.getDeadLetterCount()), false);
+        context.sendSuccess(() -> Component.literal("Partially Delivered: " + deliveryProgress.size()), false);
+        ColonyStateStore store = stateStore;
+        if (store != null) {
+            context.sendSuccess(() -> Component.literal("Saved State: " + store.getLoadedCount() + " colonies restored, " + store.getDirtyCount() + " waiting to be saved"), false);
+        }
+        context.sendSuccess(() -> Component.literal("In-game Messages: " + (current.showInGameMessages() ? "Yes" : "No") + ", " + messages.getSuppressed() + " held back by rate limit"), false);
+    }
+    
+    private String describeReadiness() {
+        switch (lifecycle.get()) {
+            case STARTING:
+                return "starting, waiting for MineColonies";
+            case STOPPING:
+                return "stopping";
+            case DEGRADED:
+                return "degraded, " + lifecycle.getReason();
+            default:
+                long slowest = readiness.getSlowestColonyMillis();
+                return "ready, MineColonies after " + readiness.getApiReadyMillis() + " ms, " + readiness.getReadyColonyCount() + " colonies ready"
+                    + (slowest >= 0 ? " (last after " + slowest + " ms)" : "")
+                    + (readiness.getWaitingColonyCount() > 0 ? ", " + readiness.getWaitingColonyCount() + " waiting" : "");
+        }
+    }
+    
+    private void showDeadLetters(net.minecraft.commands.CommandSourceStack context) {
+        List<RetryTracker.DeadLetter> deadLetters = retryTracker.getDeadLetters();
+        if (deadLetters.isEmpty()) {
+            context.sendSuccess(() -> Component.literal("No dead-lettered requests"), false);
+            return;
+        }
+        context.sendSuccess(() -> Component.literal("Dead-lettered requests (" + deadLetters.size() + "):"), false);
+        long now = System.currentTimeMillis();
+        int shown = Math.min(deadLetters.size(), MAX_LISTED_DEAD_LETTERS);
+        for (int i = 0; i < shown; i++) {
+            RetryTracker.DeadLetter deadLetter = deadLetters.get(i);
+            String line = (i + 1) + ". " + deadLetter.description() + " - " + deadLetter.attempts() + " attempts, "
+                + (now - deadLetter.deadLetteredAtMillis()) / 1000 + "s ago";
+            context.sendSuccess(() -> Component.literal(line), false);
+        }
+        if (shown < deadLetters.size()) {
+            int more = deadLetters.size() - shown;
+            context.sendSuccess(() -> Component.literal("... and " + more + " more"), false);
+        }
+        context.sendSuccess(() -> Component.literal("Use /mcmod autofullfill deadletter requeue <index>|all to retry"), false);
+    }
+    
+    private RetryTracker.DeadLetter requeueDeadLetter(int index) {
+        RetryTracker.DeadLetter deadLetter = retryTracker.requeue(index);
+        if (deadLetter != null) {
+            planCache.invalidate(deadLetter.token());
+            markAllStateDirty();
+            LOGGER.info("[mc_mod] Requeued dead-lettered request via command: {}", deadLetter.description());
+            tickScheduler.requestCycle();
+        }
+        return deadLetter;
+    }
+    
+    private int requeueAllDeadLetters() {
+        int count = retryTracker.requeueAll();
+        if (count > 0) {
+            planCache.clear();
+            markAllStateDirty();
+            LOGGER.info("[mc_mod] Requeued {} dead-lettered requests via command", count);
+            tickScheduler.requestCycle();
+        }
+        return count;
     }
     
     private void showStats(net.minecraft.commands.CommandSourceStack context) {
-        if (totalRequestsProcessed > 0) {
-            double successRate = (double) successfulFulfillments / totalRequestsProcessed * 100;
-            context.sendSuccess(() -> Component.literal("Autofulfill Statistics:"), false);
-            context.sendSuccess(() -> Component.literal("Processed: " + totalRequestsProcessed), false);
-            context.sendSuccess(() -> Component.literal("Successful: " + successfulFulfillments + " (" + String.format("%.1f", successRate) + "%)"), false);
-            context.sendSuccess(() -> Component.literal("Failed: " + failedFulfillments), false);
-            context.sendSuccess(() -> Component.literal("Skipped: " + skippedRequests), false);
-        } else {
+        if (metrics.getTotal(AutofulfillMetrics.Outcome.PROCESSED) == 0) {
             context.sendSuccess(() -> Component.literal("No autofulfill statistics available yet"), false);
+            return;
+        }
+        context.sendSuccess(() -> Component.literal("Autofulfill Statistics:"), false);
+        for (AutofulfillMetrics.Window window : AutofulfillMetrics.Window.values()) {
+            AutofulfillMetrics.Snapshot snapshot = metrics.snapshot(window);
+            String line = String.format("[%s] %d processed, %d successful (%.1f%%), %d failed, %d skipped", window.getLabel(),
+                snapshot.get(AutofulfillMetrics.Outcome.PROCESSED), snapshot.get(AutofulfillMetrics.Outcome.SUCCESS), successRate(snapshot),
+                snapshot.get(AutofulfillMetrics.Outcome.FAILED), snapshot.get(AutofulfillMetrics.Outcome.SKIPPED));
+            context.sendSuccess(() -> Component.literal(line), false);
+        }
+        
+        // Latency percentiles over the last 5 minutes
+        AutofulfillMetrics.Snapshot recent = metrics.snapshot(AutofulfillMetrics.Window.FIVE_MINUTES);
+        for (AutofulfillMetrics.Timer timer : AutofulfillMetrics.Timer.values()) {
+            if (recent.getCount(timer) == 0) continue;
+            String line = timer.getLabel() + " (5m, n=" + recent.getCount(timer) + "): p50 " + formatMicros(recent.getPercentileMicros(timer, 50))
+                + ", p90 " + formatMicros(recent.getPercentileMicros(timer, 90))
+                + ", p99 " + formatMicros(recent.getPercentileMicros(timer, 99))
+                + ", max " + formatMicros(recent.getMaxMicros(timer));
+            context.sendSuccess(() -> Component.literal(line), false);
         }
+        context.sendSuccess(() -> Component.literal("Use /mcmod stats breakdown colony|building|resolver|item for details"), false);
     }
     
-    private void triggerAutofulfill() {
-        LOGGER.info("[mc_mod] Autofulfill triggered manually via command");
-        MinecraftServer server = ServerLifecycleHooks.getCurrentServer();
-        if (server != null) {
-            server.execute(() -> {
-                autoFulfillBuilderRequests();
-            });
+    /**
+     * Each colony's share of the commit work: weight, what it still has queued in the current
+     * cycle and the intake, and how long its requests waited before being handed out.
+     */
+    private void showColonyFairness(net.minecraft.commands.CommandSourceStack context) {
+        List<ColonyFairness.ColonyStats> stats = tickScheduler.getFairness().getStats();
+        Map<Integer, Integer> intake = tickScheduler.getPendingIntakeByColony();
+        if (stats.isEmpty() && intake.isEmpty()) {
+            context.sendSuccess(() -> Component.literal("No colony has been served yet"), false);
+            return;
         }
-    }
-
-    // Fulfill all requests in all colonies, no state filter
-    private void fulfillAllRequestsNoFilter() {
-        try {
-            Class<?> apiClass = Class.forName("com.minecolonies.api.IMinecoloniesAPI");
-            Object apiInstance = apiClass.getMethod("getInstance").invoke(null);
-            if (apiInstance == null) {
-                LOGGER.warn("[mc_mod] MineColonies API not available");
-                return;
-            }
-            Object colonyManager = apiInstance.getClass().getMethod("getColonyManager").invoke(apiInstance);
-            if (colonyManager == null) {
-                LOGGER.warn("[mc_mod] Colony manager not available");
-                return;
+        context.sendSuccess(() -> Component.literal("Autofulfill by colony (weight, queued, served, wait p50/p90/max):"), false);
+        for (ColonyFairness.ColonyStats colony : stats) {
+            int pendingIntake = intake.getOrDefault(colony.colonyId(), 0);
+            String last = colony.lastServedMillisAgo() < 0 ? "never" : formatMicros(colony.lastServedMillisAgo() * 1000) + " ago";
+            context.sendSuccess(() -> Component.literal("Colony " + colony.colonyId() + ": weight " + colony.weight()
+                + ", " + colony.queued() + " queued" + (pendingIntake > 0 ? " + " + pendingIntake + " new" : "")
+                + ", " + colony.served() + " served, wait " + formatMicros(colony.waitMedianMicros()) + "/"
+                + formatMicros(colony.waitP90Micros()) + "/" + formatMicros(colony.waitMaxMicros()) + ", last served " + last), false);
+        }
+        for (Map.Entry<Integer, Integer> entry : intake.entrySet()) {
+            if (stats.stream().noneMatch(colony -> colony.colonyId() == entry.getKey())) {
+                context.sendSuccess(() -> Component.literal("Colony " + entry.getKey() + ": " + entry.getValue() + " new"), false);
             }
-            Object colonies = colonyManager.getClass().getMethod("getAllColonies").invoke(colonyManager);
-            if (colonies == null) {
-                LOGGER.warn("[mc_mod] No colonies available");
+        }
+    }
+    
+    private void showStatsBreakdown(net.minecraft.commands.CommandSourceStack context, AutofulfillMetrics.Dimension dimension) {
+        List<AutofulfillMetrics.BreakdownEntry> entries = metrics.getTopBreakdown(dimension, 10);
+        if (entries.isEmpty()) {
+            context.sendSuccess(() -> Component.literal("No autofulfill statistics available yet"), false);
+            return;
+        }
+        context.sendSuccess(() -> Component.literal("Autofulfill by " + dimension.name().toLowerCase() + " (successful/failed):"), false);
+        for (AutofulfillMetrics.BreakdownEntry entry : entries) {
+            context.sendSuccess(() -> Component.literal(entry.key() + ": " + entry.successes() + "/" + entry.failures()), false);
+        }
+    }
+    
+    /**
+     * What a colony received in the last {@code minutes}, from the audit journal. The journal is read
+     * on its own thread; the reply is sent from the server thread.
+     */
+    private void showAuditColony(net.minecraft.commands.CommandSourceStack context, int colonyId, int minutes) {
+        AuditJournal journal = auditJournal;
+        if (journal == null) {
+            context.sendFailure(Component.literal("Audit journal is not open"));
+            return;
+        }
+        MinecraftServer server = context.getServer();
+        long since = System.currentTimeMillis() - minutes * 60_000L;
+        journal.query(since, entry -> entry.colonyId() == colonyId).whenComplete((entries, error) -> server.execute(() -> {
+            if (error != null) {
+                context.sendFailure(Component.literal("Could not read audit journal: " + error.getMessage()));
                 return;
             }
-            Collection<?> colonyCollection = (Collection<?>) colonies;
-            int fulfilled = 0;
-            for (Object colony : colonyCollection) {
-                Object requestManager = colony.getClass().getMethod("getRequestManager").invoke(colony);
-                if (requestManager == null) continue;
-                // Get resolvers
-                Object playerResolver = requestManager.getClass().getMethod("getPlayerResolver").invoke(requestManager);
-                Object retryingResolver = requestManager.getClass().getMethod("getRetryingRequestResolver").invoke(requestManager);
-                // Get all assigned tokens
-                Collection<?> playerTokens = (Collection<?>) playerResolver.getClass().getMethod("getAllAssignedRequests").invoke(playerResolver);
-                Collection<?> retryingTokens = (Collection<?>) retryingResolver.getClass().getMethod("getAllAssignedRequests").invoke(retryingResolver);
-                Set<Object> allTokens = new HashSet<>();
-                if (playerTokens != null) allTokens.addAll(playerTokens);
-                if (retryingTokens != null) allTokens.addAll(retryingTokens);
-                Class<?> iTokenClass = Class.forName("com.minecolonies.api.colony.requestsystem.token.IToken");
-                for (Object token : allTokens) {
-                    Object request = requestManager.getClass().getMethod("getRequestForToken", iTokenClass).invoke(requestManager, token);
-                    if (request == null) continue;
-                    try {
-                        // Get the building/requester
-                        Object requester = request.getClass().getMethod("getRequester").invoke(request);
-                        Object building = getBuildingOfficial(requester, colony, request);
-                        if (building == null) continue;
-                        Object requestable = request.getClass().getMethod("getRequest").invoke(request);
-                        // --- Begin: Logging block ---
-                        // Get state
-                        Object state = request.getClass().getMethod("getState").invoke(request);
-                        String stateName = state.toString();
-                        // Get citizen
-                        Object citizen = getCitizenForRequest(building, request);
-                        String citizenName = "Unknown";
-                        if (citizen != null) {
-                            try {
-                                citizenName = (String) citizen.getClass().getMethod("getName").invoke(citizen);
-                            } catch (Exception e) {
-                                log("[mc_mod] Could not get citizen name: " + e.getMessage());
-                            }
-                        }
-                        // Get resolver
-                        Object requestId = request.getClass().getMethod("getId").invoke(request);
-                        Object resolver = requestManager.getClass().getMethod("getResolverForRequest", iTokenClass).invoke(requestManager, requestId);
-                        String resolverName = resolver != null ? resolver.getClass().getSimpleName() : "Unknown";
-                        // Get item info
-                        List<Object> displayStacks = getDisplayStacks(request);
-                        String itemName = "Unknown Item";
-                        int finalCount = 1;
-                        if (displayStacks != null && !displayStacks.isEmpty()) {
-                            try {
-                                Object itemStack = displayStacks.get(0);
-                                Object stackCopy = itemStack.getClass().getMethod("copy").invoke(itemStack);
-                                int count = getRequestCount(requestable);
-                                int maxStackSize = (int) stackCopy.getClass().getMethod("getMaxStackSize").invoke(stackCopy);
-                                finalCount = Math.min(count, maxStackSize);
-                                Object item = stackCopy.getClass().getMethod("getItem").invoke(stackCopy);
-                                itemName = item.getClass().getMethod("getDescriptionId").invoke(item).toString();
-                                if (itemName.startsWith("item.")) itemName = itemName.substring(5);
-                                if (itemName.startsWith("block.")) itemName = itemName.substring(6);
-                                itemName = itemName.replace("minecraft.", "").replace("minecolonies.", "");
-                            } catch (Exception e) {
-                                log("[mc_mod] Could not get item name: " + e.getMessage());
-                            }
-                        }
-                        String buildingName = building.getClass().getSimpleName().replace("Building", "");
-                        log("[✓] Fulfilled " + finalCount + "x " + itemName + " for " + buildingName + " (state: " + stateName + ", citizen: " + citizenName + ", resolver: " + resolverName + ")");
-                        // --- End: Logging block ---
-                        // Fulfill without state filter
-                        // fulfillRequestWithCreativeResolve(request, colony, building, requestable, "ANY", "ANY");
-                        fulfillRequestWithCreativeResolve(request, colony, building, requestable, stateName, resolverName);
-                        fulfilled++;
-                    } catch (Exception e) {
-                        LOGGER.error("[mc_mod] Error fulfilling request (no filter): {}", e.getMessage());
+            Map<String, Integer> received = new HashMap<>();
+            int resolved = 0;
+            int failed = 0;
+            for (AuditJournal.Entry entry : entries) {
+                switch (entry.outcome()) {
+                    case RESOLVED, PARTIAL -> {
+                        received.merge(entry.itemId(), entry.count(), Integer::sum);
+                        if (entry.outcome() == AuditJournal.Outcome.RESOLVED) resolved++;
                     }
+                    case FAILED, DEAD_LETTERED -> failed++;
                 }
             }
-            LOGGER.info("[mc_mod] fulfillAllRequestsNoFilter: Fulfilled {} requests", fulfilled);
-        } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error in fulfillAllRequestsNoFilter: {}", e.getMessage(), e);
-        }
+            int resolvedCount = resolved;
+            int failedCount = failed;
+            context.sendSuccess(() -> Component.literal("Colony " + colonyId + " in the last " + minutes + " minutes: "
+                + resolvedCount + " requests resolved, " + failedCount + " failures"), false);
+            List<Map.Entry<String, Integer>> items = new ArrayList<>(received.entrySet());
+            items.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+            for (int i = 0; i < Math.min(items.size(), 20); i++) {
+                Map.Entry<String, Integer> item = items.get(i);
+                context.sendSuccess(() -> Component.literal("  " + item.getValue() + "x " + item.getKey()), false);
+            }
+            if (items.size() > 20) {
+                context.sendSuccess(() -> Component.literal("  ... and " + (items.size() - 20) + " more items"), false);
+            }
+        }));
     }
-
-    // Fulfill all requests matching any status and resolver
-    private void fulfillRequestsByStatusAndResolver(List<String> statuses, List<String> resolvers) {
-        try {
-            Class<?> apiClass = Class.forName("com.minecolonies.api.IMinecoloniesAPI");
-            Object apiInstance = apiClass.getMethod("getInstance").invoke(null);
-            if (apiInstance == null) {
-                LOGGER.warn("[mc_mod] MineColonies API not available");
+    
+    /**
+     * The last {@code count} journal records of the past hour.
+     */
+    private void showAuditRecent(net.minecraft.commands.CommandSourceStack context, int count) {
+        AuditJournal journal = auditJournal;
+        if (journal == null) {
+            context.sendFailure(Component.literal("Audit journal is not open"));
+            return;
+        }
+        MinecraftServer server = context.getServer();
+        journal.query(System.currentTimeMillis() - 3_600_000L, entry -> true).whenComplete((entries, error) -> server.execute(() -> {
+            if (error != null) {
+                context.sendFailure(Component.literal("Could not read audit journal: " + error.getMessage()));
                 return;
             }
-            Object colonyManager = apiInstance.getClass().getMethod("getColonyManager").invoke(apiInstance);
-            if (colonyManager == null) {
-                LOGGER.warn("[mc_mod] Colony manager not available");
+            if (entries.isEmpty()) {
+                context.sendSuccess(() -> Component.literal("No autofulfill actions in the last hour"), false);
                 return;
             }
-            Object colonies = colonyManager.getClass().getMethod("getAllColonies").invoke(colonyManager);
-            if (colonies == null) {
-                LOGGER.warn("[mc_mod] No colonies available");
-                return;
+            java.time.format.DateTimeFormatter time = java.time.format.DateTimeFormatter.ofPattern("HH:mm:ss").withZone(java.time.ZoneId.systemDefault());
+            for (AuditJournal.Entry entry : entries.subList(Math.max(0, entries.size() - count), entries.size())) {
+                String line = time.format(java.time.Instant.ofEpochMilli(entry.timestampMillis())) + " colony " + entry.colonyId() + " "
+                    + entry.outcome().name().toLowerCase() + " " + entry.count() + "x " + entry.itemId() + " -> " + entry.citizen()
+                    + " (" + entry.resolver() + ")";
+                context.sendSuccess(() -> Component.literal(line), false);
             }
-            Collection<?> colonyCollection = (Collection<?>) colonies;
-            int fulfilled = 0;
-            for (Object colony : colonyCollection) {
-                Object requestManager = colony.getClass().getMethod("getRequestManager").invoke(colony);
-                if (requestManager == null) continue;
-                Object playerResolver = requestManager.getClass().getMethod("getPlayerResolver").invoke(requestManager);
-                Object retryingResolver = requestManager.getClass().getMethod("getRetryingRequestResolver").invoke(requestManager);
-                Collection<?> playerTokens = (Collection<?>) playerResolver.getClass().getMethod("getAllAssignedRequests").invoke(playerResolver);
-                Collection<?> retryingTokens = (Collection<?>) retryingResolver.getClass().getMethod("getAllAssignedRequests").invoke(retryingResolver);
-                Set<Object> allTokens = new HashSet<>();
-                if (playerTokens != null) allTokens.addAll(playerTokens);
-                if (retryingTokens != null) allTokens.addAll(retryingTokens);
-                Class<?> iTokenClass = Class.forName("com.minecolonies.api.colony.requestsystem.token.IToken");
-                for (Object token : allTokens) {
-                    Object request = requestManager.getClass().getMethod("getRequestForToken", iTokenClass).invoke(requestManager, token);
-                    if (request == null) continue;
-                    try {
-                        Object state = request.getClass().getMethod("getState").invoke(request);
-                        String stateName = state.toString();
-                        Object requester = request.getClass().getMethod("getRequester").invoke(request);
-                        Object building = getBuildingOfficial(requester, colony, request);
-                        if (building == null) continue;
-                        Object requestable = request.getClass().getMethod("getRequest").invoke(request);
-                        Object requestId = request.getClass().getMethod("getId").invoke(request);
-                        Object resolver = requestManager.getClass().getMethod("getResolverForRequest", iTokenClass).invoke(requestManager, requestId);
-                        String resolverName = resolver != null ? resolver.getClass().getSimpleName() : "Unknown";
-                        if (statuses.contains(stateName) && resolvers.contains(resolverName)) {
-                            fulfillRequestWithCreativeResolve(request, colony, building, requestable, stateName, resolverName);
-                            fulfilled++;
-                        }
-                    } catch (Exception e) {
-                        LOGGER.error("[mc_mod] Error fulfilling request (custom): {}", e.getMessage());
+        }));
+    }
+    
+    private void showTrace(net.minecraft.commands.CommandSourceStack context, int count) {
+        List<String> lines = RequestTrace.dump(count);
+        if (lines.isEmpty()) {
+            context.sendSuccess(() -> Component.literal("No trace events recorded" + (RequestTrace.isEnabled() ? "" : ", use /mcmod trace on")), false);
+            return;
+        }
+        context.sendSuccess(() -> Component.literal("Last " + lines.size() + " trace events (time, event, token, count):"), false);
+        for (String line : lines) {
+            context.sendSuccess(() -> Component.literal(line), false);
+            LOGGER.info("[mc_mod] trace {}", line);
+        }
+    }
+    
+    private void triggerAutofulfill() {
+        LOGGER.info("[mc_mod] Autofulfill triggered manually via command");
+        // Runs on the next server tick, within the normal tick budget
+        tickScheduler.requestCycle();
+    }
+
+    // Fulfill all requests in all colonies, no state filter
+    private void fulfillAllRequestsNoFilter() {
+        if (!MineColoniesBindings.isBound()) {
+            LOGGER.warn("[mc_mod] MineColonies bindings not resolved");
+            return;
+        }
+        // No state or resolver filter
+        int fulfilled = fulfillRequestsMatching(RequestFilter.ANY);
+        LOGGER.info("[mc_mod] fulfillAllRequestsNoFilter: Fulfilled {} requests", fulfilled);
+    }
+
+    // Fulfill all requests matching a filter
+    private int fulfillRequestsMatching(RequestFilter filter) {
+        if (!MineColoniesBindings.isBound()) {
+            LOGGER.warn("[mc_mod] MineColonies bindings not resolved");
+            return 0;
+        }
+        int fulfilled = 0;
+        try {
+            // Planning and resolving happen together here, so the walk stays on the server thread
+            Iterator<RequestTraversal.RequestView> requests = RequestTraversal.ofAllColonies()
+                .filter(filter)
+                .onColony(this::restoreColonyState)
+                .requests()
+                .iterator();
+            while (requests.hasNext()) {
+                RequestTraversal.RequestView view = requests.next();
+                try {
+                    FulfillmentPlan plan = planRequest(view.colony(), view.requestManager(), view.request(), filter);
+                    if (plan != null && fulfillRequestWithCreativeResolve(plan)) {
+                        fulfilled++;
                     }
+                } catch (Exception e) {
+                    LOGGER.error("[mc_mod] Error fulfilling request (custom): {}", e.getMessage(), e);
                 }
             }
-            LOGGER.info("[mc_mod] fulfillRequestsByStatusAndResolver: Fulfilled {} requests", fulfilled);
+            LOGGER.info("[mc_mod] fulfillRequestsMatching: Fulfilled {} requests matching '{}'", fulfilled, filter);
         } catch (Exception e) {
-            LOGGER.error("[mc_mod] Error in fulfillRequestsByStatusAndResolver: {}", e.getMessage(), e);
+            LOGGER.error("[mc_mod] Error in fulfillRequestsMatching: {}", e.getMessage(), e);
         }
+        return fulfilled;
     }
-} 
\ No newline at end of file
+}
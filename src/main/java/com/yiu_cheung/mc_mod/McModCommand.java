@@ -1,93 +1,117 @@
 package com.yiu_cheung.mc_mod;
 
-import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
-import net.neoforged.neoforge.event.RegisterCommandsEvent;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.world.item.ItemStack;
 import net.neoforged.neoforge.event.server.ServerStartedEvent;
 import net.neoforged.neoforge.event.server.ServerStartingEvent;
 import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.bus.api.EventPriority;
 
-import java.lang.reflect.Method;
-import java.util.Collections;
-import java.util.Map;
+import java.util.Collection;
+import java.util.List;
 
 public class McModCommand {
-    @SubscribeEvent(priority = EventPriority.NORMAL)
-    public static void onRegisterCommands(RegisterCommandsEvent event) {
-        CommandDispatcher<CommandSourceStack> dispatcher = event.getDispatcher();
-        dispatcher.register(Commands.literal("mcmod")
-            .executes(ctx -> {
-                ServerPlayer sp;
-                try {
-                    sp = ctx.getSource().getPlayerOrException();
-                } catch (Exception e) {
-                    return 0;
-                }
-                try {
-                    for (Object colony : getAllColonies()) {
-                        sp.sendSystemMessage(Component.literal("[mc_mod] Colony: " + colony));
-                        // Buildings
-                        Object buildingManager = colony.getClass().getMethod("getBuildingManager").invoke(colony);
-                        Map<?, ?> buildingsMap = (Map<?, ?>) buildingManager.getClass().getMethod("getBuildings").invoke(buildingManager);
-                        for (Object building : buildingsMap.values()) {
-                            Object requestManager = getRequestManager(colony);
-                            Object requestHandler = requestManager.getClass().getMethod("getRequestHandler").invoke(requestManager);
-                            Class<?> iRequesterClass = Class.forName("com.minecolonies.api.colony.requestsystem.requester.IRequester");
-                            Iterable<Object> requests = (Iterable<Object>) requestHandler.getClass().getMethod("getRequestsMadeByRequester", iRequesterClass).invoke(requestHandler, building);
-                            for (Object request : requests) {
-                                sp.sendSystemMessage(Component.literal("[mc_mod] Building request: " + request));
-                            }
-                        }
-                        // Citizens
-                        Object citizenManager = colony.getClass().getMethod("getCitizenManager").invoke(colony);
-                        Iterable<?> citizens = (Iterable<?>) citizenManager.getClass().getMethod("getCitizens").invoke(citizenManager);
-                        for (Object citizen : citizens) {
-                            Object requestManager = getRequestManager(colony);
-                            Object requestHandler = requestManager.getClass().getMethod("getRequestHandler").invoke(requestManager);
-                            Class<?> iRequesterClass = Class.forName("com.minecolonies.api.colony.requestsystem.requester.IRequester");
-                            Iterable<Object> requests = (Iterable<Object>) requestHandler.getClass().getMethod("getRequestsMadeByRequester", iRequesterClass).invoke(requestHandler, citizen);
-                            for (Object request : requests) {
-                                sp.sendSystemMessage(Component.literal("[mc_mod] Citizen request: " + request));
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                    sp.sendSystemMessage(Component.literal("[mc_mod] Error: " + e));
+    private static final int PAGE_SIZE = 10;
+    private static final int HOVER_REQUESTS = 8;
+
+    /**
+     * The {@code requests [page]} node of McMod's /mcmod tree.
+     */
+    static LiteralArgumentBuilder<CommandSourceStack> requestsCommand() {
+        return Commands.literal("requests")
+            .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                .executes(ctx -> showRequests(ctx.getSource(), IntegerArgumentType.getInteger(ctx, "page"))))
+            .executes(ctx -> showRequests(ctx.getSource(), 1));
+    }
+
+    private static int showRequests(CommandSourceStack source, int page) {
+        ServerPlayer sp;
+        try {
+            sp = source.getPlayerOrException();
+        } catch (Exception e) {
+            return 0;
+        }
+        if (!MineColoniesBindings.isBound()) {
+            sp.sendSystemMessage(Component.literal("[mc_mod] MineColonies bindings not resolved"));
+            return 0;
+        }
+        try {
+            sp.sendSystemMessage(listRequests(McMod.INSTANCE.requesterIndex, MineColoniesBindings.getAllColonies(), page));
+        } catch (Exception e) {
+            sp.sendSystemMessage(Component.literal("[mc_mod] Error: " + e));
+        }
+        return 1;
+    }
+
+    /**
+     * One page of open requests grouped by requester, as a single message. Hovering a row shows
+     * its requests; the arrows page through the list.
+     */
+    static Component listRequests(RequesterIndex index, Collection<?> colonies, int page) {
+        List<RequesterIndex.Row> rows = index.rows(colonies);
+        int total = 0;
+        for (RequesterIndex.Row row : rows) {
+            total += row.requests().size();
+        }
+        int pages = Math.max(1, (rows.size() + PAGE_SIZE - 1) / PAGE_SIZE);
+        int current = Math.min(page, pages);
+
+        MutableComponent message = Component.literal("[mc_mod] " + total + " open requests from " + rows.size() + " requesters")
+            .withStyle(ChatFormatting.GOLD);
+        int from = (current - 1) * PAGE_SIZE;
+        for (RequesterIndex.Row row : rows.subList(from, Math.min(rows.size(), from + PAGE_SIZE))) {
+            MutableComponent hover = Component.literal(row.requester());
+            int shown = 0;
+            for (Object request : row.requests().values()) {
+                if (shown++ == HOVER_REQUESTS) {
+                    hover.append("\n... " + (row.requests().size() - HOVER_REQUESTS) + " more");
+                    break;
                 }
-                return 1;
-            })
-            .then(Commands.literal("debug")
-                .executes(ctx -> {
-                    ServerPlayer sp;
-                    try {
-                        sp = ctx.getSource().getPlayerOrException();
-                    } catch (Exception e) {
-                        return 0;
-                    }
-                    sp.sendSystemMessage(Component.literal("[mc_mod] === Request Capture Debug Info ==="));
-                    sp.sendSystemMessage(Component.literal("[mc_mod] Active Request States:"));
-                    sp.sendSystemMessage(Component.literal("  - PENDING"));
-                    sp.sendSystemMessage(Component.literal("  - IN_PROGRESS"));
-                    sp.sendSystemMessage(Component.literal("  - FOLLOWUP_IN_PROGRESS"));
-                    sp.sendSystemMessage(Component.literal("  - IN_PROGRESS_DELIVERY"));
-                    sp.sendSystemMessage(Component.literal("  - FOLLOWUP_IN_PROGRESS_DELIVERY"));
-                    sp.sendSystemMessage(Component.literal("  - IN_PROGRESS_PICKUP"));
-                    sp.sendSystemMessage(Component.literal("  - FOLLOWUP_IN_PROGRESS_PICKUP"));
-                    sp.sendSystemMessage(Component.literal("[mc_mod] Allowed Resolver Types:"));
-                    sp.sendSystemMessage(Component.literal("  - StandardPlayerRequestResolver"));
-                    sp.sendSystemMessage(Component.literal("  - StandardRetryingRequestResolver"));
-                    sp.sendSystemMessage(Component.literal("  - StandardDeliveryRequestResolver"));
-                    sp.sendSystemMessage(Component.literal("  - StandardPickupRequestResolver"));
-                    sp.sendSystemMessage(Component.literal("  - StandardCraftingRequestResolver"));
-                    sp.sendSystemMessage(Component.literal("  - StandardBuildingRequestResolver"));
-                    sp.sendSystemMessage(Component.literal("[mc_mod] ================================="));
-                    return 1;
-                }))
-        );
+                hover.append("\n" + describeRequest(request));
+            }
+            message.append(Component.literal("\n  Colony " + row.colonyId() + " | " + row.requester() + ": " + row.requests().size())
+                .withStyle(style -> style.withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, hover))));
+        }
+
+        message.append("\n  ");
+        message.append(pageLink("[< Prev]", current > 1 ? current - 1 : 0));
+        message.append(Component.literal(" Page " + current + "/" + pages + " ").withStyle(ChatFormatting.GRAY));
+        message.append(pageLink("[Next >]", current < pages ? current + 1 : 0));
+        return message;
+    }
+
+    private static String describeRequest(Object request) {
+        try {
+            List<ItemStack> displayStacks = MineColoniesBindings.getDisplayStacks(request);
+            if (displayStacks != null && !displayStacks.isEmpty()) {
+                int count = MineColoniesBindings.getRequestCount(MineColoniesBindings.getRequestable(request));
+                return count + "x " + ItemNames.of(displayStacks.get(0)) + " (" + MineColoniesBindings.getRequestState(request) + ")";
+            }
+        } catch (Exception ignored) {
+        }
+        return String.valueOf(request);
+    }
+
+    /**
+     * @param page 0 for a greyed-out link
+     */
+    private static Component pageLink(String label, int page) {
+        if (page == 0) {
+            return Component.literal(label).withStyle(ChatFormatting.GRAY);
+        }
+        return Component.literal(label).withStyle(style -> style
+            .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/mcmod requests " + page))
+            .withUnderlined(true))
+            .withStyle(ChatFormatting.AQUA);
     }
 
     @SubscribeEvent(priority = EventPriority.NORMAL)
@@ -105,25 +129,4 @@ public class McModCommand {
             // log error if needed
         }
     }
-
-    // Utility to get all colonies from the server
-    private static Iterable<?> getAllColonies() {
-        try {
-            Class<?> apiProxyClass = Class.forName("com.minecolonies.api.MinecoloniesAPIProxy");
-            Object apiProxy = apiProxyClass.getMethod("getInstance").invoke(null);
-            Object colonyManager = apiProxyClass.getMethod("getColonyManager").invoke(apiProxy);
-            if (colonyManager == null) return Collections.emptyList();
-            return (Iterable<?>) colonyManager.getClass().getMethod("getColonies").invoke(colonyManager);
-        } catch (Exception e) {
-            return Collections.emptyList();
-        }
-    }
-
-    private static Object getRequestManager(Object colony) {
-        try {
-            return colony.getClass().getMethod("getRequestManager").invoke(colony);
-        } catch (Exception e) {
-            return null;
-        }
-    }
 } 
\ No newline at end of file
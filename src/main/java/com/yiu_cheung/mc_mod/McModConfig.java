@@ -0,0 +1,248 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One immutable snapshot of config/mc_mod.toml.
+ *
+ * The hot path reads the current snapshot through a single volatile field in {@link McMod}; a
+ * reload or a command builds a new snapshot and swaps it in, so a reader never sees half of an
+ * update. Values out of range are clamped, and values that can't be read keep what the previous
+ * snapshot had, with a warning either way.
+ */
+public record McModConfig(
+    boolean enabled,
+    int checkTimeSeconds,
+    boolean showInGameMessages,
+    MessagePipeline.Level messageLevel,
+    int tickBudgetMicros,
+    RequestIntake.Mode intakeMode,
+    String filter,
+    int planCacheMaxEntries,
+    int planCacheTtlSeconds,
+    int retryBaseSeconds,
+    int retryMaxSeconds,
+    int retryMaxAttempts,
+    boolean auditEnabled,
+    int auditSegmentMegabytes,
+    int auditMaxSegments,
+    int stateSaveSeconds,
+    int minCheckTimeSeconds,
+    int maxCheckTimeSeconds,
+    int msptThresholdMillis,
+    String colonyWeights,
+    String buildingPriority,
+    int agingSeconds
+) {
+    // Not McMod.LOGGER: McMod's static fields start out with DEFAULTS
+    private static final Logger LOGGER = LogManager.getLogger("mc_mod");
+
+    public static final McModConfig DEFAULTS = new McModConfig(
+        true, 5, true, MessagePipeline.Level.SUMMARY, 2000, RequestIntake.Mode.INCREMENTAL, RequestFilter.DEFAULT,
+        4096, 60, 10, 600, 8, true, 8, 32, 30, 1, 60, 45, "", "builder", 60);
+
+    /**
+     * Build a snapshot from the file's key/value pairs (section prefixes already stripped).
+     *
+     * @param previous where values that are missing or unreadable come from
+     */
+    public static McModConfig read(Map<String, String> values, McModConfig previous) {
+        Reader r = new Reader(values);
+        String filter = r.string("filter", previous.filter);
+        try {
+            RequestFilter.parse(filter);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("[mc_mod] Config: invalid filter '{}', keeping '{}': {}", filter, previous.filter, e.getMessage());
+            filter = previous.filter;
+        }
+        String colonyWeights = r.string("colonyWeights", previous.colonyWeights);
+        try {
+            ColonyFairness.parseWeights(colonyWeights);
+        } catch (IllegalArgumentException e) {
+            LOGGER.warn("[mc_mod] Config: invalid colonyWeights '{}', keeping '{}': {}", colonyWeights, previous.colonyWeights, e.getMessage());
+            colonyWeights = previous.colonyWeights;
+        }
+        int retryBaseSeconds = r.integer("retryBaseSeconds", previous.retryBaseSeconds, 1, 86400);
+        int minCheckTimeSeconds = r.integer("minCheckTimeSeconds", previous.minCheckTimeSeconds, 1, 3600);
+        return new McModConfig(
+            r.bool("enabled", previous.enabled),
+            r.integer("checkTimeSeconds", previous.checkTimeSeconds, 1, 3600),
+            r.bool("showInGameMessages", previous.showInGameMessages),
+            r.level("messageLevel", previous.messageLevel),
+            r.integer("tickBudgetMicros", previous.tickBudgetMicros, 100, 50000),
+            r.intakeMode("intakeMode", previous.intakeMode),
+            filter,
+            r.integer("planCacheMaxEntries", previous.planCacheMaxEntries, 0, 1 << 20),
+            r.integer("planCacheTtlSeconds", previous.planCacheTtlSeconds, 1, 86400),
+            retryBaseSeconds,
+            r.integer("retryMaxSeconds", previous.retryMaxSeconds, retryBaseSeconds, 86400),
+            r.integer("retryMaxAttempts", previous.retryMaxAttempts, 1, 1000),
+            r.bool("auditEnabled", previous.auditEnabled),
+            r.integer("auditSegmentMegabytes", previous.auditSegmentMegabytes, 1, 1024),
+            r.integer("auditMaxSegments", previous.auditMaxSegments, 1, 10000),
+            r.integer("stateSaveSeconds", previous.stateSaveSeconds, 1, 3600),
+            minCheckTimeSeconds,
+            r.integer("maxCheckTimeSeconds", previous.maxCheckTimeSeconds, minCheckTimeSeconds, 3600),
+            r.integer("msptThresholdMillis", previous.msptThresholdMillis, 0, 1000),
+            colonyWeights,
+            r.string("buildingPriority", previous.buildingPriority),
+            r.integer("agingSeconds", previous.agingSeconds, 0, 86400));
+    }
+
+    public McModConfig withCheckTimeSeconds(int seconds) {
+        return new McModConfig(enabled, seconds, showInGameMessages, messageLevel, tickBudgetMicros, intakeMode, filter,
+            planCacheMaxEntries, planCacheTtlSeconds, retryBaseSeconds, retryMaxSeconds, retryMaxAttempts,
+            auditEnabled, auditSegmentMegabytes, auditMaxSegments, stateSaveSeconds,
+            minCheckTimeSeconds, maxCheckTimeSeconds, msptThresholdMillis, colonyWeights, buildingPriority, agingSeconds);
+    }
+
+    public McModConfig withTickBudgetMicros(int micros) {
+        return new McModConfig(enabled, checkTimeSeconds, showInGameMessages, messageLevel, micros, intakeMode, filter,
+            planCacheMaxEntries, planCacheTtlSeconds, retryBaseSeconds, retryMaxSeconds, retryMaxAttempts,
+            auditEnabled, auditSegmentMegabytes, auditMaxSegments, stateSaveSeconds,
+            minCheckTimeSeconds, maxCheckTimeSeconds, msptThresholdMillis, colonyWeights, buildingPriority, agingSeconds);
+    }
+
+    public McModConfig withIntakeMode(RequestIntake.Mode mode) {
+        return new McModConfig(enabled, checkTimeSeconds, showInGameMessages, messageLevel, tickBudgetMicros, mode, filter,
+            planCacheMaxEntries, planCacheTtlSeconds, retryBaseSeconds, retryMaxSeconds, retryMaxAttempts,
+            auditEnabled, auditSegmentMegabytes, auditMaxSegments, stateSaveSeconds,
+            minCheckTimeSeconds, maxCheckTimeSeconds, msptThresholdMillis, colonyWeights, buildingPriority, agingSeconds);
+    }
+
+    public McModConfig withFilter(String text) {
+        return new McModConfig(enabled, checkTimeSeconds, showInGameMessages, messageLevel, tickBudgetMicros, intakeMode, text,
+            planCacheMaxEntries, planCacheTtlSeconds, retryBaseSeconds, retryMaxSeconds, retryMaxAttempts,
+            auditEnabled, auditSegmentMegabytes, auditMaxSegments, stateSaveSeconds,
+            minCheckTimeSeconds, maxCheckTimeSeconds, msptThresholdMillis, colonyWeights, buildingPriority, agingSeconds);
+    }
+
+    public McModConfig withShowInGameMessages(boolean show) {
+        return new McModConfig(enabled, checkTimeSeconds, show, messageLevel, tickBudgetMicros, intakeMode, filter,
+            planCacheMaxEntries, planCacheTtlSeconds, retryBaseSeconds, retryMaxSeconds, retryMaxAttempts,
+            auditEnabled, auditSegmentMegabytes, auditMaxSegments, stateSaveSeconds,
+            minCheckTimeSeconds, maxCheckTimeSeconds, msptThresholdMillis, colonyWeights, buildingPriority, agingSeconds);
+    }
+
+    /**
+     * The file written when none exists yet, with this snapshot's values.
+     */
+    public String render() {
+        return "# MC Mod Configuration File\n" +
+            "# This file is auto-generated. You can modify these settings.\n" +
+            "# Changes are picked up while the server runs; the audit settings apply from the next server start.\n" +
+            "# Reloading applies every value here, replacing changes made by commands since.\n\n" +
+            "[autofulfill]\n" +
+            "# Enable or disable autofulfill feature. This value applies at every server start and every\n" +
+            "# time this file is saved; /mcmod autofullfill enable|disable only lasts until then\n" +
+            "enabled = " + enabled + "\n\n" +
+            "# Interval in seconds for autofulfill checks (1-3600). This is where the interval starts; it then\n" +
+            "# shortens towards minCheckTimeSeconds while requests keep coming in and lengthens towards\n" +
+            "# maxCheckTimeSeconds while colonies are idle\n" +
+            "checkTimeSeconds = " + checkTimeSeconds + "\n" +
+            "minCheckTimeSeconds = " + minCheckTimeSeconds + "\n" +
+            "maxCheckTimeSeconds = " + maxCheckTimeSeconds + "\n\n" +
+            "# While the server's average tick time is above this many milliseconds, no new cycle starts,\n" +
+            "# the interval backs off and a running cycle commits one citizen per tick (0 to turn off)\n" +
+            "msptThresholdMillis = " + msptThresholdMillis + "\n\n" +
+            "# Show in-game messages for autofulfill actions\n" +
+            "showInGameMessages = " + showInGameMessages + "\n\n" +
+            "# Chat level for players who haven't picked one: \"off\", \"errors\", \"summary\" or \"verbose\"\n" +
+            "messageLevel = \"" + messageLevel.name().toLowerCase(Locale.ROOT) + "\"\n\n" +
+            "# Time budget per server tick for autofulfill work, in microseconds (100-50000)\n" +
+            "tickBudgetMicros = " + tickBudgetMicros + "\n\n" +
+            "# How new requests are found: \"incremental\" (each colony checked twice a second, within the tick budget)\n" +
+            "# or \"polling\" (every checkTimeSeconds only)\n" +
+            "intakeMode = \"" + intakeMode.name().toLowerCase(Locale.ROOT) + "\"\n\n" +
+            "# Which requests the scheduled cycles fulfill, same syntax as /mcmod autofullfill custom.\n" +
+            "# Clauses: colony=, state=, resolver=, building=, citizen=, item= (IDs or #tags), count=min..max\n" +
+            "filter = \"" + escape(filter) + "\"\n\n" +
+            "# How a cycle's work is shared between colonies. Each colony gets a share of every tick by its\n" +
+            "# weight, 1 unless listed here as <colony id>=<weight> (1-100), e.g. \"1=3, 12=2\"\n" +
+            "colonyWeights = \"" + escape(colonyWeights) + "\"\n\n" +
+            "# Building types served first within a colony, in this order, e.g. \"builder, miner\"; the rest\n" +
+            "# oldest request first. Names as in /mcmod stats breakdown building\n" +
+            "buildingPriority = \"" + escape(buildingPriority) + "\"\n\n" +
+            "# A colony whose oldest request has waited this many seconds gets one more point of weight per\n" +
+            "# period, up to four times its weight (0 to turn off)\n" +
+            "agingSeconds = " + agingSeconds + "\n\n" +
+            "# Cached plans for requests that stay open: maximum entries and lifetime in seconds\n" +
+            "planCacheMaxEntries = " + planCacheMaxEntries + "\n" +
+            "planCacheTtlSeconds = " + planCacheTtlSeconds + "\n\n" +
+            "# Failed requests are retried after retryBaseSeconds, doubling up to retryMaxSeconds.\n" +
+            "# After retryMaxAttempts failures they are dead-lettered (see /mcmod autofullfill deadletter)\n" +
+            "retryBaseSeconds = " + retryBaseSeconds + "\n" +
+            "retryMaxSeconds = " + retryMaxSeconds + "\n" +
+            "retryMaxAttempts = " + retryMaxAttempts + "\n\n" +
+            "# Audit journal of every autofulfill action, in <world>/mc_mod/audit (see /mcmod audit)\n" +
+            "auditEnabled = " + auditEnabled + "\n" +
+            "auditSegmentMegabytes = " + auditSegmentMegabytes + "\n" +
+            "auditMaxSegments = " + auditMaxSegments + "\n\n" +
+            "# How often changed autofulfill state is saved to <world>/mc_mod/state, in seconds\n" +
+            "stateSaveSeconds = " + stateSaveSeconds + "\n";
+    }
+
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    /**
+     * Typed, validated access to the raw values.
+     */
+    private record Reader(Map<String, String> values) {
+        boolean bool(String key, boolean fallback) {
+            String value = values.get(key);
+            if (value == null) return fallback;
+            if (value.equalsIgnoreCase("true")) return true;
+            if (value.equalsIgnoreCase("false")) return false;
+            return invalid(key, value, fallback);
+        }
+
+        int integer(String key, int fallback, int min, int max) {
+            String value = values.get(key);
+            if (value == null) return fallback;
+            int parsed;
+            try {
+                parsed = Integer.parseInt(value.replace("_", ""));
+            } catch (NumberFormatException e) {
+                return invalid(key, value, fallback);
+            }
+            int clamped = Math.max(min, Math.min(max, parsed));
+            if (clamped != parsed) {
+                LOGGER.warn("[mc_mod] Config: {} = {} is outside {}-{}, using {}", key, parsed, min, max, clamped);
+            }
+            return clamped;
+        }
+
+        String string(String key, String fallback) {
+            String value = values.get(key);
+            return value != null ? value : fallback;
+        }
+
+        MessagePipeline.Level level(String key, MessagePipeline.Level fallback) {
+            String value = values.get(key);
+            if (value == null) return fallback;
+            try {
+                return MessagePipeline.Level.parse(value);
+            } catch (IllegalArgumentException e) {
+                return invalid(key, value, fallback);
+            }
+        }
+
+        RequestIntake.Mode intakeMode(String key, RequestIntake.Mode fallback) {
+            String value = values.get(key);
+            if (value == null) return fallback;
+            RequestIntake.Mode mode = RequestIntake.Mode.parse(value);
+            return mode != null ? mode : invalid(key, value, fallback);
+        }
+
+        private static <T> T invalid(String key, String value, T fallback) {
+            LOGGER.warn("[mc_mod] Config: can't read {} = {}, keeping {}", key, value, fallback);
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reads config/mc_mod.toml and watches it for changes.
+ *
+ * Only the part of TOML the file uses is understood: [section] headers, key = value lines,
+ * booleans, integers, double-quoted strings with \" and \\ escapes, and # comments. Keys are
+ * looked up without their section. A missing file is written with the defaults.
+ *
+ * A daemon thread waits on a {@link WatchService} for the config directory. Editors often
+ * write a file in several steps, so after a change it waits {@value #SETTLE_MILLIS} ms for
+ * things to settle before reading; a file that can't be read keeps the current snapshot.
+ * Each snapshot read is handed to the listener on the watcher thread, also when it is unchanged.
+ */
+public final class McModConfigFile implements AutoCloseable {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    private static final long SETTLE_MILLIS = 250;
+
+    private final Path file;
+    private final Consumer<McModConfig> onReload;
+    private volatile McModConfig current = McModConfig.DEFAULTS;
+    private volatile WatchService watchService = null;
+    private Thread watcher = null;
+
+    /**
+     * @param onReload called with each snapshot read after a change, on the watcher thread
+     */
+    public McModConfigFile(Path file, Consumer<McModConfig> onReload) {
+        this.file = file;
+        this.onReload = onReload;
+    }
+
+    public Path getPath() {
+        return file;
+    }
+
+    /**
+     * Read the file, writing it with the defaults first if it doesn't exist.
+     *
+     * @return the snapshot, the defaults if the file can't be read
+     */
+    public McModConfig load() {
+        try {
+            if (!Files.exists(file)) {
+                Files.createDirectories(file.getParent());
+                Files.writeString(file, McModConfig.DEFAULTS.render(), StandardCharsets.UTF_8);
+                LOGGER.info("[mc_mod] Generated config file: {}", file);
+            }
+            current = McModConfig.read(parse(Files.readAllLines(file, StandardCharsets.UTF_8)), McModConfig.DEFAULTS);
+            LOGGER.info("[mc_mod] Loaded config file: {}", file);
+        } catch (IOException e) {
+            LOGGER.error("[mc_mod] Could not read config file {}, using defaults: {}", file, e.getMessage());
+        }
+        return current;
+    }
+
+    /**
+     * Start watching the file. Does nothing if already watching.
+     */
+    public synchronized void watch() {
+        if (watcher != null) {
+            return;
+        }
+        try {
+            WatchService service = file.getFileSystem().newWatchService();
+            file.getParent().register(service,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchService = service;
+        } catch (IOException e) {
+            LOGGER.warn("[mc_mod] Can't watch config file {}, changes need a restart: {}", file, e.getMessage());
+            return;
+        }
+        watcher = new Thread(this::run, "mc_mod-config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        WatchService service = watchService;
+        watchService = null;
+        watcher = null;
+        if (service != null) {
+            try {
+                service.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void run() {
+        WatchService service = watchService;
+        Path name = file.getFileName();
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (name.equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+                // Swallow the rest of this save
+                Thread.sleep(SETTLE_MILLIS);
+                WatchKey more;
+                while ((more = service.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    more.pollEvents();
+                    more.reset();
+                }
+                reload();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    private void reload() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.warn("[mc_mod] Could not re-read config file {}: {}", file, e.getMessage());
+            return;
+        }
+        // Handed on even if nothing changed, so saving the file undoes changes made by commands
+        McModConfig next = McModConfig.read(parse(lines), current);
+        current = next;
+        LOGGER.info("[mc_mod] Config file changed, reloaded {}", file);
+        try {
+            onReload.accept(next);
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error applying reloaded config: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return key to raw value, strings unquoted
+     */
+    static Map<String, String> parse(List<String> lines) {
+        Map<String, String> values = new HashMap<>();
+        for (int n = 0; n < lines.size(); n++) {
+            String line = lines.get(n).trim();
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("[")) {
+                continue;
+            }
+            int equals = line.indexOf('=');
+            if (equals <= 0) {
+                LOGGER.warn("[mc_mod] Config line {} is not key = value: {}", n + 1, line);
+                continue;
+            }
+            String key = line.substring(0, equals).trim();
+            String value = line.substring(equals + 1).trim();
+            if (value.startsWith("\"")) {
+                StringBuilder text = new StringBuilder();
+                boolean closed = false;
+                for (int i = 1; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '\\' && i + 1 < value.length()) {
+                        text.append(value.charAt(++i));
+                    } else if (c == '"') {
+                        closed = true;
+                        break;
+                    } else {
+                        text.append(c);
+                    }
+                }
+                if (!closed) {
+                    LOGGER.warn("[mc_mod] Config line {} has an unterminated string: {}", n + 1, line);
+                    continue;
+                }
+                value = text.toString();
+            } else {
+                int comment = value.indexOf('#');
+                if (comment >= 0) {
+                    value = value.substring(0, comment).trim();
+                }
+            }
+            values.put(key, value);
+        }
+        return values;
+    }
+}
@@ -0,0 +1,298 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collects autofulfill outcomes during a cycle and sends each player one summary at the end of it,
+ * instead of a chat line per request.
+ *
+ * Outcomes are aggregated as they are recorded: per kind, the number of requests, the distinct
+ * buildings and the item totals, plus the first few detail lines. {@link #flush} turns that into
+ * one line per kind, e.g. "Fulfilled 37 requests across 4 buildings: 512x Cobblestone, ...".
+ * Each player chooses how much they see with a {@link Level}, and every line goes through a
+ * {@link MessageRateLimiter} once, however many players receive it.
+ */
+public final class MessagePipeline {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    /**
+     * How much autofulfill chat a player receives. Each level includes the ones before it.
+     */
+    public enum Level {
+        OFF, ERRORS, SUMMARY, VERBOSE;
+
+        public static Level parse(String value) {
+            return Level.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    enum Kind {
+        FULFILLED("Fulfilled", "SUCCESS", Level.SUMMARY, ""),
+        PARTIAL("Partly delivered", "PROGRESS", Level.SUMMARY, ""),
+        FAILED("Could not fulfill", "ERROR", Level.ERRORS, " (retrying)"),
+        DEAD_LETTERED("Gave up on", "WARNING", Level.ERRORS, " (see /mcmod autofullfill deadletter)");
+
+        private final String verb;
+        private final String type;
+        private final Level level;
+        private final String suffix;
+
+        Kind(String verb, String type, Level level, String suffix) {
+            this.verb = verb;
+            this.type = type;
+            this.level = level;
+            this.suffix = suffix;
+        }
+    }
+
+    private record Line(Level level, String type, String text) {
+    }
+
+    private static final class Aggregate {
+        int requests = 0;
+        final Set<Object> buildings = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Map<String, Integer> items = new HashMap<>();
+        int otherItems = 0;
+        final List<String> details = new ArrayList<>();
+        int moreDetails = 0;
+    }
+
+    private static final int MAX_ITEM_KEYS = 256;
+    private static final int MAX_ITEMS_LISTED = 5;
+    private static final int MAX_DETAILS = 10;
+    private static final int MAX_NOTES = 16;
+
+    private final Map<Kind, Aggregate> aggregates = new EnumMap<>(Kind.class);
+    private final List<Line> notes = new ArrayList<>();
+    private final Map<UUID, Level> playerLevels = new ConcurrentHashMap<>();
+    private final MessageRateLimiter limiter = new MessageRateLimiter();
+    // For players who haven't picked a level, from the config
+    private volatile Level defaultLevel = Level.SUMMARY;
+
+    public Level getLevel(UUID player) {
+        return playerLevels.getOrDefault(player, defaultLevel);
+    }
+
+    public void setDefaultLevel(Level level) {
+        defaultLevel = level;
+    }
+
+    public void setLevel(UUID player, Level level) {
+        playerLevels.put(player, level);
+    }
+
+    /**
+     * @return a copy of the levels players have chosen
+     */
+    public Map<UUID, Level> getLevels() {
+        return new HashMap<>(playerLevels);
+    }
+
+    /**
+     * @return how many lines the rate limiter held back
+     */
+    public long getSuppressed() {
+        return limiter.getSuppressed();
+    }
+
+    /**
+     * Count one request's outcome towards this cycle's summary.
+     *
+     * @param count  items delivered or requested
+     * @param detail full description for verbose players, only built for the first few
+     */
+    synchronized void record(Kind kind, FulfillmentPlan plan, int count, Supplier<String> detail) {
+        Aggregate aggregate = aggregates.computeIfAbsent(kind, k -> new Aggregate());
+        aggregate.requests++;
+        aggregate.buildings.add(plan.building() != null ? plan.building() : plan.buildingName());
+        String item = plan.itemName() != null ? plan.itemName() : "Unknown";
+        Integer total = aggregate.items.get(item);
+        if (total != null || aggregate.items.size() < MAX_ITEM_KEYS) {
+            aggregate.items.put(item, (total != null ? total : 0) + count);
+        } else {
+            aggregate.otherItems += count;
+        }
+        if (aggregate.details.size() < MAX_DETAILS) {
+            aggregate.details.add(detail.get());
+        } else {
+            aggregate.moreDetails++;
+        }
+    }
+
+    /**
+     * Add a one-off line to this cycle's summary.
+     */
+    synchronized void note(Level level, String type, String msg) {
+        if (notes.size() < MAX_NOTES) {
+            notes.add(new Line(level, type, msg));
+        }
+    }
+
+    /**
+     * Log and send what was collected since the last flush, then start over. Call on the server
+     * thread.
+     *
+     * @param deliver false to only log, e.g. when in-game messages are disabled
+     */
+    public void flush(MinecraftServer server, boolean deliver) {
+        List<Line> lines;
+        synchronized (this) {
+            if (aggregates.isEmpty() && notes.isEmpty()) {
+                return;
+            }
+            lines = buildLines();
+            aggregates.clear();
+            notes.clear();
+        }
+        for (Line line : lines) {
+            if (line.level() != Level.VERBOSE) {
+                LOGGER.info("[mc_mod] {}", line.text());
+            }
+        }
+        if (deliver && server != null) {
+            send(server, lines);
+        }
+    }
+
+    /**
+     * Send a single line right away, outside the cycle summary. Call on the server thread.
+     */
+    public void broadcast(MinecraftServer server, String type, String msg) {
+        send(server, List.of(new Line(levelFor(type), type, msg)));
+    }
+
+    public void clear() {
+        synchronized (this) {
+            aggregates.clear();
+            notes.clear();
+        }
+        limiter.clear();
+    }
+
+    private void send(MinecraftServer server, List<Line> lines) {
+        var players = server.getPlayerList().getPlayers();
+        if (players.isEmpty()) {
+            return;
+        }
+        for (Line line : lines) {
+            // A line nobody is listening for doesn't use up the rate limit
+            if (!hasAudience(players, line.level()) || !limiter.tryAcquire(line.type(), line.text())) {
+                continue;
+            }
+            Component component = Component.literal(format(line.type(), line.text()));
+            for (ServerPlayer player : players) {
+                if (accepts(player, line.level())) {
+                    player.sendSystemMessage(component);
+                }
+            }
+        }
+    }
+
+    private boolean hasAudience(List<ServerPlayer> players, Level level) {
+        for (ServerPlayer player : players) {
+            if (accepts(player, level)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean accepts(ServerPlayer player, Level level) {
+        return getLevel(player.getUUID()).ordinal() >= level.ordinal();
+    }
+
+    private List<Line> buildLines() {
+        List<Line> lines = new ArrayList<>();
+        for (Map.Entry<Kind, Aggregate> entry : aggregates.entrySet()) {
+            Kind kind = entry.getKey();
+            Aggregate aggregate = entry.getValue();
+            lines.add(new Line(kind.level, kind.type, summarize(kind, aggregate)));
+            for (String detail : aggregate.details) {
+                lines.add(new Line(Level.VERBOSE, kind.type, detail));
+            }
+            if (aggregate.moreDetails > 0) {
+                lines.add(new Line(Level.VERBOSE, kind.type, "... and " + aggregate.moreDetails + " more"));
+            }
+        }
+        lines.addAll(notes);
+        return lines;
+    }
+
+    private static String summarize(Kind kind, Aggregate aggregate) {
+        List<Map.Entry<String, Integer>> items = new ArrayList<>(aggregate.items.entrySet());
+        items.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+
+        StringBuilder text = new StringBuilder(kind.verb).append(' ')
+            .append(plural(aggregate.requests, "request")).append(" across ")
+            .append(plural(aggregate.buildings.size(), "building")).append(": ");
+        for (int i = 0; i < Math.min(items.size(), MAX_ITEMS_LISTED); i++) {
+            if (i > 0) text.append(", ");
+            text.append(items.get(i).getValue()).append("x ").append(items.get(i).getKey());
+        }
+        int more = Math.max(0, items.size() - MAX_ITEMS_LISTED);
+        if (aggregate.otherItems > 0) {
+            text.append(" and more");
+        } else if (more > 0) {
+            text.append(" and ").append(plural(more, "more item"));
+        }
+        return text.append(kind.suffix).toString();
+    }
+
+    private static String plural(int count, String noun) {
+        return count + " " + noun + (count == 1 ? "" : "s");
+    }
+
+    private static Level levelFor(String type) {
+        switch (type.toUpperCase()) {
+            case "ERROR":
+            case "WARNING":
+                return Level.ERRORS;
+            case "PROGRESS":
+                return Level.VERBOSE;
+            default:
+                return Level.SUMMARY;
+        }
+    }
+
+    static String format(String type, String msg) {
+        String prefix = "";
+        switch (type.toUpperCase()) {
+            case "SUCCESS":
+                prefix = "§a[✓] "; // Green checkmark
+                break;
+            case "ERROR":
+                prefix = "§c[✗] "; // Red X
+                break;
+            case "WARNING":
+                prefix = "§e[⚠] "; // Yellow warning
+                break;
+            case "INFO":
+                prefix = "§b[ℹ] "; // Blue info
+                break;
+            case "PROGRESS":
+                prefix = "§6[→] "; // Gold arrow
+                break;
+            case "STATS":
+                prefix = "§d[📊] "; // Purple stats
+                break;
+            default:
+                prefix = "§7[?] "; // Gray question mark
+        }
+        return prefix + msg;
+    }
+}
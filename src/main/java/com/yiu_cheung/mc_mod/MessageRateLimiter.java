@@ -0,0 +1,176 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket rate limit for chat output, with a fixed memory budget.
+ *
+ * Every line has to pass two buckets: one for its exact text, so the same line is sent at most 3
+ * times in a row and then once every 5 minutes, and one for its category (the message type), so
+ * a flood of different lines of one kind can't drown out the rest. Buckets are kept as a single "theoretical arrival time"
+ * each (GCRA), so a bucket is one {@code long}.
+ *
+ * Per-line buckets live in a fixed set-associative table: {@value #SETS} sets of {@value #WAYS}
+ * slots, guarded by {@value #STRIPES} striped locks. A line's set is picked by its 64-bit hash. When
+ * the set is full, a slot whose bucket has refilled completely is reused first, since forgetting
+ * it changes nothing; otherwise the least recently used slot is. Category buckets are updated
+ * lock-free with CAS.
+ *
+ * The key is an FNV-1a hash of the type and the unformatted text, so nothing has to be
+ * concatenated or formatted before a line is checked.
+ */
+final class MessageRateLimiter {
+
+    /**
+     * Per-category quotas: a burst of {@code burst} lines, then one every {@code seconds}.
+     */
+    enum Category {
+        SUCCESS(12, 2),
+        PROGRESS(12, 2),
+        ERROR(12, 1),
+        WARNING(12, 1),
+        INFO(6, 5),
+        STATS(2, 30),
+        OTHER(6, 5);
+
+        private final long intervalNanos;
+        private final long toleranceNanos;
+
+        Category(int burst, int seconds) {
+            this.intervalNanos = seconds * 1_000_000_000L;
+            this.toleranceNanos = (burst - 1) * intervalNanos;
+        }
+
+        static Category of(String type) {
+            switch (type.toUpperCase()) {
+                case "SUCCESS": return SUCCESS;
+                case "PROGRESS": return PROGRESS;
+                case "ERROR": return ERROR;
+                case "WARNING": return WARNING;
+                case "INFO": return INFO;
+                case "STATS": return STATS;
+                default: return OTHER;
+            }
+        }
+    }
+
+    private static final int WAYS = 4;
+    private static final int SETS = 256;
+    private static final int STRIPES = 16;
+    // The same line: a burst of 3, then one every 5 minutes
+    private static final long LINE_INTERVAL_NANOS = 300_000_000_000L;
+    private static final long LINE_TOLERANCE_NANOS = 2 * LINE_INTERVAL_NANOS;
+
+    // Slot arrays, a slot is free while its key is 0
+    private final long[] keys = new long[SETS * WAYS];
+    private final long[] arrivals = new long[SETS * WAYS];
+    private final long[] lastUsed = new long[SETS * WAYS];
+    private final Object[] stripes = new Object[STRIPES];
+
+    private final AtomicLongArray categoryArrivals = new AtomicLongArray(Category.values().length);
+    private final LongAdder suppressed = new LongAdder();
+    private final long origin = System.nanoTime();
+
+    MessageRateLimiter() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * @return true if the line may be sent now; it is counted against both buckets
+     */
+    boolean tryAcquire(String type, CharSequence text) {
+        return tryAcquire(Category.of(type), key(type, text));
+    }
+
+    boolean tryAcquire(Category category, long key) {
+        long now = System.nanoTime() - origin;
+        int set = (int) (key ^ (key >>> 32)) & (SETS - 1);
+        synchronized (stripes[set & (STRIPES - 1)]) {
+            int slot = findOrClaim(set * WAYS, key, now);
+            lastUsed[slot] = now;
+            long arrival = Math.max(arrivals[slot], now);
+            if (arrival - now > LINE_TOLERANCE_NANOS || !acquireCategory(category, now)) {
+                suppressed.increment();
+                return false;
+            }
+            arrivals[slot] = arrival + LINE_INTERVAL_NANOS;
+            return true;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a over the type and text, never 0.
+     */
+    static long key(String type, CharSequence text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < type.length(); i++) {
+            hash = (hash ^ type.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ ':') * 0x100000001b3L;
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return hash != 0 ? hash : 1;
+    }
+
+    /**
+     * @return how many lines were held back since startup
+     */
+    long getSuppressed() {
+        return suppressed.sum();
+    }
+
+    void clear() {
+        for (int set = 0; set < SETS; set++) {
+            synchronized (stripes[set & (STRIPES - 1)]) {
+                for (int slot = set * WAYS; slot < (set + 1) * WAYS; slot++) {
+                    keys[slot] = 0;
+                    arrivals[slot] = 0;
+                    lastUsed[slot] = 0;
+                }
+            }
+        }
+        for (int i = 0; i < categoryArrivals.length(); i++) {
+            categoryArrivals.set(i, 0);
+        }
+    }
+
+    /**
+     * Find the key's slot in its set, or take one over for it. Caller holds the set's stripe.
+     */
+    private int findOrClaim(int base, long key, long now) {
+        int victim = base;
+        int victimRank = Integer.MAX_VALUE;
+        for (int slot = base; slot < base + WAYS; slot++) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            // Free slots first, then ones whose bucket is full again, then the least recently used
+            int rank = keys[slot] == 0 ? 0 : arrivals[slot] <= now ? 1 : 2;
+            if (rank < victimRank || (rank == victimRank && lastUsed[slot] < lastUsed[victim])) {
+                victim = slot;
+                victimRank = rank;
+            }
+        }
+        keys[victim] = key;
+        arrivals[victim] = 0;
+        return victim;
+    }
+
+    private boolean acquireCategory(Category category, long now) {
+        int index = category.ordinal();
+        while (true) {
+            long stored = categoryArrivals.get(index);
+            long arrival = Math.max(stored, now);
+            if (arrival - now > category.toleranceNanos) {
+                return false;
+            }
+            if (categoryArrivals.compareAndSet(index, stored, arrival + category.intervalNanos)) {
+                return true;
+            }
+        }
+    }
+}
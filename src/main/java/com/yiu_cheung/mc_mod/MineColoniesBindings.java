@@ -0,0 +1,701 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.world.item.ItemStack;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Binding layer for the MineColonies API.
+ *
+ * MineColonies is only available at runtime, so every class and method the mod needs is
+ * looked up by name. Instead of doing that on every call, all lookups happen once in
+ * {@link Handles}' static initializer and are stored as {@code static final} MethodHandles,
+ * which the JIT treats as constants. Call {@link #bind()} once MineColonies is confirmed
+ * loaded; if anything is missing, binding fails with a single report listing every
+ * missing class or method.
+ */
+public final class MineColoniesBindings {
+    private static final Logger LOGGER = LogManager.getLogger("mc_mod");
+
+    private static volatile boolean bound = false;
+    private static volatile String failureReport = null;
+
+    private MineColoniesBindings() {
+    }
+
+    /**
+     * Resolve all bindings. Safe to call repeatedly; only the first call does any work.
+     *
+     * @return true if every binding was resolved
+     */
+    public static synchronized boolean bind() {
+        if (bound) {
+            return true;
+        }
+        if (failureReport != null) {
+            return false;
+        }
+        try {
+            Handles.touch();
+            bound = true;
+            LOGGER.info("[mc_mod] MineColonies bindings resolved");
+        } catch (ExceptionInInitializerError e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            failureReport = cause.getMessage();
+            LOGGER.error("[mc_mod] MineColonies bindings could not be resolved:\n{}", failureReport);
+        } catch (LinkageError e) {
+            failureReport = e.toString();
+            LOGGER.error("[mc_mod] MineColonies bindings could not be resolved: {}", failureReport);
+        }
+        return bound;
+    }
+
+    public static boolean isBound() {
+        return bound;
+    }
+
+    /**
+     * @return the report produced by a failed {@link #bind()}, or null
+     */
+    public static String getFailureReport() {
+        return failureReport;
+    }
+
+    // --- API and colony manager ---
+
+    public static Object getApi() {
+        try {
+            return (Object) Handles.API_GET_INSTANCE.invokeExact();
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getColonyManager(Object api) {
+        try {
+            return (Object) Handles.API_GET_COLONY_MANAGER.invokeExact(api);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Collection<?> getAllColonies(Object colonyManager) {
+        try {
+            return (Collection<?>) (Object) Handles.COLONY_MANAGER_GET_ALL_COLONIES.invokeExact(colonyManager);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Convenience walk from the API to the colony list.
+     *
+     * @return all colonies, or an empty collection if any step is not available yet
+     */
+    public static Collection<?> getAllColonies() {
+        Object api = getApi();
+        if (api == null) return Collections.emptyList();
+        Object colonyManager = getColonyManager(api);
+        if (colonyManager == null) return Collections.emptyList();
+        Collection<?> colonies = getAllColonies(colonyManager);
+        return colonies != null ? colonies : Collections.emptyList();
+    }
+
+    // --- Colony ---
+
+    public static int getColonyId(Object colony) {
+        try {
+            return (int) (Object) Handles.COLONY_GET_ID.invokeExact(colony);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getRequestManager(Object colony) {
+        try {
+            return (Object) Handles.COLONY_GET_REQUEST_MANAGER.invokeExact(colony);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getBuildingManager(Object colony) {
+        try {
+            return (Object) Handles.COLONY_GET_BUILDING_MANAGER.invokeExact(colony);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Map<?, ?> getBuildings(Object buildingManager) {
+        try {
+            return (Map<?, ?>) (Object) Handles.BUILDING_MANAGER_GET_BUILDINGS.invokeExact(buildingManager);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getCitizenManager(Object colony) {
+        try {
+            return (Object) Handles.COLONY_GET_CITIZEN_MANAGER.invokeExact(colony);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Collection<?> getCitizens(Object citizenManager) {
+        try {
+            return (Collection<?>) (Object) Handles.CITIZEN_MANAGER_GET_CITIZENS.invokeExact(citizenManager);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // --- Request manager and resolvers ---
+
+    public static Object getPlayerResolver(Object requestManager) {
+        try {
+            return (Object) Handles.MANAGER_GET_PLAYER_RESOLVER.invokeExact(requestManager);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getRetryingResolver(Object requestManager) {
+        try {
+            return (Object) Handles.MANAGER_GET_RETRYING_RESOLVER.invokeExact(requestManager);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Collection<?> getPlayerAssignedRequests(Object playerResolver) {
+        try {
+            return (Collection<?>) (Object) Handles.PLAYER_RESOLVER_GET_ASSIGNED.invokeExact(playerResolver);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Collection<?> getRetryingAssignedRequests(Object retryingResolver) {
+        try {
+            return (Collection<?>) (Object) Handles.RETRYING_RESOLVER_GET_ASSIGNED.invokeExact(retryingResolver);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getRequestForToken(Object requestManager, Object token) {
+        try {
+            return (Object) Handles.MANAGER_GET_REQUEST_FOR_TOKEN.invokeExact(requestManager, token);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getResolverForRequest(Object requestManager, Object token) {
+        try {
+            return (Object) Handles.MANAGER_GET_RESOLVER_FOR_REQUEST.invokeExact(requestManager, token);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static void updateRequestState(Object requestManager, Object token, Object state) {
+        try {
+            Object ignored = (Object) Handles.MANAGER_UPDATE_REQUEST_STATE.invokeExact(requestManager, token, state);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Requests made by a single requester. The request handler is an implementation detail of
+     * the request manager, so this is bound per runtime class on first use rather than up front.
+     */
+    public static Collection<?> getRequestsMadeByRequester(Object requestManager, Object requester) {
+        try {
+            MethodHandle getHandler = Handles.GET_REQUEST_HANDLER.get(requestManager.getClass());
+            if (getHandler == null) return Collections.emptyList();
+            Object requestHandler = (Object) getHandler.invokeExact(requestManager);
+            if (requestHandler == null) return Collections.emptyList();
+            MethodHandle getRequests = Handles.GET_REQUESTS_MADE_BY_REQUESTER.get(requestHandler.getClass());
+            if (getRequests == null) return Collections.emptyList();
+            Collection<?> requests = (Collection<?>) (Object) getRequests.invokeExact(requestHandler, requester);
+            return requests != null ? requests : Collections.emptyList();
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Every request the manager holds, token to request, read from its identities store in one
+     * call. Like the request handler this is an implementation detail, bound per runtime class.
+     *
+     * @return null if the manager has no identities store
+     */
+    public static Map<?, ?> getAllRequests(Object requestManager) {
+        try {
+            MethodHandle getStore = Handles.GET_REQUEST_IDENTITIES_DATA_STORE.get(requestManager.getClass());
+            if (getStore == null) return null;
+            Object store = (Object) getStore.invokeExact(requestManager);
+            if (store == null) return null;
+            MethodHandle getIdentities = Handles.GET_IDENTITIES.get(store.getClass());
+            if (getIdentities == null) return null;
+            return (Map<?, ?>) (Object) getIdentities.invokeExact(store);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // --- Token ---
+
+    /**
+     * @return the token's identifier, a UUID for standard tokens
+     */
+    public static Object getTokenIdentifier(Object token) {
+        try {
+            return (Object) Handles.TOKEN_GET_IDENTIFIER.invokeExact(token);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // --- Request ---
+
+    public static Object getRequestId(Object request) {
+        try {
+            return (Object) Handles.REQUEST_GET_ID.invokeExact(request);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getRequestState(Object request) {
+        try {
+            return (Object) Handles.REQUEST_GET_STATE.invokeExact(request);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getRequester(Object request) {
+        try {
+            return (Object) Handles.REQUEST_GET_REQUESTER.invokeExact(request);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getRequestable(Object request) {
+        try {
+            return (Object) Handles.REQUEST_GET_REQUEST.invokeExact(request);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static List<ItemStack> getDisplayStacks(Object request) {
+        try {
+            return (List<ItemStack>) (Object) Handles.REQUEST_GET_DISPLAY_STACKS.invokeExact(request);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * @return the requestable's count if it is an IDeliverable, otherwise 1
+     */
+    public static int getRequestCount(Object requestable) {
+        if (!Handles.I_DELIVERABLE.isInstance(requestable)) {
+            return 1;
+        }
+        try {
+            return (int) (Object) Handles.DELIVERABLE_GET_COUNT.invokeExact(requestable);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static boolean isDeliverable(Object requestable) {
+        return Handles.I_DELIVERABLE.isInstance(requestable);
+    }
+
+    /**
+     * @param name a RequestState constant name, e.g. "RESOLVED"
+     * @return the matching RequestState constant, or null
+     */
+    public static Object requestState(String name) {
+        return Handles.REQUEST_STATES.get(name);
+    }
+
+    // --- Requester, building and citizen ---
+
+    @SuppressWarnings("unchecked")
+    public static Optional<Object> getBuilding(Object requester, Object requestManager, Object token) {
+        try {
+            return (Optional<Object>) (Object) Handles.REQUESTER_GET_BUILDING.invokeExact(requester, requestManager, token);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static boolean isBuilding(Object building) {
+        return Handles.I_BUILDING.isInstance(building);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Optional<Object> getCitizenForRequest(Object building, Object token) {
+        try {
+            return (Optional<Object>) (Object) Handles.BUILDING_GET_CITIZEN_FOR_REQUEST.invokeExact(building, token);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * @return the building's position, the key in {@link #getBuildings}, or null if its class has
+     *         no getPosition()
+     */
+    public static Object getBuildingPosition(Object building) {
+        try {
+            MethodHandle getPosition = Handles.GET_POSITION.get(building.getClass());
+            return getPosition == null ? null : (Object) getPosition.invokeExact(building);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Set<?> getAllAssignedCitizens(Object building) {
+        try {
+            return (Set<?>) (Object) Handles.BUILDING_GET_ALL_ASSIGNED_CITIZEN.invokeExact(building);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static String getCitizenName(Object citizen) {
+        try {
+            return (String) (Object) Handles.CITIZEN_GET_NAME.invokeExact(citizen);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static Object getCitizenInventory(Object citizen) {
+        try {
+            return (Object) Handles.CITIZEN_GET_INVENTORY.invokeExact(citizen);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * Best-effort display name for a requester; not every requester implementation has one.
+     */
+    public static String getRequesterName(Object requester) {
+        try {
+            MethodHandle getName = Handles.GET_NAME.get(requester.getClass());
+            if (getName == null) return null;
+            Object name = (Object) getName.invokeExact(requester);
+            return name != null ? String.valueOf(name) : null;
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    // --- Utilities ---
+
+    public static ItemStack addItemStackToItemHandlerWithResult(Object itemHandler, ItemStack stack) {
+        try {
+            return (ItemStack) (Object) Handles.INVENTORY_ADD_WITH_RESULT.invokeExact(itemHandler, (Object) stack);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    public static boolean isItemStackEmpty(ItemStack stack) {
+        try {
+            return (boolean) (Object) Handles.ITEM_STACK_UTILS_IS_EMPTY.invokeExact((Object) stack);
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    private static RuntimeException propagate(Throwable t) {
+        if (t instanceof RuntimeException re) return re;
+        if (t instanceof Error err) throw err;
+        return new IllegalStateException(t);
+    }
+
+    /**
+     * Holder for the resolved handles. Class initialization is the "bind once" step: it runs on
+     * the first {@link MineColoniesBindings#bind()} call and never again.
+     */
+    private static final class Handles {
+        static final MethodHandle API_GET_INSTANCE;
+        static final MethodHandle API_GET_COLONY_MANAGER;
+        static final MethodHandle COLONY_MANAGER_GET_ALL_COLONIES;
+
+        static final MethodHandle COLONY_GET_ID;
+        static final MethodHandle COLONY_GET_REQUEST_MANAGER;
+        static final MethodHandle COLONY_GET_BUILDING_MANAGER;
+        static final MethodHandle COLONY_GET_CITIZEN_MANAGER;
+        static final MethodHandle BUILDING_MANAGER_GET_BUILDINGS;
+        static final MethodHandle CITIZEN_MANAGER_GET_CITIZENS;
+
+        static final MethodHandle MANAGER_GET_PLAYER_RESOLVER;
+        static final MethodHandle MANAGER_GET_RETRYING_RESOLVER;
+        static final MethodHandle MANAGER_GET_REQUEST_FOR_TOKEN;
+        static final MethodHandle MANAGER_GET_RESOLVER_FOR_REQUEST;
+        static final MethodHandle MANAGER_UPDATE_REQUEST_STATE;
+        static final MethodHandle PLAYER_RESOLVER_GET_ASSIGNED;
+        static final MethodHandle RETRYING_RESOLVER_GET_ASSIGNED;
+
+        static final MethodHandle TOKEN_GET_IDENTIFIER;
+
+        static final MethodHandle REQUEST_GET_ID;
+        static final MethodHandle REQUEST_GET_STATE;
+        static final MethodHandle REQUEST_GET_REQUESTER;
+        static final MethodHandle REQUEST_GET_REQUEST;
+        static final MethodHandle REQUEST_GET_DISPLAY_STACKS;
+        static final MethodHandle DELIVERABLE_GET_COUNT;
+
+        static final MethodHandle REQUESTER_GET_BUILDING;
+        static final MethodHandle BUILDING_GET_CITIZEN_FOR_REQUEST;
+        static final MethodHandle BUILDING_GET_ALL_ASSIGNED_CITIZEN;
+        static final MethodHandle CITIZEN_GET_NAME;
+        static final MethodHandle CITIZEN_GET_INVENTORY;
+
+        static final MethodHandle INVENTORY_ADD_WITH_RESULT;
+        static final MethodHandle ITEM_STACK_UTILS_IS_EMPTY;
+
+        static final Class<?> I_DELIVERABLE;
+        static final Class<?> I_BUILDING;
+        static final Map<String, Object> REQUEST_STATES;
+
+        static final ClassValue<MethodHandle> GET_REQUEST_HANDLER;
+        static final ClassValue<MethodHandle> GET_REQUESTS_MADE_BY_REQUESTER;
+        static final ClassValue<MethodHandle> GET_REQUEST_IDENTITIES_DATA_STORE;
+        static final ClassValue<MethodHandle> GET_IDENTITIES;
+        static final ClassValue<MethodHandle> GET_NAME;
+        static final ClassValue<MethodHandle> GET_POSITION;
+
+        static {
+            Resolver r = new Resolver();
+
+            Class<?> api = r.type("com.minecolonies.api.IMinecoloniesAPI");
+            Class<?> colony = r.type("com.minecolonies.api.colony.IColony");
+            Class<?> token = r.type("com.minecolonies.api.colony.requestsystem.token.IToken");
+            Class<?> requestState = r.type("com.minecolonies.api.colony.requestsystem.request.RequestState");
+            Class<?> requester = r.type("com.minecolonies.api.colony.requestsystem.requester.IRequester");
+            Class<?> citizenData = r.type("com.minecolonies.api.colony.ICitizenData");
+            Class<?> inventoryUtils = r.type("com.minecolonies.api.util.InventoryUtils");
+            Class<?> itemStackUtils = r.type("com.minecolonies.api.util.ItemStackUtils");
+            I_DELIVERABLE = r.type("com.minecolonies.api.colony.requestsystem.requestable.IDeliverable");
+            I_BUILDING = r.type("com.minecolonies.api.colony.buildings.IBuilding");
+
+            API_GET_INSTANCE = r.staticMethod(api, "getInstance");
+            API_GET_COLONY_MANAGER = r.virtual(api, "getColonyManager");
+            COLONY_MANAGER_GET_ALL_COLONIES = r.virtual(r.returnType(api, "getColonyManager"), "getAllColonies");
+
+            COLONY_GET_ID = r.virtual(colony, "getID");
+            COLONY_GET_REQUEST_MANAGER = r.virtual(colony, "getRequestManager");
+            COLONY_GET_BUILDING_MANAGER = r.virtual(colony, "getBuildingManager");
+            COLONY_GET_CITIZEN_MANAGER = r.virtual(colony, "getCitizenManager");
+            BUILDING_MANAGER_GET_BUILDINGS = r.virtual(r.returnType(colony, "getBuildingManager"), "getBuildings");
+            CITIZEN_MANAGER_GET_CITIZENS = r.virtual(r.returnType(colony, "getCitizenManager"), "getCitizens");
+
+            Class<?> requestManager = r.returnType(colony, "getRequestManager");
+            MANAGER_GET_PLAYER_RESOLVER = r.virtual(requestManager, "getPlayerResolver");
+            MANAGER_GET_RETRYING_RESOLVER = r.virtual(requestManager, "getRetryingRequestResolver");
+            MANAGER_GET_REQUEST_FOR_TOKEN = r.virtual(requestManager, "getRequestForToken", token);
+            MANAGER_GET_RESOLVER_FOR_REQUEST = r.virtual(requestManager, "getResolverForRequest", token);
+            MANAGER_UPDATE_REQUEST_STATE = r.virtual(requestManager, "updateRequestState", token, requestState);
+            PLAYER_RESOLVER_GET_ASSIGNED = r.virtual(r.returnType(requestManager, "getPlayerResolver"), "getAllAssignedRequests");
+            RETRYING_RESOLVER_GET_ASSIGNED = r.virtual(r.returnType(requestManager, "getRetryingRequestResolver"), "getAllAssignedRequests");
+
+            TOKEN_GET_IDENTIFIER = r.virtual(token, "getIdentifier");
+
+            Class<?> request = r.returnType(requestManager, "getRequestForToken", token);
+            REQUEST_GET_ID = r.virtual(request, "getId");
+            REQUEST_GET_STATE = r.virtual(request, "getState");
+            REQUEST_GET_REQUESTER = r.virtual(request, "getRequester");
+            REQUEST_GET_REQUEST = r.virtual(request, "getRequest");
+            REQUEST_GET_DISPLAY_STACKS = r.virtual(request, "getDisplayStacks");
+            DELIVERABLE_GET_COUNT = r.virtual(I_DELIVERABLE, "getCount");
+
+            REQUESTER_GET_BUILDING = r.virtual(requester, "getBuilding", requestManager, token);
+            BUILDING_GET_CITIZEN_FOR_REQUEST = r.virtual(I_BUILDING, "getCitizenForRequest", token);
+            BUILDING_GET_ALL_ASSIGNED_CITIZEN = r.virtual(I_BUILDING, "getAllAssignedCitizen");
+            CITIZEN_GET_NAME = r.virtual(citizenData, "getName");
+            CITIZEN_GET_INVENTORY = r.virtual(citizenData, "getInventory");
+
+            INVENTORY_ADD_WITH_RESULT = r.staticMethodTakingItemStack(inventoryUtils, "addItemStackToItemHandlerWithResult", 2);
+            ITEM_STACK_UTILS_IS_EMPTY = r.staticMethod(itemStackUtils, "isEmpty", ItemStack.class);
+
+            REQUEST_STATES = r.enumConstants(requestState);
+            r.require(REQUEST_STATES.containsKey("RESOLVED"), "RequestState.RESOLVED");
+
+            GET_REQUEST_HANDLER = new DynamicMethod("getRequestHandler");
+            GET_REQUESTS_MADE_BY_REQUESTER = new DynamicMethod("getRequestsMadeByRequester", requester);
+            GET_REQUEST_IDENTITIES_DATA_STORE = new DynamicMethod("getRequestIdentitiesDataStore");
+            GET_IDENTITIES = new DynamicMethod("getIdentities");
+            GET_NAME = new DynamicMethod("getName");
+            GET_POSITION = new DynamicMethod("getPosition");
+
+            r.verify();
+        }
+
+        static void touch() {
+        }
+    }
+
+    /**
+     * Collects every missing class or method instead of stopping at the first one, so a
+     * MineColonies API change produces one complete report.
+     */
+    private static final class Resolver {
+        private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        private final Set<String> missing = new LinkedHashSet<>();
+
+        Class<?> type(String name) {
+            try {
+                return Class.forName(name);
+            } catch (ClassNotFoundException | LinkageError e) {
+                missing.add("class " + name);
+                return null;
+            }
+        }
+
+        Class<?> returnType(Class<?> owner, String name, Class<?>... params) {
+            Method method = find(owner, name, params);
+            return method != null ? method.getReturnType() : null;
+        }
+
+        MethodHandle virtual(Class<?> owner, String name, Class<?>... params) {
+            Method method = find(owner, name, params);
+            return method != null ? unreflect(method, params.length + 1) : null;
+        }
+
+        MethodHandle staticMethod(Class<?> owner, String name, Class<?>... params) {
+            Method method = find(owner, name, params);
+            return method != null ? unreflect(method, params.length) : null;
+        }
+
+        /**
+         * Finds an overloaded static method by name and arity whose last parameter is an ItemStack.
+         */
+        MethodHandle staticMethodTakingItemStack(Class<?> owner, String name, int parameterCount) {
+            if (owner == null) {
+                missing.add(name + " (owner class missing)");
+                return null;
+            }
+            for (Method method : owner.getDeclaredMethods()) {
+                if (method.getName().equals(name)
+                        && Modifier.isStatic(method.getModifiers())
+                        && method.getParameterCount() == parameterCount
+                        && method.getParameterTypes()[parameterCount - 1] == ItemStack.class) {
+                    return unreflect(method, parameterCount);
+                }
+            }
+            missing.add(owner.getName() + "." + name + "(..., ItemStack)");
+            return null;
+        }
+
+        Map<String, Object> enumConstants(Class<?> enumType) {
+            Map<String, Object> constants = new HashMap<>();
+            if (enumType != null && enumType.getEnumConstants() != null) {
+                for (Object constant : enumType.getEnumConstants()) {
+                    constants.put(((Enum<?>) constant).name(), constant);
+                }
+            }
+            return Collections.unmodifiableMap(constants);
+        }
+
+        void require(boolean condition, String description) {
+            if (!condition) {
+                missing.add(description);
+            }
+        }
+
+        void verify() {
+            if (!missing.isEmpty()) {
+                StringBuilder report = new StringBuilder("Missing MineColonies bindings (" + missing.size() + "):");
+                for (String entry : missing) {
+                    report.append("\n  - ").append(entry);
+                }
+                throw new IllegalStateException(report.toString());
+            }
+        }
+
+        private Method find(Class<?> owner, String name, Class<?>... params) {
+            if (owner == null) {
+                missing.add(name + " (owner class missing)");
+                return null;
+            }
+            for (Class<?> param : params) {
+                if (param == null) {
+                    missing.add(owner.getName() + "." + name + " (parameter class missing)");
+                    return null;
+                }
+            }
+            try {
+                return owner.getMethod(name, params);
+            } catch (NoSuchMethodException e) {
+                missing.add(owner.getName() + "." + name);
+                return null;
+            }
+        }
+
+        private MethodHandle unreflect(Method method, int arity) {
+            try {
+                return lookup.unreflect(method).asType(MethodType.genericMethodType(arity));
+            } catch (IllegalAccessException e) {
+                missing.add(method.getDeclaringClass().getName() + "." + method.getName() + " (not accessible)");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Lazily binds a public no-arg or fixed-signature method on whatever runtime class is passed
+     * in. Used for members that only exist on implementation classes; a missing member maps to null.
+     */
+    private static final class DynamicMethod extends ClassValue<MethodHandle> {
+        private final String name;
+        private final Class<?>[] params;
+
+        DynamicMethod(String name, Class<?>... params) {
+            this.name = name;
+            this.params = params;
+        }
+
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                Method method = type.getMethod(name, params);
+                method.setAccessible(true);
+                return MethodHandles.lookup().unreflect(method).asType(MethodType.genericMethodType(params.length + 1));
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOGGER.debug("[mc_mod] {} has no usable {} method: {}", type.getName(), name, e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.tags.TagKey;
+import net.minecraft.world.item.Item;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * A compiled request filter, used for the scheduled cycles (from the config) and by
+ * {@code /mcmod autofullfill custom}.
+ *
+ * A filter is a list of clauses, {@code key=value[,value...]}, separated by spaces or ';'. All
+ * clauses must match; any value of a clause may. A space only starts a new clause if a key
+ * follows, so {@code citizen=Bob Builder} works. Keys:
+ * <ul>
+ *   <li>{@code colony=1,3} colony IDs</li>
+ *   <li>{@code state=IN_PROGRESS,FOLLOWUP_IN_PROGRESS} request state names</li>
+ *   <li>{@code resolver=StandardPlayerRequestResolver} resolver class, simple or full name</li>
+ *   <li>{@code building=builder,warehouse} building class, with or without "Building", any case</li>
+ *   <li>{@code citizen=Bob Builder} citizen name, any case</li>
+ *   <li>{@code item=minecraft:cobblestone,#minecraft:logs} item IDs, or item tags after '#'</li>
+ *   <li>{@code count=1..64} items still missing: {@code n}, {@code min..}, {@code ..max} or {@code min..max}</li>
+ * </ul>
+ *
+ * Every clause compiles to a matcher that doesn't compare strings per request: colonies to a
+ * {@link BitSet}, states to a bitmask over the enum ordinals, resolver and building classes to a
+ * {@link ClassValue}, so each class is checked once, and item IDs to an identity set. States and
+ * items are looked up the first time they are needed, since the config is read before MineColonies
+ * and the item registry are ready. The {@code accepts*} methods mirror the order in which planning
+ * looks things up, cheapest first, so a request is rejected before the expensive lookups.
+ *
+ * Filters are immutable and safe to share between the discovery workers.
+ */
+public final class RequestFilter {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    /** What the scheduled cycles fulfill unless the config says otherwise */
+    public static final String DEFAULT = "state=IN_PROGRESS,FOLLOWUP_IN_PROGRESS resolver=StandardPlayerRequestResolver,StandardRetryingRequestResolver";
+
+    private static final List<String> KEYS = List.of("colony", "state", "resolver", "building", "citizen", "item", "count");
+
+    /** Matches every request */
+    public static final RequestFilter ANY = parse("");
+
+    private final String text;
+
+    private final BitSet colonies;
+    private final Set<String> stateNames;
+    private final Set<String> resolverNames;
+    private final Set<String> buildingNames;
+    private final Set<String> citizenNames;
+    private final Set<String> itemNames;
+    private final int minCount;
+    private final int maxCount;
+
+    // Compiled on first use
+    private volatile boolean statesResolved = false;
+    private long stateMask = 0;
+    private volatile Set<Item> items = null;
+    private volatile List<TagKey<Item>> tags = null;
+
+    private final ClassValue<Boolean> resolverMatches = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return resolverNames.contains(type.getSimpleName()) || resolverNames.contains(type.getName());
+        }
+    };
+
+    private final ClassValue<Boolean> buildingMatches = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return buildingNames.contains(normalizeBuilding(type.getSimpleName()));
+        }
+    };
+
+    private RequestFilter(String text, Map<String, List<String>> clauses) {
+        this.text = text;
+        this.colonies = parseColonies(clauses.get("colony"));
+        this.stateNames = toSet(clauses.get("state"), value -> value.toUpperCase(Locale.ROOT));
+        this.resolverNames = toSet(clauses.get("resolver"), value -> value);
+        this.buildingNames = toSet(clauses.get("building"), RequestFilter::normalizeBuilding);
+        this.citizenNames = toSet(clauses.get("citizen"), value -> value.toLowerCase(Locale.ROOT));
+        this.itemNames = toSet(clauses.get("item"), value -> value.toLowerCase(Locale.ROOT));
+        int[] range = parseCount(clauses.get("count"));
+        this.minCount = range[0];
+        this.maxCount = range[1];
+    }
+
+    /**
+     * Compile a filter. An empty text matches every request.
+     *
+     * @throws IllegalArgumentException with a message fit for chat if the text is not a valid filter
+     */
+    public static RequestFilter parse(String text) {
+        String trimmed = text == null ? "" : text.trim();
+        Map<String, List<String>> clauses = new LinkedHashMap<>();
+        if (!trimmed.isEmpty()) {
+            for (String clause : trimmed.split("\\s*;\\s*|\\s+(?=[A-Za-z]+=)")) {
+                if (clause.isBlank()) continue;
+                int equals = clause.indexOf('=');
+                if (equals <= 0) {
+                    throw new IllegalArgumentException("Expected key=value, got '" + clause + "'");
+                }
+                String key = clause.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+                if (!KEYS.contains(key)) {
+                    throw new IllegalArgumentException("Unknown filter key '" + key + "', expected one of " + KEYS);
+                }
+                List<String> values = clauses.computeIfAbsent(key, k -> new ArrayList<>());
+                for (String value : clause.substring(equals + 1).split(",")) {
+                    if (!value.isBlank()) values.add(value.trim());
+                }
+                if (values.isEmpty()) {
+                    throw new IllegalArgumentException("No value for '" + key + "'");
+                }
+            }
+        }
+        RequestFilter filter = new RequestFilter(trimmed, clauses);
+        filter.checkStates();
+        return filter;
+    }
+
+    /**
+     * @return the text the filter was parsed from, empty for {@link #ANY}
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * The filter text as given, for display.
+     */
+    @Override
+    public String toString() {
+        return text.isEmpty() ? "(everything)" : text;
+    }
+
+    public boolean acceptsColony(Object colony) {
+        if (colonies == null) {
+            return true;
+        }
+        int colonyId = MineColoniesBindings.getColonyId(colony);
+        return colonyId >= 0 && colonies.get(colonyId);
+    }
+
+    public boolean acceptsState(Object state) {
+        if (stateNames == null) {
+            return true;
+        }
+        if (state instanceof Enum<?> constant && constant.ordinal() < Long.SIZE) {
+            if (!statesResolved) {
+                resolveStates();
+            }
+            return (stateMask & (1L << constant.ordinal())) != 0;
+        }
+        return state != null && stateNames.contains(state.toString());
+    }
+
+    /**
+     * @param resolver the request's resolver, or null if it has none
+     */
+    public boolean acceptsResolver(Object resolver) {
+        return resolverNames == null || (resolver != null && resolverMatches.get(resolver.getClass()));
+    }
+
+    public boolean acceptsResolverClass(Class<?> resolverClass) {
+        return resolverNames == null || (resolverClass != null && resolverMatches.get(resolverClass));
+    }
+
+    public boolean acceptsBuilding(Object building) {
+        return buildingNames == null || (building != null && buildingMatches.get(building.getClass()));
+    }
+
+    public boolean acceptsCitizen(String citizenName) {
+        return citizenNames == null || (citizenName != null && citizenNames.contains(citizenName.toLowerCase(Locale.ROOT)));
+    }
+
+    public boolean acceptsCount(int count) {
+        return count >= minCount && count <= maxCount;
+    }
+
+    /**
+     * @param item what the request asks for, may be null
+     */
+    public boolean acceptsItem(RequestedItem item) {
+        if (itemNames == null) {
+            return true;
+        }
+        if (item == null) {
+            return false;
+        }
+        Set<Item> resolvedItems = items;
+        List<TagKey<Item>> resolvedTags = tags;
+        if (resolvedItems == null || resolvedTags == null) {
+            resolveItems();
+            resolvedItems = items;
+            resolvedTags = tags;
+        }
+        if (resolvedItems.contains(item.item())) {
+            return true;
+        }
+        for (TagKey<Item> tag : resolvedTags) {
+            if (item.view().is(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every clause against a plan, for plans reused from the cache.
+     */
+    public boolean accepts(FulfillmentPlan plan) {
+        return acceptsColony(plan.colony())
+            && acceptsState(plan.state())
+            && acceptsResolverClass(plan.resolverClass())
+            && acceptsBuilding(plan.building())
+            && acceptsCitizen(plan.citizenName())
+            && acceptsCount(plan.count())
+            && acceptsItem(plan.item());
+    }
+
+    /**
+     * Reject unknown state names right away when MineColonies is already bound, so a typo in a
+     * command is reported instead of silently matching nothing.
+     */
+    private void checkStates() {
+        if (stateNames == null || !MineColoniesBindings.isBound()) {
+            return;
+        }
+        for (String name : stateNames) {
+            if (MineColoniesBindings.requestState(name) == null) {
+                throw new IllegalArgumentException("Unknown request state '" + name + "'");
+            }
+        }
+    }
+
+    private synchronized void resolveStates() {
+        if (statesResolved) {
+            return;
+        }
+        long mask = 0;
+        for (String name : stateNames) {
+            Object state = MineColoniesBindings.requestState(name);
+            if (state instanceof Enum<?> constant && constant.ordinal() < Long.SIZE) {
+                mask |= 1L << constant.ordinal();
+            } else {
+                LOGGER.warn("[mc_mod] Filter '{}': unknown request state '{}'", text, name);
+            }
+        }
+        stateMask = mask;
+        statesResolved = true;
+    }
+
+    private synchronized void resolveItems() {
+        if (items != null && tags != null) {
+            return;
+        }
+        Set<Item> resolvedItems = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<TagKey<Item>> resolvedTags = new ArrayList<>();
+        for (String name : itemNames) {
+            boolean tag = name.startsWith("#");
+            ResourceLocation location = ResourceLocation.tryParse(tag ? name.substring(1) : name);
+            if (location == null) {
+                LOGGER.warn("[mc_mod] Filter '{}': invalid item '{}'", text, name);
+            } else if (tag) {
+                resolvedTags.add(TagKey.create(Registries.ITEM, location));
+            } else if (BuiltInRegistries.ITEM.containsKey(location)) {
+                resolvedItems.add(BuiltInRegistries.ITEM.get(location));
+            } else {
+                LOGGER.warn("[mc_mod] Filter '{}': unknown item '{}'", text, name);
+            }
+        }
+        tags = resolvedTags;
+        items = resolvedItems;
+    }
+
+    private static String normalizeBuilding(String name) {
+        String lower = name.toLowerCase(Locale.ROOT);
+        return lower.startsWith("building") ? lower.substring("building".length()) : lower;
+    }
+
+    private static Set<String> toSet(List<String> values, UnaryOperator<String> normalize) {
+        if (values == null) {
+            return null;
+        }
+        Set<String> set = new LinkedHashSet<>();
+        for (String value : values) {
+            set.add(normalize.apply(value));
+        }
+        return Collections.unmodifiableSet(set);
+    }
+
+    private static BitSet parseColonies(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        BitSet set = new BitSet();
+        for (String value : values) {
+            int id = parseInt("colony", value);
+            if (id < 0) {
+                throw new IllegalArgumentException("Colony IDs can't be negative: " + value);
+            }
+            set.set(id);
+        }
+        return set;
+    }
+
+    /**
+     * @return {min, max}, or the full int range if there is no count clause
+     */
+    private static int[] parseCount(List<String> values) {
+        if (values == null) {
+            return new int[] {Integer.MIN_VALUE, Integer.MAX_VALUE};
+        }
+        if (values.size() != 1) {
+            throw new IllegalArgumentException("count takes a single range, e.g. count=1..64");
+        }
+        String value = values.get(0);
+        int dots = value.indexOf("..");
+        if (dots < 0) {
+            int exact = parseInt("count", value);
+            return new int[] {exact, exact};
+        }
+        String min = value.substring(0, dots).trim();
+        String max = value.substring(dots + 2).trim();
+        int[] range = {
+            min.isEmpty() ? Integer.MIN_VALUE : parseInt("count", min),
+            max.isEmpty() ? Integer.MAX_VALUE : parseInt("count", max)
+        };
+        if (range[0] > range[1]) {
+            throw new IllegalArgumentException("Empty count range: " + value);
+        }
+        return range;
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number for '" + key + "': " + value);
+        }
+    }
+}
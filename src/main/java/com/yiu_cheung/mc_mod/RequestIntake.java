@@ -0,0 +1,142 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Incremental request intake.
+ *
+ * Remembers the tokens last seen for each colony and compares them with the tokens currently
+ * assigned to the player and retrying resolvers. Only tokens that were not seen before are
+ * queued, so a colony without new requests costs a few handle calls and one set lookup per open
+ * token, and a new request is picked up within half a second instead of the next polling
+ * interval. Requests that stay open are still retried by the regular full cycle.
+ *
+ * A colony is compared at most once every {@value #SCAN_INTERVAL_TICKS} scans, and a scan stops
+ * at the caller's deadline, after at least one colony; a cursor remembers where the next scan
+ * picks up. A large colony with a stable backlog is therefore walked twice a second at most, and
+ * many colonies are spread over several ticks within the tick budget.
+ */
+public class RequestIntake {
+
+    public enum Mode {
+        /** Diff assigned tokens every tick and queue only new ones, plus the full cycle as a retry pass. */
+        INCREMENTAL,
+        /** Only the full cycle every checkTimeSeconds, as before. */
+        POLLING;
+
+        /**
+         * @return the matching mode, or null if the name is not recognised
+         */
+        public static Mode parse(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * A newly assigned token waiting to be processed.
+     */
+    public record PendingToken(Object colony, Object requestManager, Object token) {
+    }
+
+    // Scans of one colony are at least this many scans (ticks) apart
+    private static final int SCAN_INTERVAL_TICKS = 10;
+
+    /**
+     * What the intake knows about one colony.
+     */
+    private static final class KnownColony {
+        final Set<Object> tokens = new HashSet<>();
+        long scannedAt = -SCAN_INTERVAL_TICKS;
+    }
+
+    // Colony ID -> tokens seen on the last scan; only touched on the server thread
+    private final Map<Integer, KnownColony> knownTokens = new HashMap<>();
+    // Tokens assigned in the colony being scanned, reused across colonies and ticks
+    private final Set<Object> scanned = new HashSet<>();
+    private long scans = 0;
+    // Position in the colony list where the next scan starts
+    private int cursor = 0;
+
+    /**
+     * Compare the assigned tokens of the colonies that are due with the last scan and queue the
+     * new ones. Called once per tick.
+     *
+     * @param deadlineNanos no further colony is started after this, though one always is
+     * @return number of tokens queued
+     */
+    public int scan(Collection<?> colonies, Deque<PendingToken> queue, long deadlineNanos) {
+        scans++;
+        List<?> list = colonies instanceof List<?> ordered ? ordered : new ArrayList<>(colonies);
+        RequestTraversal traversal = RequestTraversal.of(list);
+        int count = list.size();
+        int queued = 0;
+        boolean scannedAny = false;
+        for (int i = 0; i < count; i++) {
+            int index = (cursor + i) % count;
+            Object colony = list.get(index);
+            KnownColony known = knownTokens.computeIfAbsent(MineColoniesBindings.getColonyId(colony), id -> new KnownColony());
+            if (scans - known.scannedAt < SCAN_INTERVAL_TICKS) {
+                continue;
+            }
+            if (scannedAny && System.nanoTime() >= deadlineNanos) {
+                cursor = index;
+                break;
+            }
+            known.scannedAt = scans;
+            scannedAny = true;
+            RequestTraversal.ColonyView view = traversal.open(colony);
+            if (view != null) {
+                queued += scanColony(view, known.tokens, queue);
+            }
+        }
+
+        // Drop colonies that no longer exist
+        if (knownTokens.size() > colonies.size()) {
+            Set<Integer> liveIds = new HashSet<>();
+            for (Object colony : colonies) {
+                liveIds.add(MineColoniesBindings.getColonyId(colony));
+            }
+            knownTokens.keySet().retainAll(liveIds);
+        }
+        return queued;
+    }
+
+    private int scanColony(RequestTraversal.ColonyView view, Set<Object> known, Deque<PendingToken> queue) {
+        Object colony = view.colony();
+        Object requestManager = view.requestManager();
+        int[] added = {0};
+        scanned.clear();
+        RequestTraversal.forEachAssignedToken(requestManager, token -> {
+            // A token assigned to both resolvers comes twice; count it once
+            if (scanned.add(token) && known.add(token)) {
+                queue.add(new PendingToken(colony, requestManager, token));
+                added[0]++;
+            }
+        });
+
+        // Some remembered tokens are no longer assigned; forget them so they are picked up
+        // again if they are ever re-assigned
+        if (scanned.size() != known.size()) {
+            known.retainAll(scanned);
+        }
+        scanned.clear();
+        return added[0];
+    }
+
+    public void reset() {
+        knownTokens.clear();
+        cursor = 0;
+    }
+}
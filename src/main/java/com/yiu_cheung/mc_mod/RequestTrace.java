@@ -0,0 +1,117 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional per-request trace: a compact binary trail of what happened to each request, kept in a
+ * ring buffer and dumped with {@code /mcmod trace dump}.
+ *
+ * An event is two longs: nanoseconds since tracing was turned on, and the event, one int argument
+ * (usually an item count) and the token's hash packed into one word. Recording is a volatile read
+ * while tracing is off; while it is on it adds an atomic increment and two array writes, and never
+ * allocates. Tracing can be limited to a single request by its token hash, as shown in the dump.
+ *
+ * Writers don't lock, so a dump racing with discovery may show an event half-written; this is a
+ * debugging aid, not a log.
+ */
+public final class RequestTrace {
+
+    public enum Event {
+        PLANNED, PLAN_CACHED, FILTERED, NO_REQUESTER, NO_BUILDING, BACKING_OFF, STALE,
+        PARTIAL, RESOLVED, FAILED, DEAD_LETTERED, ERROR
+    }
+
+    // 16384 events, 256 KiB
+    private static final int CAPACITY = 1 << 14;
+    private static final long[] times = new long[CAPACITY];
+    private static final long[] words = new long[CAPACITY];
+    private static final AtomicLong next = new AtomicLong();
+
+    private static volatile boolean enabled = false;
+    private static volatile boolean filtered = false;
+    private static volatile int filterHash = 0;
+    private static volatile long origin = System.nanoTime();
+
+    private RequestTrace() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Start tracing every request, clearing the buffer.
+     */
+    public static void enable() {
+        filtered = false;
+        clear();
+        enabled = true;
+    }
+
+    /**
+     * Start tracing one request only, clearing the buffer.
+     */
+    public static void enable(int tokenHash) {
+        filterHash = tokenHash;
+        filtered = true;
+        clear();
+        enabled = true;
+    }
+
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static void clear() {
+        next.set(0);
+        origin = System.nanoTime();
+    }
+
+    /**
+     * @return the filtered token hash, or null if every request is traced
+     */
+    public static Integer getFilter() {
+        return filtered ? filterHash : null;
+    }
+
+    public static long getRecorded() {
+        return next.get();
+    }
+
+    public static void record(Event event, Object token) {
+        record(event, token, 0);
+    }
+
+    public static void record(Event event, Object token, int arg) {
+        if (!enabled) {
+            return;
+        }
+        int hash = token != null ? token.hashCode() : 0;
+        if (filtered && hash != filterHash) {
+            return;
+        }
+        int slot = (int) (next.getAndIncrement() & (CAPACITY - 1));
+        times[slot] = System.nanoTime() - origin;
+        words[slot] = ((long) event.ordinal() << 56) | ((long) (arg & 0xFFFFFF) << 32) | (hash & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Decode the most recent events, oldest first.
+     */
+    public static List<String> dump(int limit) {
+        long end = next.get();
+        long start = Math.max(0, Math.max(end - CAPACITY, end - limit));
+        List<String> lines = new ArrayList<>((int) (end - start));
+        Event[] events = Event.values();
+        for (long i = start; i < end; i++) {
+            int slot = (int) (i & (CAPACITY - 1));
+            long word = words[slot];
+            int ordinal = (int) (word >>> 56);
+            String event = ordinal < events.length ? events[ordinal].name() : "?";
+            lines.add(String.format("+%.3fms %s %08x %d", times[slot] / 1_000_000.0, event, (int) word, (word >>> 32) & 0xFFFFFF));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,252 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * The one walk from colonies to their requests that the cycles, the commands and the logger share.
+ *
+ * The walk goes colony, request manager, then the tokens assigned to the player and retrying
+ * resolvers, then the request behind each token. It is a lazy {@link Stream}: nothing is read
+ * from MineColonies until a sink pulls, a short-circuiting sink stops the walk early, and
+ * colonies rejected by the {@link RequestFilter} are dropped before their request manager is
+ * touched. State, resolver and the rest of the filter are left to the sink, which usually plans
+ * the request anyway.
+ *
+ * The walk can also be taken one colony at a time with {@link #open} and
+ * {@link #requests(ColonyView)}, so it can be resumed later, and {@link #inParallel} spreads such
+ * per-colony work over a dedicated ForkJoinPool, where it must only read. A colony or token that
+ * can't be read is skipped and logged instead of ending the walk.
+ */
+public final class RequestTraversal {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+        Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+        new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("mc_mod-discovery-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        },
+        null,
+        false);
+
+    /**
+     * A colony whose request manager could be read.
+     */
+    public record ColonyView(Object colony, Object requestManager) {
+    }
+
+    /**
+     * One request reached by the walk.
+     *
+     * @param token null for requests found through their requester
+     */
+    public record RequestView(Origin origin, Object colony, Object requestManager, Object token, Object request) {
+    }
+
+    public enum Origin {
+        /** Assigned to the player or retrying resolver */
+        ASSIGNED,
+        /** Made by a building */
+        BUILDING,
+        /** Made by a citizen */
+        CITIZEN
+    }
+
+    private final Collection<?> colonies;
+    private RequestFilter filter = RequestFilter.ANY;
+    private BiConsumer<Object, Object> onColony = null;
+    private Predicate<Object> tokenFilter = null;
+
+    private RequestTraversal(Collection<?> colonies) {
+        this.colonies = colonies;
+    }
+
+    public static RequestTraversal of(Collection<?> colonies) {
+        return new RequestTraversal(colonies);
+    }
+
+    /**
+     * Every colony MineColonies knows about; empty if the API isn't available.
+     */
+    public static RequestTraversal ofAllColonies() {
+        return new RequestTraversal(MineColoniesBindings.getAllColonies());
+    }
+
+    /**
+     * Drop colonies the filter rejects before reading anything else from them.
+     */
+    public RequestTraversal filter(RequestFilter filter) {
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Called with the colony and its request manager before the colony's requests are read.
+     */
+    public RequestTraversal onColony(BiConsumer<Object, Object> onColony) {
+        this.onColony = onColony;
+        return this;
+    }
+
+    /**
+     * Skip assigned tokens before their request is looked up.
+     */
+    public RequestTraversal tokens(Predicate<Object> tokenFilter) {
+        this.tokenFilter = tokenFilter;
+        return this;
+    }
+
+    public Stream<ColonyView> colonies() {
+        return colonies.stream()
+            .filter(filter::acceptsColony)
+            .map(this::openColony)
+            .filter(Objects::nonNull);
+    }
+
+    /**
+     * Requests assigned to the player and retrying resolvers of every colony.
+     */
+    public Stream<RequestView> requests() {
+        return colonies().flatMap(this::assignedRequests);
+    }
+
+    /**
+     * Requests made by each colony's buildings and citizens, whoever they're assigned to.
+     */
+    public Stream<RequestView> requestsByRequester() {
+        return colonies().flatMap(RequestTraversal::madeRequests);
+    }
+
+    /**
+     * One colony of the walk, if the filter accepts it and its request manager can be read.
+     *
+     * @return null otherwise
+     */
+    public ColonyView open(Object colony) {
+        return filter.acceptsColony(colony) ? openColony(colony) : null;
+    }
+
+    /**
+     * The requests assigned in one colony opened with {@link #open}. The tokens are read when
+     * this is called; their requests as the stream is pulled.
+     */
+    public Stream<RequestView> requests(ColonyView view) {
+        return assignedRequests(view);
+    }
+
+    /**
+     * Run the action for every item on the discovery pool and wait for all of them. A single
+     * item runs on the calling thread.
+     */
+    public static <T> void inParallel(Collection<T> items, Consumer<T> action) {
+        if (items.size() <= 1) {
+            items.forEach(action);
+            return;
+        }
+        POOL.submit(() -> items.parallelStream().forEach(action)).join();
+    }
+
+    /**
+     * Every token assigned to the player and retrying resolvers of one colony, each once, in
+     * resolver order.
+     */
+    public static Set<Object> assignedTokens(Object requestManager) {
+        Set<Object> tokens = new LinkedHashSet<>();
+        forEachAssignedToken(requestManager, tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Like {@link #assignedTokens} without collecting; a token assigned to both resolvers is
+     * passed twice.
+     */
+    public static void forEachAssignedToken(Object requestManager, Consumer<Object> action) {
+        try {
+            Collection<?> playerTokens = MineColoniesBindings.getPlayerAssignedRequests(
+                MineColoniesBindings.getPlayerResolver(requestManager));
+            Collection<?> retryingTokens = MineColoniesBindings.getRetryingAssignedRequests(
+                MineColoniesBindings.getRetryingResolver(requestManager));
+            if (playerTokens != null) playerTokens.forEach(action);
+            if (retryingTokens != null) retryingTokens.forEach(action);
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error collecting colony request tokens: {}", e.getMessage(), e);
+        }
+    }
+
+    private ColonyView openColony(Object colony) {
+        try {
+            Object requestManager = MineColoniesBindings.getRequestManager(colony);
+            if (requestManager == null) {
+                return null;
+            }
+            if (onColony != null) {
+                onColony.accept(colony, requestManager);
+            }
+            return new ColonyView(colony, requestManager);
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error reading requests of colony {}: {}", colony, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private Stream<RequestView> assignedRequests(ColonyView view) {
+        Stream<Object> tokens = assignedTokens(view.requestManager()).stream();
+        if (tokenFilter != null) {
+            tokens = tokens.filter(tokenFilter);
+        }
+        return tokens
+            .map(token -> lookup(view, token))
+            .filter(Objects::nonNull);
+    }
+
+    private static RequestView lookup(ColonyView view, Object token) {
+        try {
+            Object request = MineColoniesBindings.getRequestForToken(view.requestManager(), token);
+            return request == null ? null : new RequestView(Origin.ASSIGNED, view.colony(), view.requestManager(), token, request);
+        } catch (Exception e) {
+            LOGGER.debug("[mc_mod] Could not look up request for token {}: {}", token, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Requests made by one colony's buildings, then its citizens.
+     */
+    public static Stream<RequestView> madeRequests(ColonyView view) {
+        try {
+            Map<?, ?> buildings = MineColoniesBindings.getBuildings(MineColoniesBindings.getBuildingManager(view.colony()));
+            Collection<?> citizens = MineColoniesBindings.getCitizens(MineColoniesBindings.getCitizenManager(view.colony()));
+            return Stream.concat(
+                buildings.values().stream().flatMap(building -> madeBy(view, Origin.BUILDING, building)),
+                citizens.stream().flatMap(citizen -> madeBy(view, Origin.CITIZEN, citizen)));
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error reading requesters of colony {}: {}", view.colony(), e.getMessage(), e);
+            return Stream.empty();
+        }
+    }
+
+    private static Stream<RequestView> madeBy(ColonyView view, Origin origin, Object requester) {
+        return MineColoniesBindings.getRequestsMadeByRequester(view.requestManager(), requester).stream()
+            .map(request -> new RequestView(origin, view.colony(), view.requestManager(), null, request));
+    }
+}
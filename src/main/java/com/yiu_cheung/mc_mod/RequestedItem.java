@@ -0,0 +1,42 @@
+package com.yiu_cheung.mc_mod;
+
+import net.minecraft.world.item.Item;
+import net.minecraft.world.item.ItemStack;
+
+/**
+ * What a request asks for, read from its display stack without copying it.
+ *
+ * {@code view} is the request's own display stack. Nothing may modify it; it is only read when
+ * components have to be compared, and {@link #copyWithCount} is the one place a real stack is
+ * made, for the insert into the citizen's inventory. Item, max stack size and the item and
+ * components hash are read once, so comparing two requests for different items costs an identity
+ * check.
+ *
+ * @param count the full count the request asks for, before partial deliveries
+ */
+public record RequestedItem(ItemStack view, Item item, int count, int maxStackSize, int hash, String name) {
+
+    public static RequestedItem of(ItemStack view, int count) {
+        Item item = view.getItem();
+        return new RequestedItem(view, item, count, view.getMaxStackSize(), ItemStack.hashItemAndComponents(view), ItemNames.of(item));
+    }
+
+    /**
+     * @return true if both are the same item with the same components
+     */
+    public boolean matches(RequestedItem other) {
+        return other == this
+            || (item == other.item && hash == other.hash && ItemStack.isSameItemSameComponents(view, other.view));
+    }
+
+    /**
+     * @return true if the stack is non-empty and the same item with the same components
+     */
+    public boolean matches(ItemStack stack) {
+        return !stack.isEmpty() && stack.getItem() == item && ItemStack.isSameItemSameComponents(stack, view);
+    }
+
+    public ItemStack copyWithCount(int count) {
+        return view.copyWithCount(count);
+    }
+}
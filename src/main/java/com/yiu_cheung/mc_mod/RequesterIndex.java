@@ -0,0 +1,193 @@
+package com.yiu_cheung.mc_mod;
+
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Open requests of each colony grouped by requester, for the /mcmod listing.
+ *
+ * A colony is indexed in one pass over its request manager's identities store: one state read per
+ * request, and one requester read for requests not seen before. Later refreshes only apply the
+ * difference, dropping requests that were closed or removed and adding new ones, and resolving a
+ * request through autofulfill drops it right away. If the manager has no identities store, the
+ * colony falls back to asking every building and citizen for its requests.
+ *
+ * A colony is refreshed at most every {@value #REFRESH_MILLIS} ms, so paging through the listing
+ * doesn't walk the request system again. Only touched on the server thread.
+ */
+public final class RequesterIndex {
+    private static final Logger LOGGER = McMod.LOGGER;
+
+    private static final long REFRESH_MILLIS = 2000;
+
+    private static final Set<String> CLOSED_STATES = Set.of("RESOLVED", "COMPLETED", "RECEIVED", "CANCELLED", "OVERRULED", "FAILED");
+
+    /**
+     * One requester's open requests, token to request, in the order they were indexed. The map
+     * is the index's own; read it before the next refresh.
+     */
+    public record Row(int colonyId, String requester, Map<Object, Object> requests) {
+    }
+
+    private static final class Requester {
+        final String name;
+        final Map<Object, Object> requests = new LinkedHashMap<>();
+
+        Requester(String name) {
+            this.name = name;
+        }
+    }
+
+    private static final class ColonyIndex {
+        final Map<Object, Requester> byRequester = new LinkedHashMap<>();
+        final Map<Object, Object> requesterOfToken = new HashMap<>();
+        long refreshedNanos = 0;
+
+        void add(Object token, Object request, Object requester) {
+            Requester entry = byRequester.computeIfAbsent(requester, r -> new Requester(describeRequester(r)));
+            entry.requests.put(token, request);
+            requesterOfToken.put(token, requester);
+        }
+
+        void remove(Object token) {
+            Object requester = requesterOfToken.remove(token);
+            if (requester == null) {
+                return;
+            }
+            Requester entry = byRequester.get(requester);
+            if (entry != null) {
+                entry.requests.remove(token);
+                if (entry.requests.isEmpty()) {
+                    byRequester.remove(requester);
+                }
+            }
+        }
+
+        void clear() {
+            byRequester.clear();
+            requesterOfToken.clear();
+        }
+    }
+
+    // Colony ID -> index
+    private final Map<Integer, ColonyIndex> colonies = new HashMap<>();
+
+    /**
+     * Bring the given colonies up to date and return their requesters, largest first within each
+     * colony. Colonies no longer in the list are forgotten.
+     */
+    public List<Row> rows(Collection<?> colonyList) {
+        List<Row> rows = new ArrayList<>();
+        Set<Integer> liveIds = new HashSet<>();
+        RequestTraversal.of(colonyList).colonies().forEach(view -> {
+            int colonyId = MineColoniesBindings.getColonyId(view.colony());
+            ColonyIndex index = colonies.computeIfAbsent(colonyId, id -> new ColonyIndex());
+            liveIds.add(colonyId);
+            refresh(view, index);
+            List<Row> colonyRows = new ArrayList<>(index.byRequester.size());
+            for (Requester requester : index.byRequester.values()) {
+                colonyRows.add(new Row(colonyId, requester.name, requester.requests));
+            }
+            colonyRows.sort(Comparator.comparingInt((Row row) -> row.requests().size()).reversed());
+            rows.addAll(colonyRows);
+        });
+        colonies.keySet().retainAll(liveIds);
+        return rows;
+    }
+
+    /**
+     * Drop a request that was just resolved, without waiting for the next refresh.
+     */
+    public void remove(Object colony, Object token) {
+        ColonyIndex index = colonies.get(MineColoniesBindings.getColonyId(colony));
+        if (index != null) {
+            index.remove(token);
+        }
+    }
+
+    public void clear() {
+        colonies.clear();
+    }
+
+    private static void refresh(RequestTraversal.ColonyView view, ColonyIndex index) {
+        long now = System.nanoTime();
+        if (index.refreshedNanos != 0 && now - index.refreshedNanos < TimeUnit.MILLISECONDS.toNanos(REFRESH_MILLIS)) {
+            return;
+        }
+        index.refreshedNanos = now;
+        try {
+            Map<?, ?> requests = MineColoniesBindings.getAllRequests(view.requestManager());
+            if (requests == null) {
+                rebuildByRequester(view, index);
+            } else {
+                applyDifference(requests, index);
+            }
+        } catch (Exception e) {
+            LOGGER.error("[mc_mod] Error indexing requests of colony {}: {}", view.colony(), e.getMessage(), e);
+        }
+    }
+
+    private static void applyDifference(Map<?, ?> requests, ColonyIndex index) {
+        int kept = 0;
+        for (Map.Entry<?, ?> entry : requests.entrySet()) {
+            Object token = entry.getKey();
+            Object request = entry.getValue();
+            boolean known = index.requesterOfToken.containsKey(token);
+            if (!isOpen(request)) {
+                if (known) index.remove(token);
+                continue;
+            }
+            if (!known) {
+                Object requester = MineColoniesBindings.getRequester(request);
+                if (requester == null) continue;
+                index.add(token, request, requester);
+            }
+            kept++;
+        }
+        // Some indexed requests are gone from the manager altogether
+        if (kept != index.requesterOfToken.size()) {
+            for (Object token : new ArrayList<>(index.requesterOfToken.keySet())) {
+                if (!requests.containsKey(token)) {
+                    index.remove(token);
+                }
+            }
+        }
+    }
+
+    private static void rebuildByRequester(RequestTraversal.ColonyView view, ColonyIndex index) {
+        index.clear();
+        RequestTraversal.madeRequests(view).forEach(made -> {
+            Object request = made.request();
+            if (isOpen(request)) {
+                Object requester = MineColoniesBindings.getRequester(request);
+                if (requester != null) {
+                    index.add(MineColoniesBindings.getRequestId(request), request, requester);
+                }
+            }
+        });
+    }
+
+    private static boolean isOpen(Object request) {
+        Object state = MineColoniesBindings.getRequestState(request);
+        return state != null && !CLOSED_STATES.contains(state.toString());
+    }
+
+    private static String describeRequester(Object requester) {
+        try {
+            String name = MineColoniesBindings.getRequesterName(requester);
+            if (name != null) return name;
+        } catch (Exception ignored) {
+        }
+        return requester.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,230 @@
+package com.yiu_cheung.mc_mod;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Per-token retry state for requests that fail to fulfill.
+ *
+ * After a failure a token is held back for an exponentially growing, jittered delay. Once it has
+ * failed {@code maxAttempts} times it is moved to a dead-letter set and left alone until an admin
+ * requeues it, so a hopeless request (e.g. a citizen with a permanently full inventory) stops
+ * costing a plan and a chat message every cycle. Dead letters are only dropped when requeued or
+ * once their request is closed elsewhere, so the set is bounded by the open requests and a token
+ * never gets a fresh set of attempts just because others gave up after it.
+ *
+ * Failures are recorded on the server thread; {@link #isBlocked} is also called from the
+ * discovery workers. Both maps are concurrent, so the check takes no lock.
+ */
+public class RetryTracker {
+    public enum Outcome {
+        /** First failure for this token */
+        FIRST_FAILURE,
+        /** Failed again, still backing off */
+        RETRYING,
+        /** Out of attempts, moved to the dead-letter set */
+        DEAD_LETTERED
+    }
+
+    /**
+     * A token that ran out of attempts.
+     *
+     * @param request     the request object at the time, used to notice it was resolved elsewhere
+     * @param state       the request state at the time
+     * @param description what was requested and for whom, for the listing
+     */
+    public record DeadLetter(Object token, Object request, Object state, String description, int attempts, long deadLetteredAtMillis) {
+    }
+
+    /**
+     * Retry state with the backoff as a wall-clock deadline, for saving across restarts.
+     */
+    public record SavedRetry(int attempts, long retryAtMillis) {
+    }
+
+    private record RetryState(int attempts, long nextAttemptNanos) {
+    }
+
+    private record Listed(DeadLetter deadLetter, long sequence) {
+    }
+
+    private final Map<Object, RetryState> retries = new ConcurrentHashMap<>();
+    // Listed in the order they gave up, so the requeue indices are stable
+    private final Map<Object, Listed> deadLetters = new ConcurrentHashMap<>();
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private volatile long baseDelayNanos;
+    private volatile long maxDelayNanos;
+    private volatile int maxAttempts;
+
+    public RetryTracker(int baseDelaySeconds, int maxDelaySeconds, int maxAttempts) {
+        configure(baseDelaySeconds, maxDelaySeconds, maxAttempts);
+    }
+
+    /**
+     * Change the backoff, e.g. after a config reload. Tokens already backing off keep the retry
+     * time they were given.
+     */
+    public void configure(int baseDelaySeconds, int maxDelaySeconds, int maxAttempts) {
+        this.baseDelayNanos = TimeUnit.SECONDS.toNanos(Math.max(1, baseDelaySeconds));
+        this.maxDelayNanos = TimeUnit.SECONDS.toNanos(Math.max(baseDelaySeconds, maxDelaySeconds));
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    /**
+     * @return true if the token is dead-lettered or still waiting out its backoff
+     */
+    public boolean isBlocked(Object token) {
+        if (deadLetters.containsKey(token)) {
+            return true;
+        }
+        RetryState state = retries.get(token);
+        return state != null && System.nanoTime() < state.nextAttemptNanos();
+    }
+
+    /**
+     * @param description what was requested and for whom, only built if the request is
+     *                    dead-lettered
+     */
+    public Outcome recordFailure(FulfillmentPlan plan, Supplier<String> description) {
+        Object token = plan.token();
+        RetryState previous = retries.get(token);
+        int attempts = previous == null ? 1 : previous.attempts() + 1;
+        if (attempts >= maxAttempts) {
+            // Dead-lettered before the retry state goes, so the token is never briefly unblocked
+            DeadLetter deadLetter = new DeadLetter(token, plan.request(), plan.state(), description.get(), attempts, System.currentTimeMillis());
+            deadLetters.put(token, new Listed(deadLetter, nextSequence.getAndIncrement()));
+            retries.remove(token);
+            return Outcome.DEAD_LETTERED;
+        }
+        retries.put(token, new RetryState(attempts, System.nanoTime() + backoffNanos(attempts)));
+        return attempts == 1 ? Outcome.FIRST_FAILURE : Outcome.RETRYING;
+    }
+
+    public void recordSuccess(Object token) {
+        retries.remove(token);
+    }
+
+    /**
+     * @return the token's retry state, or null if it is not backing off
+     */
+    public SavedRetry getSavedRetry(Object token) {
+        RetryState state = retries.get(token);
+        if (state == null) {
+            return null;
+        }
+        long remainingNanos = Math.max(0, state.nextAttemptNanos() - System.nanoTime());
+        return new SavedRetry(state.attempts(), System.currentTimeMillis() + TimeUnit.NANOSECONDS.toMillis(remainingNanos));
+    }
+
+    /**
+     * Resume a saved backoff. Time spent offline counts towards it; the attempts are kept, so a
+     * token doesn't get a fresh set of retries from a restart.
+     */
+    public void restoreRetry(Object token, SavedRetry saved) {
+        long remainingMillis = Math.max(0, saved.retryAtMillis() - System.currentTimeMillis());
+        int attempts = Math.max(1, Math.min(saved.attempts(), maxAttempts - 1));
+        retries.putIfAbsent(token, new RetryState(attempts, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(remainingMillis)));
+    }
+
+    public DeadLetter getDeadLetter(Object token) {
+        Listed listed = deadLetters.get(token);
+        return listed != null ? listed.deadLetter() : null;
+    }
+
+    public void restoreDeadLetter(DeadLetter deadLetter) {
+        deadLetters.putIfAbsent(deadLetter.token(), new Listed(deadLetter, nextSequence.getAndIncrement()));
+    }
+
+    /**
+     * Exponential delay capped at the maximum, with the upper half jittered so tokens that failed
+     * together don't all come back on the same tick.
+     */
+    private long backoffNanos(int attempts) {
+        long delay = baseDelayNanos << Math.min(attempts - 1, 30);
+        if (delay <= 0 || delay > maxDelayNanos) {
+            delay = maxDelayNanos;
+        }
+        long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+    /**
+     * Drop retry state for tokens that have not come back long after their backoff ended; their
+     * request was most likely resolved or cancelled elsewhere.
+     */
+    public void pruneStale() {
+        long cutoff = System.nanoTime() - 2 * maxDelayNanos;
+        retries.values().removeIf(state -> state.nextAttemptNanos() < cutoff);
+    }
+
+    /**
+     * Drop dead letters whose request is no longer open.
+     */
+    public void pruneDeadLetters(Predicate<DeadLetter> stillOpen) {
+        deadLetters.values().removeIf(listed -> !stillOpen.test(listed.deadLetter()));
+    }
+
+    public List<DeadLetter> getDeadLetters() {
+        List<DeadLetter> list = new ArrayList<>(deadLetters.size());
+        for (Listed listed : listedInOrder()) {
+            list.add(listed.deadLetter());
+        }
+        return list;
+    }
+
+    private List<Listed> listedInOrder() {
+        List<Listed> listed = new ArrayList<>(deadLetters.values());
+        listed.sort(Comparator.comparingLong(Listed::sequence));
+        return listed;
+    }
+
+    /**
+     * Requeue the dead letter at the given 1-based position of {@link #getDeadLetters()}.
+     *
+     * @return the requeued entry, or null if there is none at that position
+     */
+    public DeadLetter requeue(int index) {
+        List<Listed> listed = listedInOrder();
+        if (index < 1 || index > listed.size()) {
+            return null;
+        }
+        Listed entry = listed.get(index - 1);
+        return deadLetters.remove(entry.deadLetter().token(), entry) ? entry.deadLetter() : null;
+    }
+
+    public int requeueAll() {
+        int count = 0;
+        for (Object token : deadLetters.keySet()) {
+            if (deadLetters.remove(token) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public int getRetryingCount() {
+        return retries.size();
+    }
+
+    public int getDeadLetterCount() {
+        return deadLetters.size();
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    public void clear() {
+        retries.clear();
+        deadLetters.clear();
+    }
+}